@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012 Petri Tuononen and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Petri Tuononen - Initial implementation
+ *******************************************************************************/
+package org.eclipse.cdt.managedbuilder.pkgconfig.settings;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.eclipse.cdt.core.settings.model.ICStorageElement;
+import org.junit.Test;
+
+/**
+ * Tests for reading, writing and migrating the checked packages.
+ */
+public class CheckedPackagesTest {
+
+	private static final String GTK = "gtk+-3.0"; //$NON-NLS-1$
+	private static final String GLIB = "glib-2.0"; //$NON-NLS-1$
+	private static final String CAIRO = "cairo"; //$NON-NLS-1$
+
+	private static ICStorageElement storage() {
+		return TestStorage.create(CheckedPackages.STORAGE);
+	}
+
+	@Test
+	public void testSaveAndLoad() {
+		ICStorageElement storage = storage();
+		CheckedPackages.save(storage, Arrays.asList(GTK, CAIRO, GLIB));
+		assertEquals(Arrays.asList(CAIRO, GLIB, GTK),
+				new ArrayList<String>(CheckedPackages.load(storage)));
+		assertEquals("2", storage.getAttribute("version")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(3, storage.getChildrenByName("package").length); //$NON-NLS-1$
+		assertFalse(CheckedPackages.migrate(storage));
+	}
+
+	@Test
+	public void testMigrateLegacy() {
+		ICStorageElement storage = storage();
+		storage.setAttribute("gtkplus-3.0", "true"); //$NON-NLS-1$ //$NON-NLS-2$
+		storage.setAttribute(GLIB, "false"); //$NON-NLS-1$
+		storage.setAttribute(CAIRO, "true"); //$NON-NLS-1$
+		assertEquals(Arrays.asList(GTK, CAIRO),
+				new ArrayList<String>(CheckedPackages.load(storage)));
+		assertTrue(CheckedPackages.migrate(storage));
+		// only the version attribute is left, the packages are children
+		assertArrayEquals(new String[] { "version" }, //$NON-NLS-1$
+				storage.getAttributeNames());
+		assertEquals(Arrays.asList(CAIRO, GTK),
+				new ArrayList<String>(CheckedPackages.load(storage)));
+		assertFalse(CheckedPackages.migrate(storage));
+	}
+
+	@Test
+	public void testLegacyPackageCalledVersion() {
+		ICStorageElement storage = storage();
+		storage.setAttribute("version", "true"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertTrue(CheckedPackages.migrate(storage));
+		assertEquals(Arrays.asList("version"), //$NON-NLS-1$
+				new ArrayList<String>(CheckedPackages.load(storage)));
+	}
+
+	@Test
+	public void testEmptyIsNotLegacy() {
+		ICStorageElement storage = storage();
+		assertFalse(CheckedPackages.migrate(storage));
+		assertTrue(CheckedPackages.load(storage).isEmpty());
+		assertTrue(CheckedPackages.load(null).isEmpty());
+		assertFalse(CheckedPackages.migrate(null));
+	}
+
+}
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012 Petri Tuononen and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Petri Tuononen - Initial implementation
+ *******************************************************************************/
+package org.eclipse.cdt.managedbuilder.pkgconfig.settings;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.cdt.core.settings.model.ICStorageElement;
+import org.eclipse.cdt.managedbuilder.pkgconfig.settings.SettingsWriter.Delta;
+import org.junit.Test;
+
+/**
+ * Tests for the contribution delta of {@link SettingsWriter}.
+ */
+public class SettingsWriterTest {
+
+	private static final String GCC = "org.eclipse.cdt.core.gcc"; //$NON-NLS-1$
+	private static final String GPP = "org.eclipse.cdt.core.g++"; //$NON-NLS-1$
+	private static final String FOO = "foo"; //$NON-NLS-1$
+	private static final String BAR = "bar"; //$NON-NLS-1$
+	private static final String FOO_INCLUDE = "/opt/foo/include"; //$NON-NLS-1$
+	private static final String BAR_INCLUDE = "/opt/bar/include"; //$NON-NLS-1$
+	private static final String USER_INCLUDE = "/home/user/include"; //$NON-NLS-1$
+
+	private static Map<String, Collection<String>> checked(String pkg,
+			String... values) {
+		Map<String, Collection<String>> pkgValues = new LinkedHashMap<String, Collection<String>>();
+		if (pkg != null) {
+			pkgValues.put(pkg, Arrays.asList(values));
+		}
+		return pkgValues;
+	}
+
+	private static Set<String> set(String... values) {
+		return new HashSet<String>(Arrays.asList(values));
+	}
+
+	private static Contributions reload(Contributions contributions) {
+		ICStorageElement storage = TestStorage.create(Contributions.STORAGE);
+		contributions.save(storage);
+		return Contributions.load(storage);
+	}
+
+	@Test
+	public void testPackageValuesAreAddedAndRemoved() {
+		Contributions first = new Contributions();
+		Delta delta = SettingsWriter.computeDelta(GCC,
+				Contributions.INCLUDE_PATH, checked(FOO, FOO_INCLUDE),
+				set(USER_INCLUDE), new Contributions(), first);
+		assertEquals(set(FOO_INCLUDE), delta.added);
+		assertTrue(delta.removed.isEmpty());
+		assertEquals(set(FOO_INCLUDE),
+				first.get(FOO, GCC, Contributions.INCLUDE_PATH));
+
+		delta = SettingsWriter.computeDelta(GCC, Contributions.INCLUDE_PATH,
+				checked(BAR, BAR_INCLUDE),
+				set(USER_INCLUDE, FOO_INCLUDE), reload(first),
+				new Contributions());
+		assertEquals(set(BAR_INCLUDE), delta.added);
+		assertEquals(set(FOO_INCLUDE), delta.removed);
+	}
+
+	@Test
+	public void testUserValueIsKept() {
+		Contributions first = new Contributions();
+		Delta delta = SettingsWriter.computeDelta(GCC,
+				Contributions.INCLUDE_PATH, checked(FOO, FOO_INCLUDE),
+				set(FOO_INCLUDE), new Contributions(), first);
+		assertTrue(delta.isEmpty());
+		assertTrue(first.get(FOO, GCC, Contributions.INCLUDE_PATH).isEmpty());
+
+		delta = SettingsWriter.computeDelta(GCC, Contributions.INCLUDE_PATH,
+				checked(null), set(FOO_INCLUDE), reload(first),
+				new Contributions());
+		assertTrue(delta.isEmpty());
+	}
+
+	@Test
+	public void testUserValueOfOneLanguageIsKept() {
+		// the user has set the include path only for C
+		Set<String> c = set(FOO_INCLUDE);
+		Set<String> cpp = set();
+		Contributions first = new Contributions();
+		Delta cDelta = SettingsWriter.computeDelta(GCC,
+				Contributions.INCLUDE_PATH, checked(FOO, FOO_INCLUDE), c,
+				new Contributions(), first);
+		Delta cppDelta = SettingsWriter.computeDelta(GPP,
+				Contributions.INCLUDE_PATH, checked(FOO, FOO_INCLUDE), cpp,
+				new Contributions(), first);
+		assertTrue(cDelta.isEmpty());
+		assertEquals(set(FOO_INCLUDE), cppDelta.added);
+		cpp.addAll(cppDelta.added);
+
+		// the package is unchecked in a later session
+		Contributions old = reload(first);
+		cDelta = SettingsWriter.computeDelta(GCC, Contributions.INCLUDE_PATH,
+				checked(null), c, old, new Contributions());
+		cppDelta = SettingsWriter.computeDelta(GPP,
+				Contributions.INCLUDE_PATH, checked(null), cpp, old,
+				new Contributions());
+		assertTrue(cDelta.isEmpty());
+		assertEquals(set(FOO_INCLUDE), cppDelta.removed);
+	}
+
+	@Test
+	public void testSharedValueStaysWhileAPackageWantsIt() {
+		Map<String, Collection<String>> both = checked(FOO, FOO_INCLUDE);
+		both.put(BAR, Collections.singletonList(FOO_INCLUDE));
+		Contributions first = new Contributions();
+		Delta delta = SettingsWriter.computeDelta(GCC,
+				Contributions.INCLUDE_PATH, both, set(), new Contributions(),
+				first);
+		assertEquals(set(FOO_INCLUDE), delta.added);
+
+		delta = SettingsWriter.computeDelta(GCC, Contributions.INCLUDE_PATH,
+				checked(BAR, FOO_INCLUDE), set(FOO_INCLUDE), reload(first),
+				new Contributions());
+		assertTrue(delta.isEmpty());
+	}
+
+	@Test
+	public void testValuesWithoutLanguageCountForEveryLanguage() {
+		// stored by an earlier version
+		ICStorageElement storage = TestStorage.create(Contributions.STORAGE);
+		ICStorageElement pkg = storage.createChild("package"); //$NON-NLS-1$
+		pkg.setAttribute("name", FOO); //$NON-NLS-1$
+		pkg.createChild(Contributions.INCLUDE_PATH).setAttribute(
+				"value", FOO_INCLUDE); //$NON-NLS-1$
+		Contributions old = Contributions.load(storage);
+		assertEquals(set(FOO_INCLUDE),
+				old.getAll(GCC, Contributions.INCLUDE_PATH));
+		assertEquals(set(FOO_INCLUDE),
+				old.getAll(GPP, Contributions.INCLUDE_PATH));
+
+		Contributions current = new Contributions();
+		SettingsWriter.computeDelta(GPP, Contributions.INCLUDE_PATH,
+				checked(FOO, FOO_INCLUDE), set(FOO_INCLUDE), old, current);
+		assertEquals(set(FOO_INCLUDE),
+				reload(current).get(FOO, GPP, Contributions.INCLUDE_PATH));
+		assertTrue(reload(current).get(FOO, GCC, Contributions.INCLUDE_PATH)
+				.isEmpty());
+	}
+
+}
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012 Petri Tuononen and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Petri Tuononen - Initial implementation
+ *******************************************************************************/
+package org.eclipse.cdt.managedbuilder.pkgconfig.settings;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.cdt.core.settings.model.ICStorageElement;
+
+/**
+ * In-memory {@link ICStorageElement} for the tests. Only the methods used by
+ * the plug-in to read and write its storage are supported.
+ */
+public class TestStorage implements InvocationHandler {
+
+	private final String name;
+	private final Map<String, String> attributes = new LinkedHashMap<String, String>();
+	private final List<ICStorageElement> children = new ArrayList<ICStorageElement>();
+
+	private TestStorage(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Create an empty storage element.
+	 *
+	 * @param name Name of the element
+	 * @return ICStorageElement
+	 */
+	public static ICStorageElement create(String name) {
+		return (ICStorageElement) Proxy.newProxyInstance(
+				TestStorage.class.getClassLoader(),
+				new Class<?>[] { ICStorageElement.class }, new TestStorage(name));
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) {
+		String methodName = method.getName();
+		if ("getName".equals(methodName)) { //$NON-NLS-1$
+			return this.name;
+		} else if ("getAttribute".equals(methodName)) { //$NON-NLS-1$
+			return this.attributes.get(args[0]);
+		} else if ("hasAttribute".equals(methodName)) { //$NON-NLS-1$
+			return Boolean.valueOf(this.attributes.containsKey(args[0]));
+		} else if ("getAttributeNames".equals(methodName)) { //$NON-NLS-1$
+			return this.attributes.keySet().toArray(
+					new String[this.attributes.size()]);
+		} else if ("setAttribute".equals(methodName)) { //$NON-NLS-1$
+			this.attributes.put((String) args[0], (String) args[1]);
+			return null;
+		} else if ("removeAttribute".equals(methodName)) { //$NON-NLS-1$
+			this.attributes.remove(args[0]);
+			return null;
+		} else if ("getChildren".equals(methodName)) { //$NON-NLS-1$
+			return this.children.toArray(new ICStorageElement[this.children
+					.size()]);
+		} else if ("getChildrenByName".equals(methodName)) { //$NON-NLS-1$
+			List<ICStorageElement> named = new ArrayList<ICStorageElement>();
+			for (ICStorageElement child : this.children) {
+				if (child.getName().equals(args[0])) {
+					named.add(child);
+				}
+			}
+			return named.toArray(new ICStorageElement[named.size()]);
+		} else if ("hasChildren".equals(methodName)) { //$NON-NLS-1$
+			return Boolean.valueOf(!this.children.isEmpty());
+		} else if ("createChild".equals(methodName)) { //$NON-NLS-1$
+			ICStorageElement child = create((String) args[0]);
+			this.children.add(child);
+			return child;
+		} else if ("removeChild".equals(methodName)) { //$NON-NLS-1$
+			this.children.remove(args[0]);
+			return null;
+		} else if ("clear".equals(methodName)) { //$NON-NLS-1$
+			this.attributes.clear();
+			this.children.clear();
+			return null;
+		} else if ("equals".equals(methodName)) { //$NON-NLS-1$
+			return Boolean.valueOf(proxy == args[0]);
+		} else if ("hashCode".equals(methodName)) { //$NON-NLS-1$
+			return Integer.valueOf(System.identityHashCode(proxy));
+		} else if ("toString".equals(methodName)) { //$NON-NLS-1$
+			return this.name + this.attributes;
+		}
+		throw new UnsupportedOperationException(methodName);
+	}
+
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012 Petri Tuononen and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Petri Tuononen - Initial implementation
+ *******************************************************************************/
+package org.eclipse.cdt.managedbuilder.pkgconfig.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link Parser}.
+ */
+public class ParserTest {
+
+	@Test
+	public void testFlagsAreClassified() {
+		PackageFlags flags = Parser.parsePackageFlags(
+				"-pthread -I/opt/a/include -isystem /opt/b/include -DA=1 -include config.h " //$NON-NLS-1$
+				+ "-L/opt/a/lib -la -Wl,--as-needed -framework Cocoa -Xlinker -z -rdynamic"); //$NON-NLS-1$
+		assertEquals(Arrays.asList("/opt/a/include"), flags.getIncludePaths()); //$NON-NLS-1$
+		assertEquals(Arrays.asList("/opt/b/include"), flags.getSystemIncludePaths()); //$NON-NLS-1$
+		assertEquals(Arrays.asList("A=1"), flags.getDefinedSymbols()); //$NON-NLS-1$
+		assertEquals(Arrays.asList("-pthread", "-include config.h"), flags.getOtherFlags()); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(Arrays.asList("/opt/a/lib"), flags.getLibraryPaths()); //$NON-NLS-1$
+		assertEquals(Arrays.asList("a"), flags.getLibraries()); //$NON-NLS-1$
+		assertEquals(Arrays.asList("-Wl,--as-needed", "-framework Cocoa", //$NON-NLS-1$ //$NON-NLS-2$
+				"-Xlinker -z", "-rdynamic"), flags.getLinkerFlags()); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Test
+	public void testLibsFlagsAreLinkerFlags() {
+		PackageFlags flags = Parser.parsePackageFlags(
+				"-pthread -fopenmp -I/opt/a/include -L/opt/a/lib -pthread /opt/a/lib/liba.a " //$NON-NLS-1$
+				+ "-fopenmp -lm"); //$NON-NLS-1$
+		assertEquals(Arrays.asList("-pthread", "-fopenmp"), flags.getOtherFlags()); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(Arrays.asList("-pthread", "/opt/a/lib/liba.a", "-fopenmp"), //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				flags.getLinkerFlags());
+		// a file is given to the linker even if no library came before it
+		assertEquals(Arrays.asList("/opt/b/libb.a"), //$NON-NLS-1$
+				Parser.parsePackageFlags("/opt/b/libb.a -lb").getLinkerFlags()); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testDuplicateLibrariesKeepLastOccurrence() {
+		PackageFlags flags = Parser.parsePackageFlags(
+				"-I/opt/a/include -I/opt/b/include -I/opt/a/include -lm -la -lb -lm"); //$NON-NLS-1$
+		assertEquals(Arrays.asList("/opt/a/include", "/opt/b/include"), //$NON-NLS-1$ //$NON-NLS-2$
+				flags.getIncludePaths());
+		assertEquals(Arrays.asList("a", "b", "m"), flags.getLibraries()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	@Test
+	public void testMergeUsesSameRuleAsParser() {
+		PackageFlags a = Parser.parsePackageFlags("-la -lm"); //$NON-NLS-1$
+		PackageFlags b = Parser.parsePackageFlags("-lb -lm"); //$NON-NLS-1$
+		assertEquals(Parser.parsePackageFlags("-la -lm -lb -lm"), //$NON-NLS-1$
+				PackageFlags.merge(Arrays.asList(a, b)));
+	}
+
+	@Test
+	public void testSplitArguments() {
+		assertEquals(Arrays.asList("-DNAME=a b", "-I/opt/my dir", "-DQ='x'", "it's"), //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+				Parser.splitArguments("-DNAME=\"a b\"  -I/opt/my\\ dir\t-DQ=\"'x'\" 'it'\\''s'")); //$NON-NLS-1$
+		assertEquals(Arrays.asList("-DA=\"x\"", "$HOME", "a\\b"), //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				Parser.splitArguments("\"-DA=\\\"x\\\"\" \\$HOME 'a\\b'")); //$NON-NLS-1$
+		assertEquals(Arrays.asList("C:\\MinGW\\include", ""), //$NON-NLS-1$ //$NON-NLS-2$
+				Parser.splitArguments("C:\\MinGW\\include \"\"")); //$NON-NLS-1$
+		assertEquals(Collections.emptyList(), Parser.splitArguments(" \t ")); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testArgumentSpansRoundTrip() {
+		String[] values = {
+				"-pthread -DNAME=\"a b\"  -I/opt/my\\ dir\t'-DQ=x y'", //$NON-NLS-1$
+				"  -include \"my config.h\" -Wl,-rpath,'$ORIGIN' ", //$NON-NLS-1$
+				"C:\\MinGW\\include \"unterminated", //$NON-NLS-1$
+		};
+		for (String value : values) {
+			List<String> args = Parser.splitArguments(value);
+			List<Parser.Argument> spans = Parser.splitArgumentSpans(value);
+			assertEquals(args.size(), spans.size());
+			for (int i = 0; i < spans.size(); i++) {
+				Parser.Argument span = spans.get(i);
+				assertEquals(args.get(i), span.value);
+				// the span is the argument as written
+				assertEquals(Collections.singletonList(span.value),
+						Parser.splitArguments(value.substring(span.start, span.end)));
+			}
+		}
+	}
+
+	@Test
+	public void testEmptyOutput() {
+		assertEquals(Collections.emptyList(), Parser.parsePackageFlags("").getOtherFlags()); //$NON-NLS-1$
+		assertEquals(Collections.emptyList(), Parser.parsePackageFlags(null).getLibraries());
+	}
+
+}
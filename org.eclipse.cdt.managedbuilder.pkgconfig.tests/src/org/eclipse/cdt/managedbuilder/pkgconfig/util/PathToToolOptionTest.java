@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012 Petri Tuononen and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Petri Tuononen - Initial implementation
+ *******************************************************************************/
+package org.eclipse.cdt.managedbuilder.pkgconfig.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Tests for the removal of package flags from a string option of
+ * {@link PathToToolOption}.
+ */
+public class PathToToolOptionTest {
+
+	@Test
+	public void testRestOfValueIsKept() {
+		assertEquals("-O2  -DNAME=\"a b\"\t-I'/opt/my dir'", //$NON-NLS-1$
+				PathToToolOption.removeFlags(
+						"-O2  -DNAME=\"a b\" -pthread\t-I'/opt/my dir'", //$NON-NLS-1$
+						Collections.singletonList("-pthread"))); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testFlagWithSeveralArguments() {
+		assertEquals("-Wall -include other.h", //$NON-NLS-1$
+				PathToToolOption.removeFlags(
+						"-Wall -include \"my config.h\" -include other.h", //$NON-NLS-1$
+						Collections.singletonList("-include 'my config.h'"))); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testFlagsAtStartAndEnd() {
+		assertEquals("-Wall", PathToToolOption.removeFlags( //$NON-NLS-1$
+				"-pthread  -Wall -fPIC", Arrays.asList("-pthread", "-fPIC"))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertEquals("", PathToToolOption.removeFlags( //$NON-NLS-1$
+				"-pthread", Collections.singletonList("-pthread"))); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Test
+	public void testOnlyFirstOccurrenceIsRemoved() {
+		assertEquals("-Wall -pthread", PathToToolOption.removeFlags( //$NON-NLS-1$
+				"-pthread -Wall -pthread", Collections.singletonList("-pthread"))); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Test
+	public void testMissingFlagLeavesValueUntouched() {
+		String value = " -DX=\\\"y\\\"  "; //$NON-NLS-1$
+		assertEquals(value, PathToToolOption.removeFlags(value,
+				Arrays.asList("-pthreads", "-pthread", ""))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+}
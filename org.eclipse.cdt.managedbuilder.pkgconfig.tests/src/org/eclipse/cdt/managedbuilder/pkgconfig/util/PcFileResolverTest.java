@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012 Petri Tuononen and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Petri Tuononen - Initial implementation
+ *******************************************************************************/
+package org.eclipse.cdt.managedbuilder.pkgconfig.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link PcFileResolver}. The expected values are the output of
+ * the pkg-config executable for the same .pc files. When pkg-config is
+ * installed, the resolver is also compared against it directly.
+ */
+public class PcFileResolverTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File dir;
+	private PcFileResolver resolver;
+
+	@Before
+	public void setUp() throws IOException {
+		this.dir = this.folder.newFolder("pkgconfig"); //$NON-NLS-1$
+		writePc("base", //$NON-NLS-1$
+				"prefix=/opt/base", //$NON-NLS-1$
+				"libdir=${prefix}/lib", //$NON-NLS-1$
+				"includedir=${prefix}/include", //$NON-NLS-1$
+				"", //$NON-NLS-1$
+				"Name: base", //$NON-NLS-1$
+				"Description: Base library", //$NON-NLS-1$
+				"Version: 1.2.10", //$NON-NLS-1$
+				"Cflags: -I${includedir} -I/usr/include -DBASE", //$NON-NLS-1$
+				"Libs: -L${libdir} -L/usr/lib -lbase", //$NON-NLS-1$
+				"Libs.private: -lm"); //$NON-NLS-1$
+		writePc("priv", //$NON-NLS-1$
+				"Name: priv", //$NON-NLS-1$
+				"Description: Private dependency", //$NON-NLS-1$
+				"Version: 0.1", //$NON-NLS-1$
+				"Cflags: -I/opt/priv/include", //$NON-NLS-1$
+				"Libs: -L/opt/priv/lib -lpriv"); //$NON-NLS-1$
+		writePc("app", //$NON-NLS-1$
+				"prefix=/opt/app", //$NON-NLS-1$
+				"Name: app", //$NON-NLS-1$
+				"Description: Application library", //$NON-NLS-1$
+				"Version: 2.0", //$NON-NLS-1$
+				"Requires: base >= 1.2.9", //$NON-NLS-1$
+				"Requires.private: priv", //$NON-NLS-1$
+				"Cflags: -I${prefix}/include -DAPP", //$NON-NLS-1$
+				"Libs: -L${prefix}/lib -lapp"); //$NON-NLS-1$
+		writePc("reloc", //$NON-NLS-1$
+				"prefix=${pcfiledir}/..", //$NON-NLS-1$
+				"Name: reloc", //$NON-NLS-1$
+				"Description: Relocatable library", //$NON-NLS-1$
+				"Version: 1.0", //$NON-NLS-1$
+				"Cflags: -I${prefix}/include", //$NON-NLS-1$
+				"Libs: -L${prefix}/lib -lreloc"); //$NON-NLS-1$
+		writePc("shared-x", //$NON-NLS-1$
+				"Name: shared-x", //$NON-NLS-1$
+				"Description: First user of a shared directory", //$NON-NLS-1$
+				"Version: 1.0", //$NON-NLS-1$
+				"Cflags: -I/opt/shared/include", //$NON-NLS-1$
+				"Libs: -L/opt/shared/lib -lshared"); //$NON-NLS-1$
+		writePc("shared-y", //$NON-NLS-1$
+				"Name: shared-y", //$NON-NLS-1$
+				"Description: Second user of a shared directory", //$NON-NLS-1$
+				"Version: 1.0", //$NON-NLS-1$
+				"Cflags: -I/opt/shared/include", //$NON-NLS-1$
+				"Libs: -L/opt/shared/lib -lshared"); //$NON-NLS-1$
+		writePc("static-m", //$NON-NLS-1$
+				"Name: static-m", //$NON-NLS-1$
+				"Description: Links the math library before its requirement", //$NON-NLS-1$
+				"Version: 1.0", //$NON-NLS-1$
+				"Requires: base", //$NON-NLS-1$
+				"Libs: -lstatic-m -lm"); //$NON-NLS-1$
+		writePc("too-new", //$NON-NLS-1$
+				"Name: too-new", //$NON-NLS-1$
+				"Description: Requires a newer base", //$NON-NLS-1$
+				"Version: 1.0", //$NON-NLS-1$
+				"Requires: base >= 1.10", //$NON-NLS-1$
+				"Cflags: -I/opt/too-new/include"); //$NON-NLS-1$
+		String path = this.dir.getPath();
+		this.resolver = new PcFileResolver(new PkgConfigEnvironment(
+				"pkg-config", path, path)); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testVariablesAreExpanded() {
+		assertEquals("-DBASE -I/opt/base/include", //$NON-NLS-1$
+				resolve("--cflags", "base")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("-I" + this.dir.getPath() + "/../include", //$NON-NLS-1$ //$NON-NLS-2$
+				resolve("--cflags", "reloc")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Test
+	public void testSystemPathsAreStripped() {
+		assumeTrue(System.getenv("PKG_CONFIG_ALLOW_SYSTEM_CFLAGS") == null //$NON-NLS-1$
+				&& System.getenv("PKG_CONFIG_ALLOW_SYSTEM_LIBS") == null); //$NON-NLS-1$
+		assertEquals("-I/opt/base/include", //$NON-NLS-1$
+				resolve("--cflags-only-I", "base")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("-L/opt/base/lib -lbase", //$NON-NLS-1$
+				resolve("--libs", "base")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Test
+	public void testPrivateRequirementsOnlyInCflagsAndStaticLibs() {
+		assertEquals("-DAPP -DBASE -I/opt/app/include -I/opt/base/include -I/opt/priv/include", //$NON-NLS-1$
+				resolve("--cflags", "app")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("-L/opt/app/lib -L/opt/base/lib -lapp -lbase", //$NON-NLS-1$
+				resolve("--libs", "app")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("-L/opt/app/lib -L/opt/base/lib -L/opt/priv/lib -lapp -lbase -lm -lpriv", //$NON-NLS-1$
+				resolve("--libs", "--static", "app")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	@Test
+	public void testConsecutiveDuplicatesAreMerged() {
+		assertEquals("-I/opt/shared/include", //$NON-NLS-1$
+				resolve("--cflags", "shared-x", "shared-y")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertEquals("-L/opt/shared/lib -lshared", //$NON-NLS-1$
+				resolve("--libs", "shared-x", "shared-y")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	@Test
+	public void testLibrariesKeepLastOccurrence() {
+		// -lm is needed after -lbase, which is linked statically
+		assertEquals("-L/opt/base/lib -lstatic-m -lbase -lm", //$NON-NLS-1$
+				resolve("--libs", "--static", "static-m")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	@Test
+	public void testUnsatisfiedVersionFallsBack() {
+		assertNull(this.resolver.run(Arrays.asList("--cflags", "too-new"))); //$NON-NLS-1$ //$NON-NLS-2$
+		assertNull(this.resolver.run(Arrays.asList("--cflags", "base", ">", "1.2.10"))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		assertEquals("-DBASE -I/opt/base/include", //$NON-NLS-1$
+				resolve("--cflags", "base", "=", "1.2.10")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	}
+
+	@Test
+	public void testUnknownPackageFallsBack() {
+		assertNull(this.resolver.run(Arrays.asList("--libs", "missing"))); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Test
+	public void testCompareVersions() {
+		assertTrue(PcFile.compareVersions("1.2.10", "1.2.9") > 0); //$NON-NLS-1$ //$NON-NLS-2$
+		assertTrue(PcFile.compareVersions("2.0", "10.0") < 0); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(0, PcFile.compareVersions("1.01", "1.1")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertTrue(PcFile.compareVersions("1.0", "1.0.1") < 0); //$NON-NLS-1$ //$NON-NLS-2$
+		assertTrue(PcFile.compareVersions("1.0a", "1.0") > 0); //$NON-NLS-1$ //$NON-NLS-2$
+		assertTrue(PcFile.compareVersions("1.a", "1.1") < 0); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Test
+	public void testMatchesPkgConfig() throws IOException, InterruptedException {
+		// pkgconf orders the flags differently, only pkg-config is compared
+		String version = runPkgConfig("--version"); //$NON-NLS-1$
+		assumeTrue(version != null && version.startsWith("0.")); //$NON-NLS-1$
+		assumeTrue(System.getenv("PKG_CONFIG_SYSROOT_DIR") == null); //$NON-NLS-1$
+		String[][] queries = {
+				{ "--cflags", "base" }, //$NON-NLS-1$ //$NON-NLS-2$
+				{ "--libs", "base" }, //$NON-NLS-1$ //$NON-NLS-2$
+				{ "--libs", "--static", "base" }, //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				{ "--cflags", "app" }, //$NON-NLS-1$ //$NON-NLS-2$
+				{ "--libs", "app" }, //$NON-NLS-1$ //$NON-NLS-2$
+				{ "--libs", "--static", "app" }, //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				{ "--cflags", "reloc" }, //$NON-NLS-1$ //$NON-NLS-2$
+				{ "--cflags", "shared-x", "shared-y" }, //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				{ "--libs", "shared-x", "shared-y" }, //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		};
+		for (String[] query : queries) {
+			assertEquals(Arrays.toString(query), runPkgConfig(query),
+					resolve(query));
+		}
+	}
+
+	private String resolve(String... args) {
+		List<String> lines = this.resolver.run(Arrays.asList(args));
+		assertEquals(1, lines.size());
+		return lines.get(0).trim();
+	}
+
+	/**
+	 * Run pkg-config on the test directory.
+	 *
+	 * @return Trimmed output or null if pkg-config cannot be run
+	 */
+	private String runPkgConfig(String... args) throws InterruptedException {
+		List<String> command = new ArrayList<String>();
+		command.add("pkg-config"); //$NON-NLS-1$
+		command.addAll(Arrays.asList(args));
+		ProcessBuilder pb = new ProcessBuilder(command);
+		pb.environment().remove("PKG_CONFIG_PATH"); //$NON-NLS-1$
+		pb.environment().put("PKG_CONFIG_LIBDIR", this.dir.getPath()); //$NON-NLS-1$
+		pb.redirectErrorStream(true);
+		try {
+			Process process = pb.start();
+			BufferedReader output = new BufferedReader(new InputStreamReader(
+					process.getInputStream()));
+			StringBuilder sb = new StringBuilder();
+			String line;
+			while ((line = output.readLine()) != null) {
+				sb.append(line);
+			}
+			output.close();
+			return process.waitFor() == 0 ? sb.toString().trim() : null;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private void writePc(String pkg, String... lines) throws IOException {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(new File(
+				this.dir, pkg + PcFile.EXTENSION)), "UTF-8"); //$NON-NLS-1$
+		try {
+			for (String line : lines) {
+				writer.write(line);
+				writer.write('\n');
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+}
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012 Petri Tuononen and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Petri Tuononen - Initial implementation
+ *******************************************************************************/
+package org.eclipse.cdt.managedbuilder.pkgconfig.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.cdt.managedbuilder.pkgconfig.util.ProcessThrottle.Ticket;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.Test;
+
+/**
+ * Tests for the order in which {@link ProcessThrottle} serves the waiting
+ * requests.
+ */
+public class ProcessThrottleTest {
+
+	private static final long TIMEOUT = 5000;
+
+	/**
+	 * Acquires the throttle for a ticket in its own thread and records the
+	 * name of the request when it may run.
+	 */
+	private static Thread start(final ProcessThrottle throttle,
+			final Ticket ticket, final String name, final List<String> served)
+			throws InterruptedException {
+		int waiting = throttle.getWaitingCount();
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					if (throttle.acquire(ticket, null)) {
+						served.add(name);
+						throttle.release();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		thread.start();
+		// wait until the request is queued so that the order is known
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (throttle.getWaitingCount() == waiting
+				&& System.currentTimeMillis() < end) {
+			Thread.sleep(1);
+		}
+		return thread;
+	}
+
+	private static void join(Thread... threads) throws InterruptedException {
+		for (Thread thread : threads) {
+			thread.join(TIMEOUT);
+			assertFalse(thread.isAlive());
+		}
+	}
+
+	@Test
+	public void testInteractiveServedFirst() throws InterruptedException {
+		ProcessThrottle throttle = new ProcessThrottle(1);
+		List<String> served = Collections.synchronizedList(new ArrayList<String>());
+		Ticket running = new Ticket(false);
+		assertTrue(throttle.acquire(running, null));
+		Thread first = start(throttle, new Ticket(false), "first", served); //$NON-NLS-1$
+		Thread second = start(throttle, new Ticket(false), "second", served); //$NON-NLS-1$
+		Thread interactive = start(throttle, new Ticket(true), "interactive", served); //$NON-NLS-1$
+		throttle.release();
+		join(first, second, interactive);
+		assertEquals(Arrays.asList("interactive", "first", "second"), served); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	@Test
+	public void testPromote() throws InterruptedException {
+		ProcessThrottle throttle = new ProcessThrottle(1);
+		List<String> served = Collections.synchronizedList(new ArrayList<String>());
+		assertTrue(throttle.acquire(new Ticket(false), null));
+		Thread first = start(throttle, new Ticket(false), "first", served); //$NON-NLS-1$
+		Ticket promoted = new Ticket(false);
+		Thread second = start(throttle, promoted, "promoted", served); //$NON-NLS-1$
+		throttle.promote(promoted);
+		throttle.release();
+		join(first, second);
+		assertEquals(Arrays.asList("promoted", "first"), served); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Test
+	public void testCanceled() throws InterruptedException {
+		ProcessThrottle throttle = new ProcessThrottle(1);
+		assertTrue(throttle.acquire(new Ticket(false), null));
+		NullProgressMonitor monitor = new NullProgressMonitor();
+		monitor.setCanceled(true);
+		assertFalse(throttle.acquire(new Ticket(true), monitor));
+		assertEquals(0, throttle.getWaitingCount());
+		throttle.release();
+		assertTrue(throttle.acquire(new Ticket(false), monitor));
+	}
+
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012 Petri Tuononen and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Petri Tuononen - Initial implementation
+ *******************************************************************************/
+package org.eclipse.cdt.managedbuilder.pkgconfig.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the invalidation of {@link QueryResultCache}.
+ */
+public class QueryResultCacheTest {
+
+	// milliseconds to wait for the watcher to notice a change
+	private static final long WATCH_TIMEOUT = 10000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private PkgConfigEnvironment env;
+	private QueryResultCache cache;
+	private final List<String> args = Arrays.asList("--cflags", "foo"); //$NON-NLS-1$ //$NON-NLS-2$
+	private final List<String> lines = Arrays.asList("-I/opt/foo/include"); //$NON-NLS-1$
+
+	@Before
+	public void setUp() throws IOException {
+		String dir = this.folder.newFolder("pkgconfig").getPath(); //$NON-NLS-1$
+		this.env = new PkgConfigEnvironment("pkg-config", dir, dir); //$NON-NLS-1$
+		this.cache = QueryResultCache.getDefault();
+	}
+
+	@After
+	public void tearDown() {
+		QueryResultCache.shutdown();
+		PcDirectoryWatcher.shutdown();
+	}
+
+	@Test
+	public void testResultIsCached() {
+		long generation = this.cache.getGeneration(this.env);
+		this.cache.put(this.env, this.args, this.lines, generation);
+		assertEquals(this.lines, this.cache.get(this.env, this.args));
+	}
+
+	@Test
+	public void testChangeDropsResults() {
+		this.cache.put(this.env, this.args, this.lines,
+				this.cache.getGeneration(this.env));
+		this.cache.pcDirectoryChanged(this.env.getSearchDirectories().get(0));
+		assertNull(this.cache.get(this.env, this.args));
+	}
+
+	@Test
+	public void testResultOfOutdatedQueryIsNotStored() {
+		long generation = this.cache.getGeneration(this.env);
+		// a .pc file changes while the query runs
+		this.cache.pcDirectoryChanged(this.env.getSearchDirectories().get(0));
+		this.cache.put(this.env, this.args, this.lines, generation);
+		assertNull(this.cache.get(this.env, this.args));
+	}
+
+	@Test
+	public void testPcFileChangeIsNoticed() throws IOException,
+			InterruptedException {
+		this.cache.put(this.env, this.args, this.lines,
+				this.cache.getGeneration(this.env));
+		File dir = this.env.getSearchDirectories().get(0);
+		assertTrue(new File(dir, "foo" + PcFile.EXTENSION).createNewFile()); //$NON-NLS-1$
+		long deadline = System.currentTimeMillis() + WATCH_TIMEOUT;
+		while (this.cache.get(this.env, this.args) != null
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		assertNull(this.cache.get(this.env, this.args));
+	}
+
+}
@@ -25,6 +25,15 @@ import org.eclipse.cdt.core.settings.model.ICProjectDescriptionListener;
 //import org.eclipse.cdt.managedbuilder.core.IManagedBuildInfo;
 //import org.eclipse.cdt.managedbuilder.core.ManagedBuildManager;
 //import org.eclipse.cdt.managedbuilder.pkgconfig.settings.PkgConfigExternalSettingProvider;
+import org.eclipse.cdt.managedbuilder.pkgconfig.properties.PackageCatalog;
+import org.eclipse.cdt.managedbuilder.pkgconfig.settings.SettingsSnapshotCache;
+import org.eclipse.cdt.managedbuilder.pkgconfig.settings.SettingsWriter;
+import org.eclipse.cdt.managedbuilder.pkgconfig.settings.SnapshotValidator;
+import org.eclipse.cdt.managedbuilder.pkgconfig.util.PcDirectoryWatcher;
+import org.eclipse.cdt.managedbuilder.pkgconfig.util.PersistentQueryCache;
+import org.eclipse.cdt.managedbuilder.pkgconfig.util.PkgConfigEnvironment;
+import org.eclipse.cdt.managedbuilder.pkgconfig.util.QueryExecutor;
+import org.eclipse.cdt.managedbuilder.pkgconfig.util.QueryResultCache;
 import org.eclipse.core.runtime.FileLocator;
 //import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
@@ -129,6 +138,15 @@ public class Activator extends AbstractUIPlugin {
 	 */
 	@Override
 	public void stop(BundleContext context) throws Exception {
+		SnapshotValidator.shutdown();
+		SettingsWriter.shutdown();
+		SettingsSnapshotCache.shutdown();
+		PackageCatalog.shutdown();
+		QueryExecutor.shutdown();
+		QueryResultCache.shutdown();
+		PcDirectoryWatcher.shutdown();
+		PersistentQueryCache.shutdown();
+		PkgConfigEnvironment.shutdown();
 		plugin = null;
 		CoreModel.getDefault().removeCProjectDescriptionListener(this.listener);
 		super.stop(context);
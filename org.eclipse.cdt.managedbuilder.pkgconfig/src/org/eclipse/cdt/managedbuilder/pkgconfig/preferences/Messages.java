@@ -18,6 +18,11 @@ public class Messages extends NLS {
 	public static String PkgConfigSettingsDialog_0;
 	public static String PkgConfigSettingsDialog_1;
 	public static String PkgConfigSettingsDialog_2;
+	public static String PkgConfigSettingsDialog_3;
+	public static String PkgConfigSettingsDialog_4;
+	public static String PkgConfigSettingsDialog_5;
+	public static String PkgConfigSettingsDialog_6;
+	public static String PkgConfigSettingsDialog_7;
 	public static String PkgConfigPropertyTab_0;
 	public static String PkgConfigPathListEditor_0;
 	public static String PkgConfigPathListEditor_1;
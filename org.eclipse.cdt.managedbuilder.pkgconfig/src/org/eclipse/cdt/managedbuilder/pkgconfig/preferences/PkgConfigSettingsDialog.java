@@ -15,7 +15,9 @@ import org.eclipse.cdt.managedbuilder.core.IManagedBuildInfo;
 import org.eclipse.cdt.managedbuilder.core.ITool;
 import org.eclipse.cdt.managedbuilder.core.ManagedBuildManager;
 import org.eclipse.cdt.managedbuilder.pkgconfig.Activator;
+import org.eclipse.cdt.managedbuilder.pkgconfig.preferences.PreferenceStore.PkgConfigConfigurations;
 import org.eclipse.cdt.managedbuilder.pkgconfig.preferences.PreferenceStore.PkgConfigExecutable;
+import org.eclipse.cdt.managedbuilder.pkgconfig.preferences.PreferenceStore.PkgConfigResolver;
 import org.eclipse.cdt.ui.newui.AbstractPropertyDialog;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.jface.dialogs.IDialogConstants;
@@ -32,6 +34,7 @@ import org.eclipse.swt.widgets.FileDialog;
 import org.eclipse.swt.widgets.Group;
 import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Spinner;
 
 public class PkgConfigSettingsDialog extends AbstractPropertyDialog {
 	private static final String UNSET_PKG_CONFIG = ""; //$NON-NLS-1$
@@ -49,6 +52,10 @@ public class PkgConfigSettingsDialog extends AbstractPropertyDialog {
 	protected String selectedFile;
 	private Button radioDefault;
 	private Button radioCustom;
+	private Button checkBuiltinResolver;
+	private Button checkAllConfigurations;
+	private Spinner maxConcurrentQueriesSpinner;
+	private Spinner timeoutSpinner;
 
 	public PkgConfigSettingsDialog(Shell _parent, String title, IProject project) {
 		super(_parent, title);
@@ -86,6 +93,26 @@ public class PkgConfigSettingsDialog extends AbstractPropertyDialog {
 						PkgConfigSettingsDialog.this.projectName);
 			}
 			
+			if (this.checkBuiltinResolver.getSelection()) {
+				PreferenceStore.setPkgConfigResolver(PkgConfigResolver.Builtin,
+						this.projectName);
+			} else {
+				PreferenceStore.setPkgConfigResolver(PkgConfigResolver.Executable,
+						this.projectName);
+			}
+
+			if (this.checkAllConfigurations.getSelection()) {
+				PreferenceStore.setPkgConfigConfigurations(PkgConfigConfigurations.All,
+						this.projectName);
+			} else {
+				PreferenceStore.setPkgConfigConfigurations(PkgConfigConfigurations.Active,
+						this.projectName);
+			}
+
+			PreferenceStore.setMaxConcurrentQueries(this.maxConcurrentQueriesSpinner
+					.getSelection());
+			PreferenceStore.setQueryTimeout(this.timeoutSpinner.getSelection());
+
 			String pkgConfigPathKind = this.pkgConfigPathKindCombo.getText();
 
 			PreferenceStore.clearPkgConfigLibDir(this.projectName);
@@ -109,7 +136,7 @@ public class PkgConfigSettingsDialog extends AbstractPropertyDialog {
 
 	@Override
 	protected Control createDialogArea(Composite parent) {
-		this.shell.setSize(700, 350);
+		this.shell.setSize(700, 480);
 
 		GridLayout gridLayout = new GridLayout();
 		parent.setLayout(gridLayout);
@@ -163,6 +190,22 @@ public class PkgConfigSettingsDialog extends AbstractPropertyDialog {
 			}
 		});
 
+		this.checkBuiltinResolver = new Button(group, SWT.CHECK);
+		GridData layoutData3 = new GridData(GridData.FILL_HORIZONTAL);
+		layoutData3.horizontalSpan = 2;
+		this.checkBuiltinResolver.setLayoutData(layoutData3);
+		this.checkBuiltinResolver.setText(Messages.PkgConfigSettingsDialog_3);
+		this.checkBuiltinResolver.setSelection(PreferenceStore
+				.isPkgConfigResolverBuiltin(this.projectName));
+
+		this.checkAllConfigurations = new Button(group, SWT.CHECK);
+		GridData layoutData4 = new GridData(GridData.FILL_HORIZONTAL);
+		layoutData4.horizontalSpan = 2;
+		this.checkAllConfigurations.setLayoutData(layoutData4);
+		this.checkAllConfigurations.setText(Messages.PkgConfigSettingsDialog_4);
+		this.checkAllConfigurations.setSelection(PreferenceStore
+				.isPkgConfigConfigurationsAll(this.projectName));
+
 		Group group2 = new Group(composite, SWT.NONE);
 		group2.setLayoutData(layoutData);
 		group2.setLayout(new GridLayout(2, false));
@@ -211,6 +254,25 @@ public class PkgConfigSettingsDialog extends AbstractPropertyDialog {
 			this.pkgConfigPathKindCombo.setData(UNSET_PKG_CONFIG);
 		}
 
+		Group group3 = new Group(composite, SWT.NONE);
+		group3.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+		group3.setLayout(new GridLayout(2, false));
+		group3.setText(Messages.PkgConfigSettingsDialog_5);
+
+		Label maxConcurrentQueriesLabel = new Label(group3, SWT.NONE);
+		maxConcurrentQueriesLabel.setText(Messages.PkgConfigSettingsDialog_6);
+		this.maxConcurrentQueriesSpinner = new Spinner(group3, SWT.BORDER);
+		this.maxConcurrentQueriesSpinner.setValues(
+				PreferenceStore.getMaxConcurrentQueries(), 1,
+				PreferenceStore.MAX_CONCURRENT_QUERIES, 0, 1, 4);
+
+		Label timeoutLabel = new Label(group3, SWT.NONE);
+		timeoutLabel.setText(Messages.PkgConfigSettingsDialog_7);
+		this.timeoutSpinner = new Spinner(group3, SWT.BORDER);
+		this.timeoutSpinner.setValues(
+				(int) (PreferenceStore.getQueryTimeout() / 1000), 0,
+				PreferenceStore.MAX_TIMEOUT, 0, 1, 10);
+
 		// Buttons
 		Composite compButtons = new Composite(composite, SWT.FILL);
 		GridData gd = new GridData(SWT.RIGHT, SWT.BOTTOM, true, false);
@@ -31,6 +31,10 @@ public class PreferenceInitializer extends AbstractPreferenceInitializer {
 		IEclipsePreferences store = DefaultScope.INSTANCE.getNode(Activator.PLUGIN_ID);
 		store.put(PreferenceConstants.PKG_CONFIG_PATH, ""); //$NON-NLS-1$
 		store.put(PreferenceConstants.PKG_CONFIG_LIBDIR, ""); //$NON-NLS-1$
+		store.putInt(PreferenceStore.PKG_CONFIG_MAX_CONCURRENT_QUERIES,
+				Runtime.getRuntime().availableProcessors());
+		store.putInt(PreferenceStore.PKG_CONFIG_TIMEOUT,
+				PreferenceStore.DEFAULT_TIMEOUT);
 	}
 
 }
\ No newline at end of file
@@ -12,6 +12,7 @@ package org.eclipse.cdt.managedbuilder.pkgconfig.preferences;
 
 import org.eclipse.cdt.managedbuilder.pkgconfig.Activator;
 import org.eclipse.cdt.managedbuilder.pkgconfig.util.ArrayUtil;
+import org.eclipse.core.runtime.preferences.DefaultScope;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences;
 import org.eclipse.core.runtime.preferences.InstanceScope;
 
@@ -27,11 +28,27 @@ public class PreferenceStore {
 	private static final String PKG_CONFIG_BIN = "PKG_CONFIG_BIN"; //$NON-NLS-1$
 	private static final String PKG_CONFIG_LIBDIR = "PKG_CONFIG_LIBDIR"; //$NON-NLS-1$
 	private static final String PKG_CONFIG_PATH = "PKG_CONFIG_PATH"; //$NON-NLS-1$
+	private static final String PKG_CONFIG_RESOLVER_KIND = "PKG_CONFIG_RESOLVER_KIND"; //$NON-NLS-1$
+	private static final String PKG_CONFIG_CONFIGURATIONS = "PKG_CONFIG_CONFIGURATIONS"; //$NON-NLS-1$
+	// workspace preferences, their defaults are set by the PreferenceInitializer
+	static final String PKG_CONFIG_MAX_CONCURRENT_QUERIES = "PKG_CONFIG_MAX_CONCURRENT_QUERIES"; //$NON-NLS-1$
+	static final String PKG_CONFIG_TIMEOUT = "PKG_CONFIG_TIMEOUT"; //$NON-NLS-1$
+	static final int DEFAULT_TIMEOUT = 30;
+	static final int MAX_TIMEOUT = 600;
+	static final int MAX_CONCURRENT_QUERIES = 64;
 
 	public enum PkgConfigExecutable {
 		Default, Custom
 	}
 
+	public enum PkgConfigResolver {
+		Builtin, Executable
+	}
+
+	public enum PkgConfigConfigurations {
+		Active, All
+	}
+
 	/**
 	 * Get the Pkg-config preference store.
 	 * 
@@ -42,6 +59,15 @@ public class PreferenceStore {
 		return prefs;
 	}
 
+	/**
+	 * Get the default values of the Pkg-config preference store.
+	 * 
+	 * @return Pkg-config default preferences.
+	 */
+	private static IEclipsePreferences getDefaultPreferenceStore() {
+		return DefaultScope.INSTANCE.getNode(Activator.PLUGIN_ID);
+	}
+
 	/**
 	 * Get a value from the preference store.
 	 * 
@@ -95,6 +121,109 @@ public class PreferenceStore {
 				getPreferenceStoreValue(getPkgConfigExecutableKey(project)));
 	}
 
+	/**
+	 * Set the way pkg-config queries are resolved to the preference store.
+	 * 
+	 * @param pkgConfigResolver
+	 *            Read .pc files directly or run the pkg-config executable.
+	 * @param project
+	 */
+	public static void setPkgConfigResolver(
+			PkgConfigResolver pkgConfigResolver, String project) {
+		setPreferenceStoreValue(getPkgConfigResolverKey(project),
+				pkgConfigResolver.toString());
+	}
+
+	/**
+	 * Is the built-in .pc file resolver used instead of the pkg-config
+	 * executable. The executable is still used for the queries that the
+	 * built-in resolver cannot answer. The executable is used by default.
+	 * 
+	 * @return True if .pc files are read directly else return false to always run the executable.
+	 */
+	public static boolean isPkgConfigResolverBuiltin(String project) {
+		return PkgConfigResolver.Builtin.name().equals(
+				getPreferenceStoreValue(getPkgConfigResolverKey(project)));
+	}
+
+	/**
+	 * Set the build configurations the flags of the checked packages are
+	 * applied to.
+	 * 
+	 * @param pkgConfigConfigurations
+	 *            The active configuration or all the configurations.
+	 * @param project
+	 */
+	public static void setPkgConfigConfigurations(
+			PkgConfigConfigurations pkgConfigConfigurations, String project) {
+		setPreferenceStoreValue(getPkgConfigConfigurationsKey(project),
+				pkgConfigConfigurations.toString());
+	}
+
+	/**
+	 * Are the flags of the checked packages applied to all the build
+	 * configurations of the project.
+	 * 
+	 * @return True if all the configurations are updated else return false to update only the active one.
+	 */
+	public static boolean isPkgConfigConfigurationsAll(String project) {
+		return PkgConfigConfigurations.All.name().equals(
+				getPreferenceStoreValue(getPkgConfigConfigurationsKey(project)));
+	}
+
+	/**
+	 * Set the maximum number of pkg-config queries run at the same time.
+	 * The value is shared by the whole workspace and limits both the worker
+	 * threads and the pkg-config processes.
+	 * 
+	 * @param max
+	 *            Maximum number of concurrent queries, 0 to use the default.
+	 */
+	public static void setMaxConcurrentQueries(int max) {
+		getPreferenceStore().putInt(PKG_CONFIG_MAX_CONCURRENT_QUERIES, max);
+	}
+
+	/**
+	 * Get the maximum number of pkg-config queries run at the same time.
+	 * Defaults to the number of available processors.
+	 * 
+	 * @return Maximum number of concurrent queries, at least 1.
+	 */
+	public static int getMaxConcurrentQueries() {
+		int max = getPreferenceStore().getInt(
+				PKG_CONFIG_MAX_CONCURRENT_QUERIES,
+				getDefaultPreferenceStore().getInt(
+						PKG_CONFIG_MAX_CONCURRENT_QUERIES, 0));
+		if (max <= 0) {
+			max = Runtime.getRuntime().availableProcessors();
+		}
+		return Math.max(1, max);
+	}
+
+	/**
+	 * Set the time after which a running pkg-config process is destroyed.
+	 * The value is shared by the whole workspace.
+	 * 
+	 * @param seconds
+	 *            Timeout in seconds, 0 for none.
+	 */
+	public static void setQueryTimeout(int seconds) {
+		getPreferenceStore().putInt(PKG_CONFIG_TIMEOUT, seconds);
+	}
+
+	/**
+	 * Get the time after which a running pkg-config process is destroyed.
+	 * Defaults to 30 seconds.
+	 * 
+	 * @return Timeout in milliseconds, 0 for none.
+	 */
+	public static long getQueryTimeout() {
+		int seconds = getPreferenceStore().getInt(PKG_CONFIG_TIMEOUT,
+				getDefaultPreferenceStore().getInt(PKG_CONFIG_TIMEOUT,
+						DEFAULT_TIMEOUT));
+		return Math.max(0, seconds) * 1000L;
+	}
+
 	/**
 	 * Set pkg-config bin to the preference store.
 	 * 
@@ -227,6 +356,32 @@ public class PreferenceStore {
 				+ project;
 	}
 
+	/**
+	 * Compute the key for the given pkg-config resolver kind and the given
+	 * project.
+	 * 
+	 * @param project
+	 *            Project name
+	 * @return Key
+	 */
+	private static String getPkgConfigResolverKey(String project) {
+		return PKG_CONFIG_RESOLVER_KIND + " - " //$NON-NLS-1$
+				+ project;
+	}
+
+	/**
+	 * Compute the key for the given build configuration kind and the given
+	 * project.
+	 * 
+	 * @param project
+	 *            Project name
+	 * @return Key
+	 */
+	private static String getPkgConfigConfigurationsKey(String project) {
+		return PKG_CONFIG_CONFIGURATIONS + " - " //$NON-NLS-1$
+				+ project;
+	}
+
 	/**
 	 * Compute the key for the given pkg-config lib dir and the given project.
 	 * 
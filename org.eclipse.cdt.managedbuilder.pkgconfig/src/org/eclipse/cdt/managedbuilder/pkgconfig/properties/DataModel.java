@@ -10,15 +10,20 @@
  *******************************************************************************/
 package org.eclipse.cdt.managedbuilder.pkgconfig.properties;
 
+import java.util.Locale;
+
 public class DataModel {
 	
-	private String pkg;
-	private String desc;
+	private final String pkg;
+	private final String desc;
+	// package name folded to lower case for sorting
+	private final String sortKey;
 
 	public DataModel(String pkg, String desc) {
 		super();
 		this.pkg = pkg;
 		this.desc = desc;
+		this.sortKey = pkg.toLowerCase(Locale.ENGLISH);
 	}
 
 	public String getPackage() {
@@ -28,10 +33,19 @@ public class DataModel {
 	public String getDescription() {
 		return this.desc;
 	}
+
+	/**
+	 * Get the key the packages are sorted by.
+	 * 
+	 * @return Package name in lower case
+	 */
+	String getSortKey() {
+		return this.sortKey;
+	}
 	
 	@Override
 	public String toString() {
 		return this.pkg;
 	}
 
-}
\ No newline at end of file
+}
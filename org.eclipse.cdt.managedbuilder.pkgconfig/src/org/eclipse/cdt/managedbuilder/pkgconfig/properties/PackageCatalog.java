@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012 Petri Tuononen and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Petri Tuononen - Initial implementation
+ *******************************************************************************/
+package org.eclipse.cdt.managedbuilder.pkgconfig.properties;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.cdt.managedbuilder.pkgconfig.util.PcDirectoryWatcher;
+import org.eclipse.cdt.managedbuilder.pkgconfig.util.PcDirectoryWatcher.IPcDirectoryListener;
+import org.eclipse.cdt.managedbuilder.pkgconfig.util.PkgConfigEnvironment;
+import org.eclipse.cdt.managedbuilder.pkgconfig.util.PkgConfigUtil;
+
+/**
+ * Workspace-level catalog of the packages pkg-config finds.
+ *
+ * Projects with the same pkg-config executable, PKG_CONFIG_PATH and
+ * PKG_CONFIG_LIBDIR share one immutable catalog. A catalog is rebuilt only
+ * after a .pc file in one of its search directories has been created,
+ * modified or deleted.
+ */
+public class PackageCatalog implements IPcDirectoryListener {
+
+	// number of different pkg-config environments kept
+	private static final int MAX_ENVIRONMENTS = 16;
+
+	private static PackageCatalog instance;
+
+	private final Map<PkgConfigEnvironment, List<DataModel>> catalogs = new LinkedHashMap<PkgConfigEnvironment, List<DataModel>>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<PkgConfigEnvironment, List<DataModel>> eldest) {
+			return size() > MAX_ENVIRONMENTS;
+		}
+	};
+	// incremented on every change so that a catalog built while a .pc file
+	// changed is not kept
+	private long generation = 0;
+
+	/**
+	 * Get the shared catalog.
+	 *
+	 * @return PackageCatalog
+	 */
+	public static synchronized PackageCatalog getDefault() {
+		if (instance == null) {
+			instance = new PackageCatalog();
+			PcDirectoryWatcher.getDefault().addListener(instance);
+		}
+		return instance;
+	}
+
+	/**
+	 * Drop the shared catalog. Called when the plug-in is stopped.
+	 */
+	public static synchronized void shutdown() {
+		if (instance != null) {
+			PcDirectoryWatcher.getDefault().removeListener(instance);
+			instance = null;
+		}
+	}
+
+	/**
+	 * Get the packages available to the given project.
+	 *
+	 * @param project Project name
+	 * @return Unmodifiable list sorted by package name
+	 */
+	public List<DataModel> getEntries(String project) {
+		PkgConfigEnvironment env = PkgConfigEnvironment.forProject(project);
+		long buildGeneration;
+		synchronized (this.catalogs) {
+			List<DataModel> dms = this.catalogs.get(env);
+			if (dms != null) {
+				return dms;
+			}
+			buildGeneration = this.generation;
+		}
+
+		PackageCatalogBuilder builder = new PackageCatalogBuilder();
+		if (!PkgConfigUtil.getAllPackages(project, builder)) {
+			return Collections.emptyList();
+		}
+		List<DataModel> dms = builder.build();
+
+		// keep the catalog only if changes to it can be noticed
+		if (PcDirectoryWatcher.getDefault().watch(env.getSearchDirectories())) {
+			synchronized (this.catalogs) {
+				if (buildGeneration == this.generation) {
+					this.catalogs.put(env, dms);
+				}
+			}
+		}
+		return dms;
+	}
+
+	@Override
+	public void pcDirectoryChanged(File dir) {
+		synchronized (this.catalogs) {
+			this.generation++;
+			Iterator<PkgConfigEnvironment> it = this.catalogs.keySet()
+					.iterator();
+			while (it.hasNext()) {
+				if (it.next().getSearchDirectories().contains(dir)) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+}
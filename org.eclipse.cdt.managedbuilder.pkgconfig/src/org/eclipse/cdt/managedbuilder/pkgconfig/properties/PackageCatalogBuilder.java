@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012 Petri Tuononen and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Petri Tuononen - Initial implementation
+ *******************************************************************************/
+package org.eclipse.cdt.managedbuilder.pkgconfig.properties;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.eclipse.cdt.managedbuilder.pkgconfig.util.PkgConfigLauncher.ILineHandler;
+
+/**
+ * Builds the package catalog from "pkg-config --list-all" output one line
+ * at a time. Each line is split into the package name and the description
+ * when it arrives. The packages are sorted once when the catalog is built.
+ */
+public class PackageCatalogBuilder implements ILineHandler {
+
+	private static final Comparator<DataModel> ORDER = new Comparator<DataModel>() {
+		@Override
+		public int compare(DataModel dm1, DataModel dm2) {
+			int result = dm1.getSortKey().compareTo(dm2.getSortKey());
+			return result != 0 ? result : dm1.getPackage().compareTo(
+					dm2.getPackage());
+		}
+	};
+
+	private final List<DataModel> dms = new ArrayList<DataModel>();
+
+	@Override
+	public void handleLine(String line) {
+		int length = line.length();
+		// package name ends at the first white space
+		int nameEnd = 0;
+		while (nameEnd < length && !Character.isWhitespace(line.charAt(nameEnd))) {
+			nameEnd++;
+		}
+		if (nameEnd == 0) {
+			return;
+		}
+		// description starts after the white space that aligns it
+		int descStart = nameEnd;
+		while (descStart < length
+				&& Character.isWhitespace(line.charAt(descStart))) {
+			descStart++;
+		}
+		this.dms.add(new DataModel(line.substring(0, nameEnd), line
+				.substring(descStart)));
+	}
+
+	/**
+	 * Get the catalog sorted by package name ignoring case.
+	 * 
+	 * @return Unmodifiable list of DataModel entries
+	 */
+	public List<DataModel> build() {
+		Collections.sort(this.dms, ORDER);
+		return Collections.unmodifiableList(new ArrayList<DataModel>(this.dms));
+	}
+
+}
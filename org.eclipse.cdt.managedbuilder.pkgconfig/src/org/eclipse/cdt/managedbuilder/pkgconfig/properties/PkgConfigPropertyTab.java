@@ -12,13 +12,13 @@ package org.eclipse.cdt.managedbuilder.pkgconfig.properties;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
-import org.eclipse.cdt.core.CCorePlugin;
-import org.eclipse.cdt.core.model.CoreModel;
-import org.eclipse.cdt.core.model.ICProject;
 import org.eclipse.cdt.core.settings.model.ICConfigurationDescription;
 import org.eclipse.cdt.core.settings.model.ICProjectDescription;
 import org.eclipse.cdt.core.settings.model.ICResourceDescription;
@@ -33,17 +33,10 @@ import org.eclipse.cdt.managedbuilder.pkgconfig.preferences.Messages;
 import org.eclipse.cdt.managedbuilder.pkgconfig.preferences.PkgConfigPathListEditor;
 import org.eclipse.cdt.managedbuilder.pkgconfig.preferences.PkgConfigSettingsDialog;
 import org.eclipse.cdt.managedbuilder.pkgconfig.preferences.PreferenceStore;
+import org.eclipse.cdt.managedbuilder.pkgconfig.settings.CheckedPackages;
 import org.eclipse.cdt.managedbuilder.pkgconfig.settings.PkgConfigExternalSettingProvider;
-import org.eclipse.cdt.managedbuilder.pkgconfig.util.Parser;
-import org.eclipse.cdt.managedbuilder.pkgconfig.util.PathToToolOption;
-import org.eclipse.cdt.managedbuilder.pkgconfig.util.PkgConfigUtil;
 import org.eclipse.cdt.ui.newui.AbstractCPropertyTab;
-import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.CoreException;
-import org.eclipse.core.runtime.IProgressMonitor;
-import org.eclipse.core.runtime.IStatus;
-import org.eclipse.core.runtime.Status;
-import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.viewers.ArrayContentProvider;
 import org.eclipse.jface.viewers.CheckStateChangedEvent;
 import org.eclipse.jface.viewers.CheckboxTableViewer;
@@ -58,6 +51,7 @@ import org.eclipse.swt.custom.SashForm;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Table;
 import org.eclipse.swt.widgets.TableColumn;
 import org.eclipse.swt.widgets.TableItem;
@@ -72,16 +66,27 @@ public class PkgConfigPropertyTab extends AbstractCPropertyTab {
 	PkgConfigPathListEditor configPathListEditor;
 	LibDirFieldEditor libDirEditor;
 	CheckboxTableViewer pkgCfgViewer;
-	private Set<Object> previouslyChecked;
-	private ArrayList<Object> newItems = new ArrayList<Object>();
+	private Label previewLabel;
+	// packages checked in the stored settings
+	private Set<String> committedPackages = new HashSet<String>();
+	// packages checked in the tab, listed or not. The viewer loses its
+	// check states when its input is replaced, so they are kept here.
+	private Set<String> stagedPackages = new HashSet<String>();
+	// description the check states were loaded from
+	private ICResourceDescription stagedDesc;
+	// advanced settings the stored settings were written with
+	private boolean committedAllConfigurations;
+	private boolean committedBuiltinResolver;
+	// are there check state changes that have not been committed yet
+	private boolean dirty = false;
 	private static final int BUTTON_SELECT = 0;
 	private static final int BUTTON_DESELECT = 1;
 	private static final int BUTTON_ADVANCED = 2;
-	private final String PACKAGES = "packages"; //$NON-NLS-1$
-	private boolean reindexToggle = false;
 
 	private SashForm sashForm;
 
+	private static final int MAX_PREVIEW_PACKAGES = 10;
+
 	private static final String[] BUTTONS = new String[] { 
 			"Select", //$NON-NLS-1$
 			"Deselect", //$NON-NLS-1$
@@ -130,8 +135,7 @@ public class PkgConfigPropertyTab extends AbstractCPropertyTab {
 		this.pkgCfgViewer.setContentProvider(new ArrayContentProvider());
 		this.selectedToolChain = getSelectedToolchain();
 		updatePkgConfigBinPath();
-		this.pkgCfgViewer.setInput(new DataModelProvider(this.page.getProject()
-				.getName()).getEntries());
+		updateInput();
 
 		this.pkgCfgViewer.addCheckStateListener(new PkgListener());
 
@@ -152,13 +156,18 @@ public class PkgConfigPropertyTab extends AbstractCPropertyTab {
 		Composite compositeButtons = new Composite(c1, SWT.NONE);
 		initButtons(compositeButtons, BUTTONS);
 
-		initializePackageStates();
-		this.previouslyChecked = new HashSet<Object>(
-				Arrays.asList(getCheckedItems()));
+		// pending changes
+		this.previewLabel = new Label(c1, SWT.WRAP);
+		GridData previewData = new GridData(GridData.FILL_HORIZONTAL);
+		previewData.horizontalSpan = 3;
+		this.previewLabel.setLayoutData(previewData);
+
+		initializePackageStates(getResDesc());
 	}
 
 	@Override
 	public void handleTabEvent(int kind, Object data) {
+		super.handleTabEvent(kind, data);
 
 		if (this.selectedToolChain != null
 				&& this.selectedToolChain.getId() != getSelectedToolchain()
@@ -166,170 +175,210 @@ public class PkgConfigPropertyTab extends AbstractCPropertyTab {
 			this.selectedToolChain = getSelectedToolchain();
 			updatePkgConfigBinPath();
 			if (PkgConfigPropertyTab.this.pkgCfgViewer != null) {
-				PkgConfigPropertyTab.this.pkgCfgViewer
-						.setInput(new DataModelProvider(
-								PkgConfigPropertyTab.this.page.getProject()
-										.getName()).getEntries());
+				updateInput();
 				PkgConfigPropertyTab.this.pkgCfgViewer.refresh();
 			}
 		}
 	}
 
 	/**
-	 * Get checked items.
-	 * 
-	 * @return
+	 * Stage the check states of the listed packages. The packages that are
+	 * not listed keep their staged state.
+	 */
+	private void stageCheckStates() {
+		for (TableItem item : this.pkgCfgViewer.getTable().getItems()) {
+			if (item.getChecked()) {
+				this.stagedPackages.add(item.getText());
+			} else {
+				this.stagedPackages.remove(item.getText());
+			}
+		}
+	}
+
+	/**
+	 * Show the staged check states in the viewer.
 	 */
-	private Object[] getCheckedItems() {
-		return this.pkgCfgViewer.getCheckedElements();
+	private void showCheckStates() {
+		for (TableItem item : this.pkgCfgViewer.getTable().getItems()) {
+			item.setChecked(this.stagedPackages.contains(item.getText()));
+		}
 	}
 
 	/**
-	 * Action for the check state change.
+	 * Action for the check state change. The change is only staged, it is
+	 * committed to the project settings on OK or Apply.
 	 */
 	void handleCheckStateChange() {
-		Object[] checkedItems = getCheckedItems();
-
-		// check if new items checked
-		if (checkedItems.length > this.previouslyChecked.size()) {
-			// add checked items to an array list
-			for (Object o : checkedItems) {
-				// if new item
-				if (!this.previouslyChecked.contains(o)) {
-					this.newItems.add(o);
-				}
+		stageCheckStates();
+		this.dirty = true;
+		updatePreview();
+	}
+
+	/**
+	 * Show the packages that will be added and removed when the changes are
+	 * committed.
+	 */
+	private void updatePreview() {
+		if (this.previewLabel == null || this.previewLabel.isDisposed()) {
+			return;
+		}
+		Set<String> checked = this.stagedPackages;
+		List<String> changes = new ArrayList<String>();
+		String project = this.page.getProject().getName();
+		boolean allConfigurations = PreferenceStore
+				.isPkgConfigConfigurationsAll(project);
+		if (allConfigurations != this.committedAllConfigurations) {
+			changes.add(allConfigurations ? "flags applied to all configurations" //$NON-NLS-1$
+					: "flags applied to each configuration separately"); //$NON-NLS-1$
+		}
+		boolean builtinResolver = PreferenceStore
+				.isPkgConfigResolverBuiltin(project);
+		if (builtinResolver != this.committedBuiltinResolver) {
+			changes.add(builtinResolver ? ".pc files read directly" //$NON-NLS-1$
+					: "pkg-config run for every query"); //$NON-NLS-1$
+		}
+		List<String> pkgChanges = new ArrayList<String>();
+		for (String pkg : checked) {
+			if (!this.committedPackages.contains(pkg)) {
+				pkgChanges.add("+" + pkg); //$NON-NLS-1$
 			}
-			addPackageValues(this.newItems.toArray(), this.page.getProject());
-			this.reindexToggle = true;
 		}
-
-		saveChecked();
-		updateData(getResDesc());
-		this.previouslyChecked = new HashSet<Object>(
-				Arrays.asList(checkedItems));
-		this.newItems.clear();
+		for (String pkg : this.committedPackages) {
+			if (!checked.contains(pkg)) {
+				pkgChanges.add("-" + pkg); //$NON-NLS-1$
+			}
+		}
+		if (changes.isEmpty() && pkgChanges.isEmpty()) {
+			this.previewLabel.setText(""); //$NON-NLS-1$
+			return;
+		}
+		Collections.sort(pkgChanges, new Comparator<String>() {
+			@Override
+			public int compare(String a, String b) {
+				return a.substring(1).compareToIgnoreCase(b.substring(1));
+			}
+		});
+		// the changed settings first, then the packages
+		for (int i = 0; i < pkgChanges.size() && i < MAX_PREVIEW_PACKAGES; i++) {
+			changes.add(pkgChanges.get(i));
+		}
+		StringBuilder sb = new StringBuilder(
+				"Pending changes, applied on OK or Apply: "); //$NON-NLS-1$
+		for (int i = 0; i < changes.size(); i++) {
+			if (i > 0) {
+				sb.append(", "); //$NON-NLS-1$
+			}
+			sb.append(changes.get(i));
+		}
+		if (pkgChanges.size() > MAX_PREVIEW_PACKAGES) {
+			sb.append(String.format(" and %1$d more", //$NON-NLS-1$
+					Integer.valueOf(pkgChanges.size() - MAX_PREVIEW_PACKAGES)));
+		}
+		this.previewLabel.setText(sb.toString());
+		this.previewLabel.getParent().layout();
 	}
 
 	/**
-	 * Add new flags that the packages need to Tools' Options. Only for other
-	 * flags.
+	 * Commit the staged check states to the given descriptions. The
+	 * descriptions are saved by the property page.
 	 * 
-	 * @param addedItems
-	 *            Object[]
-	 * @param proj
-	 *            IProject
+	 * @param descs Resource descriptions
 	 */
-	private static void addPackageValues(Object[] addedItems, IProject proj) {
-		for (Object item : addedItems) {
-			// handle options
-			String cflags = PkgConfigUtil.getCflags(item.toString(),
-					proj.getName());
-			String[] optionsArray = Parser.parseCflagOtherFlagsOptions(cflags);
-			if (optionsArray != null) {
-				for (String option : optionsArray) {
-					PathToToolOption.addOtherFlag(option, proj);
-				}
-			}
-			
-			optionsArray = Parser.parseCflagDefinedSymbolsOptions(cflags);
-			if (optionsArray != null) {
-				for (String option : optionsArray) {
-					PathToToolOption.addDefinedSymbol(option, proj);
-				}
+	private void commit(ICResourceDescription... descs) {
+		if (!this.dirty) {
+			return;
+		}
+		for (ICResourceDescription desc : descs) {
+			if (desc != null) {
+				saveChecked(desc);
+				updateProviders(desc);
 			}
 		}
-		ManagedBuildManager.saveBuildInfo(proj, true);
+		this.committedPackages = new HashSet<String>(this.stagedPackages);
+		saveCommittedSettings();
+		this.dirty = false;
+		updatePreview();
 	}
 
 	/**
 	 * Initializes the check state of the packages from the storage.
+	 * 
+	 * @param resDesc
 	 */
-	private void initializePackageStates() {
-		ICConfigurationDescription desc = getResDesc().getConfiguration();
-		ICStorageElement strgElem = null;
+	private void initializePackageStates(ICResourceDescription resDesc) {
+		this.stagedDesc = resDesc;
+		this.stagedPackages = new HashSet<String>();
+		ICConfigurationDescription desc = resDesc.getConfiguration();
 		try {
-			strgElem = desc.getStorage(this.PACKAGES, true);
-			TableItem[] items = this.pkgCfgViewer.getTable().getItems();
-			String value = null;
-			for (TableItem item : items) {
-				/*
-				 * The package names with + symbols were converted so that + ->
-				 * plus in order to prevent an error when saving to
-				 * ICStorageElement.
-				 */
-				if (item.getText().contains("+")) { //$NON-NLS-1$
-					String newItemName = item.getText().replace("+", "plus"); //$NON-NLS-1$ //$NON-NLS-2$
-					value = strgElem.getAttribute(newItemName);
-				} else {
-					value = strgElem.getAttribute(item.getText());
-				}
-				if (value != null) {
-					if (value.equals("true")) { //$NON-NLS-1$
-						item.setChecked(true);
-					}
-				}
-			}
+			this.stagedPackages.addAll(CheckedPackages.load(desc.getStorage(
+					CheckedPackages.STORAGE, false)));
 		} catch (CoreException e) {
 			Activator.getDefault().log(e, "Initialization of packages failed."); //$NON-NLS-1$
 		}
+		showCheckStates();
+		this.committedPackages = new HashSet<String>(this.stagedPackages);
+		saveCommittedSettings();
+		this.dirty = false;
+		updatePreview();
+	}
+
+	/**
+	 * Remember the advanced settings the stored settings are written with,
+	 * so that a change made in the advanced settings dialog can be told
+	 * apart from no change.
+	 */
+	private void saveCommittedSettings() {
+		String project = this.page.getProject().getName();
+		this.committedAllConfigurations = PreferenceStore
+				.isPkgConfigConfigurationsAll(project);
+		this.committedBuiltinResolver = PreferenceStore
+				.isPkgConfigResolverBuiltin(project);
+	}
+
+	/**
+	 * Have the advanced settings that change the written settings been
+	 * changed since the last commit.
+	 * 
+	 * @return boolean
+	 */
+	private boolean isSettingsChanged() {
+		String project = this.page.getProject().getName();
+		return PreferenceStore.isPkgConfigConfigurationsAll(project) != this.committedAllConfigurations
+				|| PreferenceStore.isPkgConfigResolverBuiltin(project) != this.committedBuiltinResolver;
 	}
 
 	/**
 	 * Saves checked state of the packages.
+	 * 
+	 * @param resDesc
 	 */
-	private void saveChecked() {
-		ICConfigurationDescription desc = getResDesc().getConfiguration();
-		ICStorageElement strgElem = null;
+	private void saveChecked(ICResourceDescription resDesc) {
+		ICConfigurationDescription desc = resDesc.getConfiguration();
 		// get storage or create one if it doesn't exist
 		try {
-			strgElem = desc.getStorage(this.PACKAGES, true);
+			ICStorageElement strgElem = desc.getStorage(
+					CheckedPackages.STORAGE, true);
+			// apply only the staged changes, so that the packages checked
+			// in the storage but unknown to the tab are kept
+			Set<String> checked = CheckedPackages.load(strgElem);
+			for (String pkg : this.committedPackages) {
+				if (!this.stagedPackages.contains(pkg)) {
+					checked.remove(pkg);
+				}
+			}
+			checked.addAll(this.stagedPackages);
+			CheckedPackages.save(strgElem, checked);
 		} catch (CoreException e) {
 			Activator.getDefault().log(e,
 					"Getting packages from the storage failed."); //$NON-NLS-1$
 		}
-		TableItem[] items = this.pkgCfgViewer.getTable().getItems();
-		for (TableItem item : items) {
-			if (item != null) {
-				String chkd;
-				// form literal form of boolean state
-				if (item.getChecked()) {
-					chkd = "true"; //$NON-NLS-1$
-				} else {
-					chkd = "false"; //$NON-NLS-1$
-				}
-				/*
-				 * add package name and the checkbox state to the storage
-				 */
-				try {
-					String pkgName = item.getText();
-					// need to convert + symbols to "plus"
-					if (pkgName.contains("+")) { //$NON-NLS-1$
-						String newPkgName = pkgName.replace("+", "plus"); //$NON-NLS-1$ //$NON-NLS-2$
-						if (strgElem != null) {
-							strgElem.setAttribute(newPkgName, chkd);
-						}
-					} else {
-						if (strgElem != null) {
-							strgElem.setAttribute(pkgName, chkd);
-						}
-					}
-				} catch (Exception e) {
-					Activator.getDefault().log(e,
-							"Setting attribute to ICStorageElement failed."); //$NON-NLS-1$
-					// Seems like ICStorageElement cannot store Strings with +
-					/*
-					 * INVALID_CHARACTER_ERR: An invalid or illegal XML
-					 * character is specified.
-					 */
-				}
-			}
-		}
 	}
 
 	@Override
 	protected void performApply(ICResourceDescription src,
 			ICResourceDescription dst) {
-		//updateData(getResDesc());
+		// the page keeps editing src after dst has been saved
+		commit(src, dst);
 	}
 
 	@Override
@@ -337,17 +386,14 @@ public class PkgConfigPropertyTab extends AbstractCPropertyTab {
 		// uncheck every checkbox
 		this.pkgCfgViewer.setCheckedElements(new Object[] {});
 
-		// remove values from Tools Options
+		// values are removed from Tools Options when committed
 		handleCheckStateChange();
 	}
 
 	@Override
 	protected void performOK() {
-		// freshen index if new packages have been selected
-		if (this.reindexToggle) {
-			rebuiltIndex();
-		}
-		this.reindexToggle = false;
+		// the index is updated when the settings have been written
+		commit(getResDesc());
 	}
 
 	@Override
@@ -357,54 +403,53 @@ public class PkgConfigPropertyTab extends AbstractCPropertyTab {
 
 	@Override
 	protected void updateData(ICResourceDescription cfg) {
-		final ICConfigurationDescription confDesc = cfg.getConfiguration();
-		if (confDesc != null) {
-			ICProjectDescription projDesc = confDesc.getProjectDescription();
-			if (projDesc != null) {
-				Job j = new Job("Update Pkg-config external settings provider") { //$NON-NLS-1$
-					@Override
-					protected IStatus run(IProgressMonitor monitor) {
-						try {
-							// a set holding external setting providers
-							Set<String> externalSettingsProviders = new LinkedHashSet<String>(
-									Arrays.asList(confDesc.getExternalSettingsProviderIds()));
-
-							// add pkg-config external setting provider
-							if (externalSettingsProviders.contains(PkgConfigExternalSettingProvider.ID) == false) {
-								externalSettingsProviders.add(PkgConfigExternalSettingProvider.ID);
-								confDesc.setExternalSettingsProviderIds(externalSettingsProviders.toArray(
-										new String[externalSettingsProviders.size()]));
-							}
-
-							// update external setting providers
-							confDesc.updateExternalSettingsProviders(new String[] { PkgConfigExternalSettingProvider.ID });
-							return Status.OK_STATUS;
-						}
-						catch (org.eclipse.cdt.core.settings.model.WriteAccessException e) {
-							Activator.getDefault().log(e,
-									"Setting/updating the project description failed."); //$NON-NLS-1$
-							return Status.CANCEL_STATUS;
-						}
-						catch (Exception e) {
-							Activator.getDefault().log(e,
-									"Setting/updating the project description failed."); //$NON-NLS-1$
-							return Status.CANCEL_STATUS;
-						}
-
-					}
-				};
-				j.setPriority(Job.INTERACTIVE);
-				j.schedule();
-				
-				try {
-					CoreModel.getDefault().setProjectDescription(
-							this.page.getProject(), projDesc);
-				} catch (CoreException e) {
-					Activator.getDefault().log(e,
-							"Setting/updating the project description failed."); //$NON-NLS-1$
-				}	
+		if (cfg == null || this.pkgCfgViewer == null || cfg == this.stagedDesc) {
+			return;
+		}
+		// keep the changes made to the previous configuration
+		commit(this.stagedDesc);
+		initializePackageStates(cfg);
+	}
+
+	/**
+	 * Register the pkg-config external setting provider in the configuration
+	 * of the description, or in all the configurations if the flags are
+	 * applied to all, and let the provider update the settings.
+	 * 
+	 * @param cfg
+	 */
+	private void updateProviders(ICResourceDescription cfg) {
+		ICConfigurationDescription confDesc = cfg.getConfiguration();
+		if (confDesc == null) {
+			return;
+		}
+		ICProjectDescription projDesc = confDesc.getProjectDescription();
+		// the provider of every configuration the flags are applied to
+		ICConfigurationDescription[] confDescs = projDesc != null
+				&& PreferenceStore.isPkgConfigConfigurationsAll(this.page.getProject().getName())
+				? projDesc.getConfigurations()
+				: new ICConfigurationDescription[] { confDesc };
+		try {
+			for (ICConfigurationDescription desc : confDescs) {
+				// a set holding external setting providers
+				Set<String> externalSettingsProviders = new LinkedHashSet<String>(
+						Arrays.asList(desc.getExternalSettingsProviderIds()));
+
+				// add pkg-config external setting provider
+				if (externalSettingsProviders.contains(PkgConfigExternalSettingProvider.ID) == false) {
+					externalSettingsProviders.add(PkgConfigExternalSettingProvider.ID);
+					desc.setExternalSettingsProviderIds(externalSettingsProviders.toArray(
+							new String[externalSettingsProviders.size()]));
+				}
+
+				// update external setting providers
+				desc.updateExternalSettingsProviders(new String[] { PkgConfigExternalSettingProvider.ID });
 			}
 		}
+		catch (org.eclipse.cdt.core.settings.model.WriteAccessException e) {
+			Activator.getDefault().log(e,
+					"Setting/updating the project description failed."); //$NON-NLS-1$
+		}
 	}
 
 	/**
@@ -539,10 +584,28 @@ public class PkgConfigPropertyTab extends AbstractCPropertyTab {
 		if (PkgConfigPropertyTab.this.pkgCfgViewer != null) {
 			// Update pkg-config libraries for the project
 			updatePkgConfigBinPath();
-			PkgConfigPropertyTab.this.pkgCfgViewer
-					.setInput(new DataModelProvider(
-							PkgConfigPropertyTab.this.page.getProject()
-									.getName()).getEntries());
+			updateInput();
+			// the configurations the flags are applied to or the way the
+			// packages are resolved may have changed
+			if (isSettingsChanged()) {
+				this.dirty = true;
+			}
+			updatePreview();
+		}
+	}
+
+	/**
+	 * Show the packages available to the project. The catalog is shared, so
+	 * the viewer is left as it is if the pkg-config environment of the
+	 * project has not changed. Otherwise the staged check states are shown
+	 * again in the new list.
+	 */
+	private void updateInput() {
+		List<DataModel> entries = new DataModelProvider(this.page.getProject()
+				.getName()).getEntries();
+		if (entries != this.pkgCfgViewer.getInput()) {
+			this.pkgCfgViewer.setInput(entries);
+			showCheckStates();
 		}
 	}
 
@@ -580,13 +643,4 @@ public class PkgConfigPropertyTab extends AbstractCPropertyTab {
 		return null;
 	}
 
-	/**
-	 * Rebuilts the index of the selected project in the workspace.
-	 */
-	private void rebuiltIndex() {
-		ICProject cproject = CoreModel.getDefault().getCModel()
-				.getCProject(this.page.getProject().getName());
-		CCorePlugin.getIndexManager().reindex(cproject);
-	}
-
 }
\ No newline at end of file
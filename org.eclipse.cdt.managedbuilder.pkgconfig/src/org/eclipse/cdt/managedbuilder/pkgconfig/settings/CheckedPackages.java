@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012 Petri Tuononen and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Petri Tuononen - Initial implementation
+ *******************************************************************************/
+package org.eclipse.cdt.managedbuilder.pkgconfig.settings;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.cdt.core.settings.model.ICStorageElement;
+
+/**
+ * Reads and writes the names of the checked packages of a configuration.
+ *
+ * Only the checked packages are stored, each as a child element whose name
+ * attribute holds the package name as is, e.g.
+ * <code>&lt;packages version="2"&gt;&lt;package name="gtk+-3.0"/&gt;&lt;/packages&gt;</code>.
+ *
+ * Earlier versions stored every package of the list as an attribute of the
+ * storage element with the value "true" or "false", and + in the package
+ * names replaced by "plus" because attribute names cannot contain it. That
+ * format is still read and is replaced when the packages are saved.
+ */
+public class CheckedPackages {
+
+	// Storage id
+	public static final String STORAGE = "packages"; //$NON-NLS-1$
+
+	private static final String VERSION = "version"; //$NON-NLS-1$
+	private static final String CURRENT_VERSION = "2"; //$NON-NLS-1$
+	private static final String PACKAGE = "package"; //$NON-NLS-1$
+	private static final String NAME = "name"; //$NON-NLS-1$
+	private static final String LEGACY_CHECKED = "true"; //$NON-NLS-1$
+	private static final String LEGACY_PLUS = "plus"; //$NON-NLS-1$
+
+	private CheckedPackages() {
+	}
+
+	/**
+	 * Read the checked packages from a storage element.
+	 *
+	 * @param storage Storage element, may be null
+	 * @return Names of the checked packages in the stored order
+	 */
+	public static Set<String> load(ICStorageElement storage) {
+		Set<String> pkgs = new LinkedHashSet<String>();
+		if (storage == null) {
+			return pkgs;
+		}
+		if (!isLegacy(storage)) {
+			for (ICStorageElement pkgElem : storage.getChildrenByName(PACKAGE)) {
+				String pkg = pkgElem.getAttribute(NAME);
+				if (pkg != null) {
+					pkgs.add(pkg);
+				}
+			}
+			return pkgs;
+		}
+		for (String name : storage.getAttributeNames()) {
+			if (LEGACY_CHECKED.equals(storage.getAttribute(name))) {
+				pkgs.add(name.replace(LEGACY_PLUS, "+")); //$NON-NLS-1$
+			}
+		}
+		return pkgs;
+	}
+
+	/**
+	 * Write the checked packages to a storage element replacing its
+	 * contents. The names are sorted so that the stored form does not
+	 * depend on the order they were checked in.
+	 *
+	 * @param storage Storage element
+	 * @param pkgs Names of the checked packages
+	 */
+	public static void save(ICStorageElement storage, Collection<String> pkgs) {
+		List<String> sorted = new ArrayList<String>(pkgs);
+		Collections.sort(sorted);
+		storage.clear();
+		storage.setAttribute(VERSION, CURRENT_VERSION);
+		for (String pkg : sorted) {
+			storage.createChild(PACKAGE).setAttribute(NAME, pkg);
+		}
+	}
+
+	/**
+	 * Replace the format of earlier versions with the current one.
+	 *
+	 * @param storage Storage element, may be null
+	 * @return True if the storage element was rewritten
+	 */
+	public static boolean migrate(ICStorageElement storage) {
+		if (storage == null || !isLegacy(storage)) {
+			return false;
+		}
+		save(storage, load(storage));
+		return true;
+	}
+
+	/**
+	 * Is the storage element in the format of earlier versions. An empty
+	 * element is not.
+	 *
+	 * @param storage
+	 * @return boolean
+	 */
+	private static boolean isLegacy(ICStorageElement storage) {
+		// a package of the old format may be called "version"
+		return !CURRENT_VERSION.equals(storage.getAttribute(VERSION))
+				&& storage.getAttributeNames().length > 0;
+	}
+
+}
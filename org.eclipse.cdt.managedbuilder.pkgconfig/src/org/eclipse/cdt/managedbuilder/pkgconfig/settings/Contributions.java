@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012 Petri Tuononen and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Petri Tuononen - Initial implementation
+ *******************************************************************************/
+package org.eclipse.cdt.managedbuilder.pkgconfig.settings;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.cdt.core.settings.model.ICStorageElement;
+
+/**
+ * The values each package has contributed to the settings of a
+ * configuration, grouped by the language they were contributed to and by
+ * kind, e.g. include paths or compiler flags.
+ *
+ * Contributions are stored in the configuration so that the values of a
+ * package can be removed after the package has been unchecked, also in a
+ * later session. The languages are kept apart because a value may belong to
+ * the user in one language and to a package in another.
+ */
+public class Contributions {
+
+	// Storage id
+	public static final String STORAGE = "pkgconfigContributions"; //$NON-NLS-1$
+
+	// Kinds of values
+	public static final String INCLUDE_PATH = "includePath"; //$NON-NLS-1$
+	public static final String LIBRARY_FILE = "libraryFile"; //$NON-NLS-1$
+	public static final String LIBRARY_PATH = "libraryPath"; //$NON-NLS-1$
+	public static final String OTHER_FLAG = "otherFlag"; //$NON-NLS-1$
+	public static final String DEFINED_SYMBOL = "definedSymbol"; //$NON-NLS-1$
+	public static final String LINKER_FLAG = "linkerFlag"; //$NON-NLS-1$
+
+	private static final String PACKAGE = "package"; //$NON-NLS-1$
+	private static final String NAME = "name"; //$NON-NLS-1$
+	private static final String VALUE = "value"; //$NON-NLS-1$
+	private static final String LANGUAGE = "language"; //$NON-NLS-1$
+	// values stored by earlier versions have no language
+	private static final String ANY_LANGUAGE = ""; //$NON-NLS-1$
+
+	// package -> language -> kind -> values
+	private final Map<String, Map<String, Map<String, Set<String>>>> values = new LinkedHashMap<String, Map<String, Map<String, Set<String>>>>();
+
+	/**
+	 * Read contributions from a storage element.
+	 *
+	 * @param storage Storage element, may be null
+	 * @return Contributions
+	 */
+	public static Contributions load(ICStorageElement storage) {
+		Contributions contributions = new Contributions();
+		if (storage == null) {
+			return contributions;
+		}
+		for (ICStorageElement pkgElem : storage.getChildrenByName(PACKAGE)) {
+			String pkg = pkgElem.getAttribute(NAME);
+			if (pkg == null) {
+				continue;
+			}
+			for (ICStorageElement valueElem : pkgElem.getChildren()) {
+				String value = valueElem.getAttribute(VALUE);
+				if (value != null) {
+					contributions.getValues(pkg,
+							valueElem.getAttribute(LANGUAGE),
+							valueElem.getName(), true).add(value);
+				}
+			}
+		}
+		return contributions;
+	}
+
+	/**
+	 * Write the contributions to a storage element replacing its contents.
+	 *
+	 * @param storage Storage element
+	 */
+	public void save(ICStorageElement storage) {
+		storage.clear();
+		for (Map.Entry<String, Map<String, Map<String, Set<String>>>> pkg : this.values
+				.entrySet()) {
+			ICStorageElement pkgElem = storage.createChild(PACKAGE);
+			pkgElem.setAttribute(NAME, pkg.getKey());
+			for (Map.Entry<String, Map<String, Set<String>>> lang : pkg
+					.getValue().entrySet()) {
+				for (Map.Entry<String, Set<String>> kind : lang.getValue()
+						.entrySet()) {
+					for (String value : kind.getValue()) {
+						ICStorageElement valueElem = pkgElem.createChild(kind
+								.getKey());
+						if (!ANY_LANGUAGE.equals(lang.getKey())) {
+							valueElem.setAttribute(LANGUAGE, lang.getKey());
+						}
+						valueElem.setAttribute(VALUE, value);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the values a package has contributed to a language.
+	 *
+	 * @param pkg Package
+	 * @param language Language id, null for values not specific to a
+	 *            language, e.g. linker flags
+	 * @param kind Kind of the values
+	 * @return Unmodifiable set of values
+	 */
+	public Set<String> get(String pkg, String language, String kind) {
+		Set<String> kindValues = getValues(pkg, language, kind, false);
+		if (kindValues == null) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(kindValues);
+	}
+
+	/**
+	 * Get the values of the given kind contributed to a language by any
+	 * package. Values stored without a language by earlier versions count
+	 * for every language.
+	 *
+	 * @param language Language id, null for values not specific to a
+	 *            language
+	 * @param kind Kind of the values
+	 * @return Set of values
+	 */
+	public Set<String> getAll(String language, String kind) {
+		Set<String> all = new HashSet<String>();
+		for (Map<String, Map<String, Set<String>>> pkg : this.values.values()) {
+			addAll(all, pkg.get(toKey(language)), kind);
+			addAll(all, pkg.get(ANY_LANGUAGE), kind);
+		}
+		return all;
+	}
+
+	/**
+	 * Record a value contributed to a language by a package.
+	 *
+	 * @param pkg Package
+	 * @param language Language id, null for values not specific to a
+	 *            language
+	 * @param kind Kind of the value
+	 * @param value
+	 */
+	public void add(String pkg, String language, String kind, String value) {
+		getValues(pkg, language, kind, true).add(value);
+	}
+
+	private static void addAll(Set<String> all,
+			Map<String, Set<String>> langValues, String kind) {
+		if (langValues != null && langValues.containsKey(kind)) {
+			all.addAll(langValues.get(kind));
+		}
+	}
+
+	private static String toKey(String language) {
+		return language != null ? language : ANY_LANGUAGE;
+	}
+
+	private Set<String> getValues(String pkg, String language, String kind,
+			boolean create) {
+		Map<String, Map<String, Set<String>>> pkgValues = this.values.get(pkg);
+		if (pkgValues == null) {
+			if (!create) {
+				return null;
+			}
+			pkgValues = new LinkedHashMap<String, Map<String, Set<String>>>();
+			this.values.put(pkg, pkgValues);
+		}
+		Map<String, Set<String>> langValues = pkgValues.get(toKey(language));
+		if (langValues == null) {
+			if (!create) {
+				return null;
+			}
+			langValues = new LinkedHashMap<String, Set<String>>();
+			pkgValues.put(toKey(language), langValues);
+		}
+		Set<String> kindValues = langValues.get(kind);
+		if (kindValues == null && create) {
+			kindValues = new LinkedHashSet<String>();
+			langValues.put(kind, kindValues);
+		}
+		return kindValues;
+	}
+
+	@Override
+	public int hashCode() {
+		return this.values.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof Contributions)) {
+			return false;
+		}
+		return this.values.equals(((Contributions) obj).values);
+	}
+
+}
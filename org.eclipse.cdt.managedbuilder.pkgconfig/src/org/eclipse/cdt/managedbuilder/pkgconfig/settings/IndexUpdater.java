@@ -0,0 +1,359 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012 Petri Tuononen and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Petri Tuononen - Initial implementation
+ *******************************************************************************/
+package org.eclipse.cdt.managedbuilder.pkgconfig.settings;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.eclipse.cdt.core.CCorePlugin;
+import org.eclipse.cdt.core.index.IIndex;
+import org.eclipse.cdt.core.index.IIndexBinding;
+import org.eclipse.cdt.core.index.IIndexFile;
+import org.eclipse.cdt.core.index.IIndexFileLocation;
+import org.eclipse.cdt.core.index.IIndexInclude;
+import org.eclipse.cdt.core.index.IIndexManager;
+import org.eclipse.cdt.core.index.IIndexName;
+import org.eclipse.cdt.core.index.IndexFilter;
+import org.eclipse.cdt.core.index.IndexLocationFactory;
+import org.eclipse.cdt.core.model.CoreModel;
+import org.eclipse.cdt.core.model.ICElement;
+import org.eclipse.cdt.core.model.ICProject;
+import org.eclipse.cdt.core.model.ITranslationUnit;
+import org.eclipse.cdt.core.model.util.CoreModelUtil;
+import org.eclipse.cdt.managedbuilder.pkgconfig.Activator;
+import org.eclipse.cdt.managedbuilder.pkgconfig.util.Parser;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+
+/**
+ * Updates the index of a project after the settings written by the
+ * {@link SettingsWriter} have changed.
+ *
+ * Only the translation units affected by the change are indexed again:
+ * <ul>
+ * <li>the units that include a file from a removed include path,</li>
+ * <li>the units with a file of the project that has an include, resolved
+ * or not, naming a file in an added include path. The include may resolve to a different file now,
+ * wherever the added path is in the list,</li>
+ * <li>if defined symbols or other compiler flags changed, the units that
+ * reference one of the changed macros and the units that include a header
+ * of the checked packages, which is where a package's own macros are
+ * used.</li>
+ * </ul>
+ * Library paths and libraries do not affect the index. Other flags that
+ * only affect the generated code, e.g. warnings and optimization, are
+ * ignored. The whole project is indexed again only if a changed flag may
+ * affect any unit, e.g. -include or -std, or if the affected units cannot
+ * be determined, e.g. for a newly defined macro the index does not know.
+ */
+class IndexUpdater {
+
+	// prefixes of compiler flags that do not affect the index
+	private static final String[] IGNORED_FLAGS = { "-W", "-O", "-g", "-pipe" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	// macros defined by compiler flags
+	private static final String PTHREAD = "-pthread"; //$NON-NLS-1$
+	private static final String REENTRANT = "_REENTRANT"; //$NON-NLS-1$
+	private static final String DEFINE = "-D"; //$NON-NLS-1$
+	private static final String UNDEFINE = "-U"; //$NON-NLS-1$
+
+	private final Set<IPath> addedIncludePaths = new HashSet<IPath>();
+	private final Set<IPath> removedIncludePaths = new HashSet<IPath>();
+	private final Set<IPath> packageIncludePaths = new HashSet<IPath>();
+	private final Set<String> changedMacros = new HashSet<String>();
+	// macros that are defined or undefined by the new settings
+	private final Set<String> addedMacros = new HashSet<String>();
+	private boolean reindex = false;
+
+	/**
+	 * Record changed include paths.
+	 *
+	 * @param added Added include paths
+	 * @param removed Removed include paths
+	 */
+	void includePathsChanged(Collection<String> added, Collection<String> removed) {
+		for (String path : added) {
+			this.addedIncludePaths.add(new Path(path));
+		}
+		for (String path : removed) {
+			this.removedIncludePaths.add(new Path(path));
+		}
+	}
+
+	/**
+	 * Record the include paths of the checked packages. Their headers are
+	 * indexed again if the flags of the packages change.
+	 *
+	 * @param paths Include paths
+	 */
+	void packageIncludePaths(Collection<String> paths) {
+		for (String path : paths) {
+			this.packageIncludePaths.add(new Path(path));
+		}
+	}
+
+	/**
+	 * Record changed defined symbols.
+	 *
+	 * @param added Added symbols, e.g. NAME=value
+	 * @param removed Removed symbols
+	 */
+	void definedSymbolsChanged(Collection<String> added, Collection<String> removed) {
+		addMacros(added, true);
+		addMacros(removed, false);
+	}
+
+	/**
+	 * Record changed other compiler flags.
+	 *
+	 * @param added Added flags
+	 * @param removed Removed flags
+	 */
+	void otherFlagsChanged(Collection<String> added, Collection<String> removed) {
+		addOtherFlags(added, true);
+		addOtherFlags(removed, false);
+	}
+
+	private void addMacros(Collection<String> symbols, boolean added) {
+		for (String symbol : symbols) {
+			int eq = symbol.indexOf('=');
+			String name = (eq >= 0 ? symbol.substring(0, eq) : symbol).trim();
+			if (!name.isEmpty()) {
+				addMacro(name, added);
+			}
+		}
+	}
+
+	private void addMacro(String name, boolean added) {
+		this.changedMacros.add(name);
+		if (added) {
+			this.addedMacros.add(name);
+		}
+	}
+
+	private void addOtherFlags(Collection<String> flags, boolean added) {
+		for (String flag : flags) {
+			List<String> args = Parser.splitArguments(flag);
+			if (args.isEmpty() || isIgnored(args.get(0))) {
+				continue;
+			}
+			String option = args.get(0);
+			if (option.equals(PTHREAD)) {
+				addMacro(REENTRANT, added);
+			} else if (option.equals(UNDEFINE) && args.size() == 2) {
+				addMacros(args.subList(1, 2), added);
+			} else if (option.startsWith(UNDEFINE) || option.startsWith(DEFINE)) {
+				addMacros(Collections.singletonList(option.substring(2)),
+						added);
+			} else {
+				// e.g. -include, -std or -m32 may affect any unit
+				this.reindex = true;
+			}
+		}
+	}
+
+	private static boolean isIgnored(String arg) {
+		for (String prefix : IGNORED_FLAGS) {
+			if (arg.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Index the affected translation units of the project again.
+	 *
+	 * @param proj Project
+	 */
+	void update(IProject proj) {
+		if (!this.reindex && this.addedIncludePaths.isEmpty()
+				&& this.removedIncludePaths.isEmpty()
+				&& this.changedMacros.isEmpty()) {
+			return;
+		}
+		ICProject cproject = CoreModel.getDefault().getCModel()
+				.getCProject(proj.getName());
+		if (cproject == null) {
+			return;
+		}
+		IIndexManager manager = CCorePlugin.getIndexManager();
+		if (this.reindex) {
+			manager.reindex(cproject);
+			return;
+		}
+		try {
+			List<ICElement> units = findAffectedUnits(manager, cproject);
+			if (units == null) {
+				manager.reindex(cproject);
+				return;
+			}
+			if (!units.isEmpty()) {
+				manager.update(units.toArray(new ICElement[units.size()]),
+						IIndexManager.UPDATE_ALL);
+			}
+		} catch (CoreException e) {
+			Activator.getDefault().log(e,
+					"Updating the index failed, indexing the whole project."); //$NON-NLS-1$
+			manager.reindex(cproject);
+		}
+	}
+
+	/**
+	 * Find the translation units affected by the recorded changes.
+	 *
+	 * @param manager Index manager
+	 * @param cproject Project
+	 * @return Translation units or null if the whole project has to be
+	 *         indexed again, e.g. because the index could not be read
+	 * @throws CoreException
+	 */
+	private List<ICElement> findAffectedUnits(IIndexManager manager,
+			ICProject cproject) throws CoreException {
+		IIndex index = manager.getIndex(cproject);
+		try {
+			index.acquireReadLock();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		Set<IIndexFileLocation> locations = new HashSet<IIndexFileLocation>();
+		boolean macrosChanged = !this.changedMacros.isEmpty();
+		// include name -> does it name a file in an added include path
+		Map<String, Boolean> resolvedNames = new HashMap<String, Boolean>();
+		try {
+			for (IIndexFile file : index.getAllFiles()) {
+				IPath path = IndexLocationFactory.getAbsolutePath(file
+						.getLocation());
+				if (path != null
+						&& (isIn(path, this.removedIncludePaths) || (macrosChanged && isIn(
+								path, this.packageIncludePaths)))) {
+					addIncludingFiles(index, file, locations);
+				}
+				// the files of the project, the system headers cannot
+				// include a header of a package
+				if (!this.addedIncludePaths.isEmpty()
+						&& file.getLocation().getFullPath() != null
+						&& includesFromAddedPath(index, file, resolvedNames)) {
+					locations.add(file.getLocation());
+					addIncludingFiles(index, file, locations);
+				}
+			}
+			for (String macro : this.changedMacros) {
+				IIndexBinding[] containers = index.findMacroContainers(
+						Pattern.compile(Pattern.quote(macro)),
+						IndexFilter.ALL, null);
+				if (containers.length == 0 && this.addedMacros.contains(macro)) {
+					// a macro that was never defined is not in the index,
+					// so the units testing it with #ifdef are not known
+					return null;
+				}
+				for (IIndexBinding container : containers) {
+					for (IIndexName name : index.findNames(container,
+							IIndex.FIND_REFERENCES)) {
+						IIndexFile file = name.getFile();
+						if (file != null) {
+							locations.add(file.getLocation());
+							addIncludingFiles(index, file, locations);
+						}
+					}
+				}
+			}
+		} finally {
+			index.releaseReadLock();
+		}
+		List<ICElement> units = new ArrayList<ICElement>();
+		for (IIndexFileLocation location : locations) {
+			ITranslationUnit unit = CoreModelUtil
+					.findTranslationUnitForLocation(location, cproject);
+			if (unit != null) {
+				units.add(unit);
+			}
+		}
+		return units;
+	}
+
+	/**
+	 * Add the files that include the file, directly or indirectly.
+	 *
+	 * @param index Index, read-locked
+	 * @param file Included file
+	 * @param locations Locations of the including files, added to
+	 * @throws CoreException
+	 */
+	private static void addIncludingFiles(IIndex index, IIndexFile file,
+			Set<IIndexFileLocation> locations) throws CoreException {
+		for (IIndexInclude include : index.findIncludedBy(file,
+				IIndex.DEPTH_INFINITE)) {
+			locations.add(include.getIncludedByLocation());
+		}
+	}
+
+	/**
+	 * Does the file have an include that names a file in an added include
+	 * path.
+	 *
+	 * @param index Index, read-locked
+	 * @param file Including file
+	 * @param resolvedNames Include names already looked up, added to
+	 * @return boolean
+	 * @throws CoreException
+	 */
+	private boolean includesFromAddedPath(IIndex index, IIndexFile file,
+			Map<String, Boolean> resolvedNames) throws CoreException {
+		for (IIndexInclude include : index.findIncludes(file)) {
+			String name = include.getFullName();
+			if (name == null || name.isEmpty()) {
+				continue;
+			}
+			Boolean resolved = resolvedNames.get(name);
+			if (resolved == null) {
+				resolved = Boolean.FALSE;
+				for (IPath includePath : this.addedIncludePaths) {
+					if (includePath.append(name).toFile().isFile()) {
+						resolved = Boolean.TRUE;
+						break;
+					}
+				}
+				resolvedNames.put(name, resolved);
+			}
+			if (resolved.booleanValue()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Is the file in one of the include paths.
+	 *
+	 * @param path Absolute path of the file
+	 * @param includePaths Include paths
+	 * @return boolean
+	 */
+	private static boolean isIn(IPath path, Set<IPath> includePaths) {
+		for (IPath includePath : includePaths) {
+			if (includePath.isPrefixOf(path)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -11,9 +11,8 @@
 package org.eclipse.cdt.managedbuilder.pkgconfig.settings;
 
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import org.eclipse.cdt.core.model.CoreModel;
 import org.eclipse.cdt.core.settings.model.CExternalSetting;
@@ -21,25 +20,19 @@ import org.eclipse.cdt.core.settings.model.CIncludePathEntry;
 import org.eclipse.cdt.core.settings.model.CLibraryFileEntry;
 import org.eclipse.cdt.core.settings.model.CLibraryPathEntry;
 import org.eclipse.cdt.core.settings.model.ICConfigurationDescription;
-import org.eclipse.cdt.core.settings.model.ICFolderDescription;
-import org.eclipse.cdt.core.settings.model.ICIncludePathEntry;
-import org.eclipse.cdt.core.settings.model.ICLanguageSetting;
 import org.eclipse.cdt.core.settings.model.ICLanguageSettingEntry;
 import org.eclipse.cdt.core.settings.model.ICProjectDescription;
 import org.eclipse.cdt.core.settings.model.ICSettingEntry;
 import org.eclipse.cdt.core.settings.model.ICStorageElement;
 import org.eclipse.cdt.core.settings.model.extension.CExternalSettingProvider;
 import org.eclipse.cdt.managedbuilder.pkgconfig.Activator;
-import org.eclipse.cdt.managedbuilder.pkgconfig.util.Parser;
-import org.eclipse.cdt.managedbuilder.pkgconfig.util.PathToToolOption;
-import org.eclipse.cdt.managedbuilder.pkgconfig.util.PkgConfigUtil;
+import org.eclipse.cdt.managedbuilder.pkgconfig.preferences.PreferenceStore;
+import org.eclipse.cdt.managedbuilder.pkgconfig.util.PackageFlags;
+import org.eclipse.cdt.managedbuilder.pkgconfig.util.PkgConfigEnvironment;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.CoreException;
-import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Path;
-import org.eclipse.core.runtime.Status;
-import org.eclipse.core.runtime.jobs.Job;
 
 /**
  * TODO: formOtherFlagEntries Bug 349791
@@ -47,358 +40,206 @@ import org.eclipse.core.runtime.jobs.Job;
 public class PkgConfigExternalSettingProvider extends CExternalSettingProvider {
 
 	public static final String ID = "org.eclipse.cdt.managedbuilder.pkgconfig.extSettings"; //$NON-NLS-1$
-	private final static String PACKAGES = "packages"; //$NON-NLS-1$
 
 	@Override
 	public CExternalSetting[] getSettings(IProject proj,
 			ICConfigurationDescription cfg) {
 
 		if (proj != null) {
-			ICSettingEntry[] includes = getEntries(proj,
-					ICSettingEntry.INCLUDE_PATH);
-			ICSettingEntry[] libFiles = getEntries(proj,
-					ICSettingEntry.LIBRARY_FILE);
-			ICSettingEntry[] libPaths = getEntries(proj,
-					ICSettingEntry.LIBRARY_PATH);
-
-			CExternalSetting includeSettings = new CExternalSetting(
-					null,
-					new String[] {
-							"org.eclipse.cdt.core.cSource", "org.eclipse.cdt.core.cxxSource" }, null, includes); //$NON-NLS-1$ //$NON-NLS-2$
-
-			CExternalSetting libraryFileSettings = new CExternalSetting(
-					null,
-					new String[] { "org.eclipse.cdt.managedbuilder.core.compiledObjectFile" }, null, libFiles); //$NON-NLS-1$
-
-			CExternalSetting libraryPathSettings = new CExternalSetting(
-					null,
-					new String[] { "org.eclipse.cdt.managedbuilder.core.compiledObjectFile" }, null, libPaths); //$NON-NLS-1$
-
-			addCFlagsToTools(proj);
-
-			return new CExternalSetting[] { includeSettings,
-					libraryFileSettings, libraryPathSettings };
+			boolean allConfigurations = PreferenceStore
+					.isPkgConfigConfigurationsAll(proj.getName());
+			// the configuration whose checked packages are applied
+			ICConfigurationDescription pkgCfg = allConfigurations
+					|| cfg == null ? getActiveConfiguration(proj, cfg) : cfg;
+			if (pkgCfg != null) {
+				SettingsSnapshot snapshot = getSnapshot(proj, pkgCfg,
+						allConfigurations);
+				// the same settings are returned until the snapshot changes
+				String cfgId = cfg != null ? cfg.getId() : ""; //$NON-NLS-1$
+				CExternalSetting[] settings = snapshot.getSettings(cfgId);
+				if (settings == null) {
+					settings = createSettings(snapshot.getFlags());
+					snapshot.putSettings(cfgId, settings);
+				}
+				return settings;
+			}
 		}
 		return new CExternalSetting[] {};
 	}
 
 	/**
-	 * Get language setting entries for given ICSettingEntry.
+	 * Create the external settings from the flags of the checked packages.
 	 * 
-	 * @param proj
-	 * @param settingEntry
+	 * @param flags
 	 * @return
 	 */
-	private static ICLanguageSettingEntry[] getEntries(IProject proj,
-			int settingEntry) {
-		String[] values = null;
-		ICLanguageSettingEntry[] newEntries = null;
-		ICLanguageSettingEntry[] existingEntries = null;
-		ICLanguageSettingEntry[] distinctEntries = null;
-		ICLanguageSetting lang = getGCCLanguageSetting(proj);
-		if (lang != null) {
-			switch (settingEntry) {
-			case ICSettingEntry.INCLUDE_PATH:
-				values = getIncludePathsFromCheckedPackages(proj);
-				newEntries = formIncludePathEntries(values);
-				existingEntries = lang.getSettingEntries(ICSettingEntry.INCLUDE_PATH);
-				distinctEntries = distinctICLanguageEntries(existingEntries, newEntries);
-				lang.setSettingEntries(ICSettingEntry.INCLUDE_PATH, distinctEntries);
-				break;
-			case ICSettingEntry.LIBRARY_FILE:
-				values = getLibraryFilesFromCheckedPackages(proj);
-				newEntries = formLibraryFileEntries(values);
-				existingEntries = lang.getSettingEntries(ICSettingEntry.LIBRARY_FILE);
-				distinctEntries = distinctICLanguageEntries(existingEntries, newEntries);
-				lang.setSettingEntries(ICSettingEntry.LIBRARY_FILE, distinctEntries);
-				break;
-			case ICSettingEntry.LIBRARY_PATH:
-				values = getLibraryPathsFromCheckedPackages(proj);
-				newEntries = formLibraryPathEntries(values);
-				existingEntries = lang.getSettingEntries(ICSettingEntry.LIBRARY_PATH);
-				distinctEntries = distinctICLanguageEntries(existingEntries, newEntries);
-				lang.setSettingEntries(ICSettingEntry.LIBRARY_PATH, distinctEntries);
-				break;
-			default:
-				break;
-			}
-		}
-		return distinctEntries;
-	}
+	private static CExternalSetting[] createSettings(PackageFlags flags) {
+		ICSettingEntry[] includes = formIncludePathEntries(flags);
+		ICSettingEntry[] libFiles = formLibraryFileEntries(flags);
+		ICSettingEntry[] libPaths = formLibraryPathEntries(flags);
 
-	/**
-	 * Makes sure duplicate entries are not added.
-	 *
-	 */
-	private static ICLanguageSettingEntry[] distinctICLanguageEntries(ICLanguageSettingEntry[] existingEntries, ICLanguageSettingEntry[] newEntries) {
-		// add to distinct entries if new entry is not found in existing entries
-		List<ICLanguageSettingEntry> listOfExistingEntries = Arrays.asList(existingEntries);
-		List<ICLanguageSettingEntry> distinctEntries = new ArrayList<ICLanguageSettingEntry>();
-		Collections.addAll(distinctEntries, existingEntries);
-		for (ICLanguageSettingEntry newEntry : newEntries) {
-			if (listOfExistingEntries.contains(newEntry) == false) {
-				distinctEntries.add(newEntry);
-			}
-		}
-		return distinctEntries.toArray(new ICLanguageSettingEntry[distinctEntries.size()]);
-	}
-	
-	/**
-	 * Get language settings for given project and language id.
-	 * 
-	 * @param proj
-	 * @param languageId
-	 * @return
-	 */
-	private static ICLanguageSetting getLanguageSetting(IProject proj,
-			String languageId) {
-		ICLanguageSetting[] langSettings = getLanguageSettings(proj);
-		ICLanguageSetting lang = null;
-		for (ICLanguageSetting langSetting : langSettings) {
-			String id = langSetting.getLanguageId();
-			if (id != null) {
-				if (id.equalsIgnoreCase(languageId)) {
-					lang = langSetting;
-					return lang;
-				}
-			}
-		}
-		return null;
-	}
+		CExternalSetting includeSettings = new CExternalSetting(
+				null,
+				new String[] {
+						"org.eclipse.cdt.core.cSource", "org.eclipse.cdt.core.cxxSource" }, null, includes); //$NON-NLS-1$ //$NON-NLS-2$
 
-	/**
-	 * Get language settings for the given project.
-	 * 
-	 * @param proj
-	 * @return
-	 */
-	private static ICLanguageSetting[] getLanguageSettings(IProject proj) {
-		ICProjectDescription projectDescription = CoreModel.getDefault()
-				.getProjectDescription(proj);
-		ICConfigurationDescription activeConf = projectDescription
-				.getActiveConfiguration();
-		ICFolderDescription folderDesc = activeConf.getRootFolderDescription();
-		ICLanguageSetting[] langSettings = folderDesc.getLanguageSettings();
-		return langSettings;
+		CExternalSetting libraryFileSettings = new CExternalSetting(
+				null,
+				new String[] { "org.eclipse.cdt.managedbuilder.core.compiledObjectFile" }, null, libFiles); //$NON-NLS-1$
+
+		CExternalSetting libraryPathSettings = new CExternalSetting(
+				null,
+				new String[] { "org.eclipse.cdt.managedbuilder.core.compiledObjectFile" }, null, libPaths); //$NON-NLS-1$
+
+		return new CExternalSetting[] { includeSettings,
+				libraryFileSettings, libraryPathSettings };
 	}
 
 	/**
-	 * Get language settings for C projects.
+	 * Get the resolved settings of a configuration. The checked packages are
+	 * resolved only if they, the pkg-config environment or the configurations
+	 * the flags are applied to have changed since the last time. Unless the
+	 * flags are applied to all the configurations, each configuration has
+	 * its own checked packages.
+	 * 
+	 * A snapshot stored in the project by an earlier session is used as is
+	 * and validated against the .pc files in the background, so opening a
+	 * workspace does not need to resolve any packages. Otherwise the stored
+	 * flags, or none, are returned without waiting for pkg-config, and the
+	 * {@link SettingsWriter} resolves the packages in the background, writes
+	 * the flags to the language settings and the tool options and updates
+	 * the external settings once they are known.
 	 * 
 	 * @param proj
-	 * @return
+	 * @param pkgCfg Configuration description whose checked packages are
+	 *            applied
+	 * @param allConfigurations Are the flags applied to all the build
+	 *            configurations
+	 * @return SettingsSnapshot
 	 */
-	private static ICLanguageSetting getGCCLanguageSetting(IProject proj) {
-		return getLanguageSetting(proj, "org.eclipse.cdt.core.gcc"); //$NON-NLS-1$
+	private static SettingsSnapshot getSnapshot(IProject proj,
+			ICConfigurationDescription pkgCfg, boolean allConfigurations) {
+		PkgConfigEnvironment env = PkgConfigEnvironment.forProject(proj
+				.getName());
+		String[] pkgs = getCheckedPackageNames(pkgCfg);
+		SettingsSnapshot snapshot = SettingsSnapshotCache.getDefault().get(
+				proj, pkgCfg.getId(), env, pkgs, allConfigurations);
+		if (snapshot != null) {
+			return snapshot;
+		}
+		SettingsSnapshot stored = SettingsSnapshot.load(
+				getStorage(pkgCfg, SettingsSnapshot.STORAGE), pkgCfg.getId());
+		if (stored != null && stored.isSnapshotOf(env, pkgs, allConfigurations)) {
+			SettingsSnapshotCache.getDefault().put(proj, stored);
+			SnapshotValidator.getDefault().validate(proj, stored);
+			return stored;
+		}
+		// cached so that the packages are resolved only once
+		snapshot = SettingsSnapshot.unresolved(pkgCfg.getId(), env, pkgs,
+				allConfigurations, stored != null ? stored.getFlags()
+						: PackageFlags.EMPTY);
+		SettingsSnapshotCache.getDefault().put(proj, snapshot);
+		SettingsWriter.getDefault().write(proj, snapshot);
+		return snapshot;
 	}
 
 	/**
-	 * Form ICIncludePathEntry array from include path String array.
+	 * Form ICIncludePathEntry array from the include paths and the system
+	 * include paths.
 	 * 
-	 * @param includes
+	 * @param flags
 	 * @return
 	 */
-	private static ICLanguageSettingEntry[] formIncludePathEntries(
-			String[] includes) {
+	static ICLanguageSettingEntry[] formIncludePathEntries(PackageFlags flags) {
 		List<ICLanguageSettingEntry> incPathEntries = new ArrayList<ICLanguageSettingEntry>();
-		for (String inc : includes) {
-			ICIncludePathEntry incPathEntry = new CIncludePathEntry(new Path(
-					inc), ICSettingEntry.INCLUDE_PATH);
-			incPathEntries.add(incPathEntry);
+		for (String inc : flags.getIncludePaths()) {
+			incPathEntries.add(new CIncludePathEntry(new Path(inc),
+					ICSettingEntry.INCLUDE_PATH));
+		}
+		for (String inc : flags.getSystemIncludePaths()) {
+			incPathEntries.add(new CIncludePathEntry(new Path(inc),
+					ICSettingEntry.INCLUDE_PATH));
 		}
 		return incPathEntries.toArray(new ICLanguageSettingEntry[incPathEntries
 				.size()]);
 	}
 
 	/**
-	 * Form CLibraryFileEntry array from library file String array.
+	 * Form CLibraryFileEntry array from the libraries.
 	 * 
-	 * @param libs
+	 * @param flags
 	 * @return
 	 */
-	private static ICLanguageSettingEntry[] formLibraryFileEntries(String[] libs) {
+	static ICLanguageSettingEntry[] formLibraryFileEntries(PackageFlags flags) {
 		List<ICLanguageSettingEntry> libEntries = new ArrayList<ICLanguageSettingEntry>();
-		for (String lib : libs) {
-			CLibraryFileEntry libFileEntry = new CLibraryFileEntry(lib,
-					ICSettingEntry.LIBRARY_FILE);
-			libEntries.add(libFileEntry);
+		for (String lib : flags.getLibraries()) {
+			libEntries.add(new CLibraryFileEntry(lib,
+					ICSettingEntry.LIBRARY_FILE));
 		}
 		return libEntries
 				.toArray(new ICLanguageSettingEntry[libEntries.size()]);
 	}
 
 	/**
-	 * Form CLibraryPathEntry array from library path String array.
+	 * Form CLibraryPathEntry array from the library paths.
 	 * 
-	 * @param libPaths
+	 * @param flags
 	 * @return
 	 */
-	private static ICLanguageSettingEntry[] formLibraryPathEntries(
-			String[] libPaths) {
+	static ICLanguageSettingEntry[] formLibraryPathEntries(PackageFlags flags) {
 		List<ICLanguageSettingEntry> libPathEntries = new ArrayList<ICLanguageSettingEntry>();
-		for (String libPath : libPaths) {
-			CLibraryPathEntry libPathEntry = new CLibraryPathEntry(new Path(
-					libPath), ICSettingEntry.LIBRARY_PATH);
-			libPathEntries.add(libPathEntry);
+		for (String libPath : flags.getLibraryPaths()) {
+			libPathEntries.add(new CLibraryPathEntry(new Path(libPath),
+					ICSettingEntry.LIBRARY_PATH));
 		}
 		return libPathEntries.toArray(new ICLanguageSettingEntry[libPathEntries
 				.size()]);
 	}
 
 	/**
-	 * Get include paths from the checked packages.
-	 * 
-	 * @param proj
-	 * @return
-	 */
-	private static String[] getIncludePathsFromCheckedPackages(IProject proj) {
-		List<String> includeList = new ArrayList<String>();
-		String[] pkgs = getCheckedPackageNames(proj);
-		String cflags = null;
-		String[] includeArray = null;
-		for (String pkg : pkgs) {
-			cflags = PkgConfigUtil.getCflags(pkg, proj.getName());
-			includeArray = Parser.parseIncPaths(cflags);
-			if (includeArray != null) {
-				Collections.addAll(includeList, includeArray);
-			}
-		}
-		return includeList.toArray(new String[includeList.size()]);
-	}
-
-	/**
-	 * Get library files from the checked packages.
+	 * Get the active configuration of the project description the settings
+	 * are requested for. If no configuration is given, the description is
+	 * read-only, so no copy of it is made. Only the {@link SettingsWriter}
+	 * modifies the project description.
 	 * 
 	 * @param proj
-	 * @return
+	 * @param cfg Configuration description the settings are requested for,
+	 *            may be null
+	 * @return Active configuration description or null
 	 */
-	private static String[] getLibraryFilesFromCheckedPackages(IProject proj) {
-		List<String> libList = new ArrayList<String>();
-		String[] pkgs = getCheckedPackageNames(proj);
-		String libs = null;
-		String[] libArray = null;
-		for (String pkg : pkgs) {
-			libs = PkgConfigUtil.getLibFilesOnly(pkg, proj.getName());
-			libArray = Parser.parseLibs2(libs);
-			if (libArray != null) {
-				Collections.addAll(libList, libArray);
-			}
+	private static ICConfigurationDescription getActiveConfiguration(
+			IProject proj, ICConfigurationDescription cfg) {
+		ICProjectDescription projDesc = cfg != null ? cfg
+				.getProjectDescription() : null;
+		if (projDesc == null) {
+			projDesc = CoreModel.getDefault().getProjectDescription(proj,
+					false);
 		}
-		return libList.toArray(new String[libList.size()]);
-	}
-
-	/**
-	 * Get library paths from the checked packages.
-	 * 
-	 * @param proj
-	 * @return
-	 */
-	private static String[] getLibraryPathsFromCheckedPackages(IProject proj) {
-		List<String> libPathList = new ArrayList<String>();
-		String[] pkgs = getCheckedPackageNames(proj);
-		String libPaths = null;
-		String[] libPathArray = null;
-		for (String pkg : pkgs) {
-			libPaths = PkgConfigUtil.getLibPathsOnly(pkg, proj.getName());
-			libPathArray = Parser.parseLibPaths2(libPaths);
-			if (libPathArray != null) {
-				Collections.addAll(libPathList, libPathArray);
-			}
+		if (projDesc == null) {
+			Activator.getDefault()
+					.log(IStatus.ERROR, null, "Getting project description failed."); //$NON-NLS-1$
+			return null;
 		}
-		return libPathList.toArray(new String[libPathList.size()]);
+		return projDesc.getActiveConfiguration();
 	}
 
 	/**
-	 * Get other flags from the checked packages.
+	 * Get a storage element of a configuration without creating it.
 	 * 
-	 * @param proj
-	 * @return
+	 * @param cfg Configuration description, may be null
+	 * @param id Storage id
+	 * @return Storage element or null
 	 */
-	static String[] getDefinedSymbolsFromCheckedPackages(IProject proj) {
-		List<String> definedSymbols = new ArrayList<String>();
-		String[] pkgs = getCheckedPackageNames(proj);
-		String cflags = null;
-		String[] definedSymbolsArray = null;
-		for (String pkg : pkgs) {
-			cflags = PkgConfigUtil.getCflags(proj.getName(), pkg);
-			definedSymbolsArray = Parser.parseCflagDefinedSymbolsOptions(cflags);
-			if (definedSymbolsArray != null) {
-				Collections.addAll(definedSymbols, definedSymbolsArray);
-			}
-		}
-		return definedSymbols.toArray(new String[definedSymbols.size()]);
-	}
-	
-	
-	/**
-	 * Get other flags from the checked packages.
-	 * 
-	 * @param proj
-	 * @return
-	 */
-	static String[] getOtherFlagsFromCheckedPackages(IProject proj) {
-		List<String> otherFlagList = new ArrayList<String>();
-		String[] pkgs = getCheckedPackageNames(proj);
-		String cflags = null;
-		String[] otherFlagArray = null;
-		for (String pkg : pkgs) {
-			cflags = PkgConfigUtil.getCflags(proj.getName(), pkg);
-			otherFlagArray = Parser.parseCflagOtherFlagsOptions(cflags);
-			if (otherFlagArray != null) {
-				Collections.addAll(otherFlagList, otherFlagArray);
-			}
+	private static ICStorageElement getStorage(ICConfigurationDescription cfg,
+			String id) {
+		if (cfg == null) {
+			return null;
 		}
-		return otherFlagList.toArray(new String[otherFlagList.size()]);
-	}
-
-	/**
-	 * Add other flags to Tool's Option.
-	 * 
-	 * @param proj
-	 */
-	private static void addCFlagsToTools(final IProject proj) {
-		Job j = new Job("Add cflags") { //$NON-NLS-1$
-			@Override
-			protected IStatus run(IProgressMonitor monitor) {
-				String[] flags = getOtherFlagsFromCheckedPackages(proj);
-				for (String flag : flags) {
-					PathToToolOption.addOtherFlag(flag, proj);
-				}
-				flags = getDefinedSymbolsFromCheckedPackages(proj);
-				for (String flag : flags) {
-					PathToToolOption.addDefinedSymbol(flag, proj);
-				}
-				return Status.OK_STATUS;
-			}
-		};
-		j.setPriority(Job.INTERACTIVE);
-		j.schedule();
-	}
-
-	/**
-	 * Get a storage element which stores the checked packages.
-	 * 
-	 * @param proj
-	 * @return
-	 */
-	private static ICStorageElement getPackageStorage(IProject proj) {
 		try {
-			ICProjectDescription projectDescription = CoreModel.getDefault()
-					.getProjectDescription(proj);
-			ICConfigurationDescription activeConf = projectDescription
-					.getActiveConfiguration();
-			ICConfigurationDescription desc = activeConf.getConfiguration();
-			ICStorageElement strgElem = null;
-			try {
-				strgElem = desc.getStorage(PACKAGES, true);
-				return strgElem;
-			} catch (CoreException e) {
-				Activator.getDefault().log(e,
-						"Getting packages from the storage failed."); //$NON-NLS-1$
-			}
-		} catch (NullPointerException e) {
-			Activator.getDefault()
-					.log(e, "Getting project description failed."); //$NON-NLS-1$
+			return cfg.getStorage(id, false);
+		} catch (CoreException e) {
+			Activator.getDefault().log(e,
+					"Getting " + id + " from the storage failed."); //$NON-NLS-1$ //$NON-NLS-2$
 		}
 		return null;
 	}
@@ -406,30 +247,13 @@ public class PkgConfigExternalSettingProvider extends CExternalSettingProvider {
 	/**
 	 * Get names of the checked packages.
 	 * 
-	 * @param proj
+	 * @param cfg Configuration description
 	 * @return
 	 */
-	private static String[] getCheckedPackageNames(IProject proj) {
-		ICStorageElement pkgStorage = getPackageStorage(proj);
-		String[] pkgNames = pkgStorage.getAttributeNames();
-		List<String> pkgs = new ArrayList<String>();
-		String value = null;
-		for (String pkgName : pkgNames) {
-			value = pkgStorage.getAttribute(pkgName);
-			if (value != null) {
-				if (value.equals("true")) { //$NON-NLS-1$
-					/*
-					 * replace + symbols, because + symbols in package names had
-					 * to be replaced when storing them to ICStorageElement to
-					 * prevent error
-					 */
-					if (pkgName.contains("plus")) { //$NON-NLS-1$
-						pkgName = pkgName.replace("plus", "+"); //$NON-NLS-1$ //$NON-NLS-2$
-					}
-					pkgs.add(pkgName);
-				}
-			}
-		}
+	private static String[] getCheckedPackageNames(
+			ICConfigurationDescription cfg) {
+		Set<String> pkgs = CheckedPackages.load(getStorage(cfg,
+				CheckedPackages.STORAGE));
 		return pkgs.toArray(new String[pkgs.size()]);
 	}
 
@@ -0,0 +1,331 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012 Petri Tuononen and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Petri Tuononen - Initial implementation
+ *******************************************************************************/
+package org.eclipse.cdt.managedbuilder.pkgconfig.settings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.cdt.core.settings.model.CExternalSetting;
+import org.eclipse.cdt.core.settings.model.ICStorageElement;
+import org.eclipse.cdt.managedbuilder.pkgconfig.util.PackageFlags;
+import org.eclipse.cdt.managedbuilder.pkgconfig.util.PkgConfigEnvironment;
+
+/**
+ * The resolved pkg-config settings of a project: the flags of the checked
+ * packages of a configuration in the pkg-config environment of the project.
+ * If the flags are applied to all the configurations, the checked packages
+ * are those of the active configuration.
+ *
+ * The flags are immutable. The external settings formed from them are
+ * memoized per configuration, so repeated requests get the same array as
+ * long as the snapshot is valid.
+ *
+ * The snapshot is also stored in the project together with a fingerprint of
+ * the .pc files it was resolved from, so that the settings are available
+ * without resolving the packages when the workspace is opened again.
+ */
+public class SettingsSnapshot {
+
+	// Storage id
+	public static final String STORAGE = "pkgconfigSnapshot"; //$NON-NLS-1$
+
+	private static final String BINARY = "binary"; //$NON-NLS-1$
+	private static final String PKG_CONFIG_PATH = "pkgConfigPath"; //$NON-NLS-1$
+	private static final String PKG_CONFIG_LIBDIR = "pkgConfigLibDir"; //$NON-NLS-1$
+	private static final String ALL_CONFIGURATIONS = "allConfigurations"; //$NON-NLS-1$
+	private static final String FINGERPRINT = "fingerprint"; //$NON-NLS-1$
+	private static final String PACKAGE = "package"; //$NON-NLS-1$
+	private static final String NAME = "name"; //$NON-NLS-1$
+	private static final String VALUE = "value"; //$NON-NLS-1$
+	private static final String INCLUDE_PATH = "includePath"; //$NON-NLS-1$
+	private static final String SYSTEM_INCLUDE_PATH = "systemIncludePath"; //$NON-NLS-1$
+	private static final String DEFINED_SYMBOL = "definedSymbol"; //$NON-NLS-1$
+	private static final String OTHER_FLAG = "otherFlag"; //$NON-NLS-1$
+	private static final String LIBRARY_PATH = "libraryPath"; //$NON-NLS-1$
+	private static final String LIBRARY = "library"; //$NON-NLS-1$
+	private static final String LINKER_FLAG = "linkerFlag"; //$NON-NLS-1$
+
+	private final String cfgId;
+	private final PkgConfigEnvironment env;
+	private final List<String> packages;
+	private final boolean allConfigurations;
+	private final PackageFlags flags;
+	private final String fingerprint;
+	private final boolean resolved;
+	private final Map<String, CExternalSetting[]> settings = new ConcurrentHashMap<String, CExternalSetting[]>();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param cfgId Id of the configuration whose checked packages were
+	 *            resolved
+	 * @param env pkg-config environment
+	 * @param packages Checked packages
+	 * @param allConfigurations Are the flags applied to all the build
+	 *            configurations
+	 * @param flags Flags of the checked packages
+	 * @param fingerprint Fingerprint of the .pc files the flags were resolved
+	 *            from, null if unknown
+	 */
+	public SettingsSnapshot(String cfgId, PkgConfigEnvironment env,
+			String[] packages, boolean allConfigurations, PackageFlags flags,
+			String fingerprint) {
+		this(cfgId, env, packages, allConfigurations, flags, fingerprint, true);
+	}
+
+	private SettingsSnapshot(String cfgId, PkgConfigEnvironment env,
+			String[] packages, boolean allConfigurations, PackageFlags flags,
+			String fingerprint, boolean resolved) {
+		this.cfgId = cfgId;
+		this.env = env;
+		this.packages = Collections.unmodifiableList(new ArrayList<String>(
+				Arrays.asList(packages)));
+		this.allConfigurations = allConfigurations;
+		this.flags = flags;
+		this.fingerprint = fingerprint;
+		this.resolved = resolved;
+	}
+
+	/**
+	 * Create a snapshot whose packages have not been resolved yet. Its flags
+	 * are served until the {@link SettingsWriter} has resolved the packages.
+	 *
+	 * @param cfgId Id of the configuration whose checked packages are to be
+	 *            resolved
+	 * @param env pkg-config environment
+	 * @param packages Checked packages
+	 * @param allConfigurations Are the flags applied to all the build
+	 *            configurations
+	 * @param flags Flags served in the meantime, e.g. the stored ones
+	 * @return SettingsSnapshot
+	 */
+	public static SettingsSnapshot unresolved(String cfgId,
+			PkgConfigEnvironment env, String[] packages,
+			boolean allConfigurations, PackageFlags flags) {
+		return new SettingsSnapshot(cfgId, env, packages, allConfigurations,
+				flags, null, false);
+	}
+
+	/**
+	 * Read a snapshot from a storage element.
+	 *
+	 * @param storage Storage element, may be null
+	 * @param cfgId Id of the configuration the storage element belongs to
+	 * @return SettingsSnapshot or null if none has been stored
+	 */
+	public static SettingsSnapshot load(ICStorageElement storage, String cfgId) {
+		if (storage == null || storage.getAttribute(BINARY) == null) {
+			return null;
+		}
+		PkgConfigEnvironment env = new PkgConfigEnvironment(
+				storage.getAttribute(BINARY),
+				getAttribute(storage, PKG_CONFIG_PATH),
+				getAttribute(storage, PKG_CONFIG_LIBDIR));
+		List<String> packages = new ArrayList<String>();
+		for (ICStorageElement pkgElem : storage.getChildrenByName(PACKAGE)) {
+			String pkg = pkgElem.getAttribute(NAME);
+			if (pkg != null) {
+				packages.add(pkg);
+			}
+		}
+		PackageFlags flags = new PackageFlags(
+				loadValues(storage, INCLUDE_PATH),
+				loadValues(storage, SYSTEM_INCLUDE_PATH),
+				loadValues(storage, DEFINED_SYMBOL),
+				loadValues(storage, OTHER_FLAG),
+				loadValues(storage, LIBRARY_PATH),
+				loadValues(storage, LIBRARY),
+				loadValues(storage, LINKER_FLAG));
+		return new SettingsSnapshot(cfgId, env,
+				packages.toArray(new String[packages.size()]),
+				Boolean.parseBoolean(storage.getAttribute(ALL_CONFIGURATIONS)),
+				flags, storage.getAttribute(FINGERPRINT));
+	}
+
+	/**
+	 * Write the snapshot to a storage element replacing its contents.
+	 *
+	 * @param storage Storage element
+	 */
+	public void save(ICStorageElement storage) {
+		storage.clear();
+		storage.setAttribute(BINARY, this.env.getBinary());
+		storage.setAttribute(PKG_CONFIG_PATH, this.env.getPkgConfigPath());
+		storage.setAttribute(PKG_CONFIG_LIBDIR, this.env.getPkgConfigLibDir());
+		storage.setAttribute(ALL_CONFIGURATIONS,
+				String.valueOf(this.allConfigurations));
+		if (this.fingerprint != null) {
+			storage.setAttribute(FINGERPRINT, this.fingerprint);
+		}
+		for (String pkg : this.packages) {
+			storage.createChild(PACKAGE).setAttribute(NAME, pkg);
+		}
+		saveValues(storage, INCLUDE_PATH, this.flags.getIncludePaths());
+		saveValues(storage, SYSTEM_INCLUDE_PATH,
+				this.flags.getSystemIncludePaths());
+		saveValues(storage, DEFINED_SYMBOL, this.flags.getDefinedSymbols());
+		saveValues(storage, OTHER_FLAG, this.flags.getOtherFlags());
+		saveValues(storage, LIBRARY_PATH, this.flags.getLibraryPaths());
+		saveValues(storage, LIBRARY, this.flags.getLibraries());
+		saveValues(storage, LINKER_FLAG, this.flags.getLinkerFlags());
+	}
+
+	private static String getAttribute(ICStorageElement storage, String name) {
+		String value = storage.getAttribute(name);
+		return value != null ? value : ""; //$NON-NLS-1$
+	}
+
+	private static List<String> loadValues(ICStorageElement storage,
+			String kind) {
+		List<String> values = new ArrayList<String>();
+		for (ICStorageElement valueElem : storage.getChildrenByName(kind)) {
+			String value = valueElem.getAttribute(VALUE);
+			if (value != null) {
+				values.add(value);
+			}
+		}
+		return values;
+	}
+
+	private static void saveValues(ICStorageElement storage, String kind,
+			List<String> values) {
+		for (String value : values) {
+			storage.createChild(kind).setAttribute(VALUE, value);
+		}
+	}
+
+	/**
+	 * Does the other snapshot hold the same settings resolved from the same
+	 * .pc files.
+	 *
+	 * @param other Snapshot, may be null
+	 * @return boolean
+	 */
+	public boolean isSameAs(SettingsSnapshot other) {
+		if (other == null) {
+			return false;
+		}
+		return this.env.equals(other.env)
+				&& this.allConfigurations == other.allConfigurations
+				&& this.packages.equals(other.packages)
+				&& this.flags.equals(other.flags)
+				&& (this.fingerprint == null ? other.fingerprint == null
+						: this.fingerprint.equals(other.fingerprint));
+	}
+
+	/**
+	 * Is the snapshot resolved for the given environment, packages and
+	 * configurations.
+	 *
+	 * @param otherEnv pkg-config environment
+	 * @param otherPackages Checked packages
+	 * @param otherAllConfigurations Are the flags applied to all the build
+	 *            configurations
+	 * @return True if the snapshot is still valid
+	 */
+	public boolean isSnapshotOf(PkgConfigEnvironment otherEnv,
+			String[] otherPackages, boolean otherAllConfigurations) {
+		return this.env.equals(otherEnv)
+				&& this.allConfigurations == otherAllConfigurations
+				&& this.packages.equals(Arrays.asList(otherPackages));
+	}
+
+	/**
+	 * Have the flags been resolved from the checked packages.
+	 *
+	 * @return False if the flags are only served until the packages have
+	 *         been resolved
+	 */
+	public boolean isResolved() {
+		return this.resolved;
+	}
+
+	/**
+	 * Get the id of the configuration whose checked packages the snapshot
+	 * holds the flags of. The snapshot is stored in that configuration.
+	 *
+	 * @return Configuration id
+	 */
+	public String getConfigurationId() {
+		return this.cfgId;
+	}
+
+	/**
+	 * Get the pkg-config environment.
+	 *
+	 * @return PkgConfigEnvironment
+	 */
+	public PkgConfigEnvironment getEnvironment() {
+		return this.env;
+	}
+
+	/**
+	 * Get the checked packages.
+	 *
+	 * @return Package names
+	 */
+	public List<String> getPackages() {
+		return this.packages;
+	}
+
+	/**
+	 * Are the flags applied to all the build configurations instead of the
+	 * active one.
+	 *
+	 * @return boolean
+	 */
+	public boolean isAllConfigurations() {
+		return this.allConfigurations;
+	}
+
+	/**
+	 * Get the external settings memoized for a configuration.
+	 *
+	 * @param cfgId Configuration id
+	 * @return External settings or null
+	 */
+	public CExternalSetting[] getSettings(String cfgId) {
+		return this.settings.get(cfgId);
+	}
+
+	/**
+	 * Memoize the external settings of a configuration.
+	 *
+	 * @param cfgId Configuration id
+	 * @param cfgSettings External settings
+	 */
+	public void putSettings(String cfgId, CExternalSetting[] cfgSettings) {
+		this.settings.put(cfgId, cfgSettings);
+	}
+
+	/**
+	 * Get the flags of the checked packages.
+	 *
+	 * @return PackageFlags
+	 */
+	public PackageFlags getFlags() {
+		return this.flags;
+	}
+
+	/**
+	 * Get the fingerprint of the .pc files the flags were resolved from.
+	 *
+	 * @return Fingerprint or null if unknown
+	 */
+	public String getFingerprint() {
+		return this.fingerprint;
+	}
+
+}
@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012 Petri Tuononen and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Petri Tuononen - Initial implementation
+ *******************************************************************************/
+package org.eclipse.cdt.managedbuilder.pkgconfig.settings;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.eclipse.cdt.managedbuilder.pkgconfig.util.PcDirectoryWatcher;
+import org.eclipse.cdt.managedbuilder.pkgconfig.util.PcDirectoryWatcher.IPcDirectoryListener;
+import org.eclipse.cdt.managedbuilder.pkgconfig.util.PkgConfigEnvironment;
+import org.eclipse.core.resources.IProject;
+
+/**
+ * The latest {@link SettingsSnapshot} of each configuration of a project.
+ *
+ * A snapshot is dropped when a .pc file in one of the search directories of
+ * its pkg-config environment changes.
+ */
+public class SettingsSnapshotCache implements IPcDirectoryListener {
+
+	private static SettingsSnapshotCache instance;
+
+	// project -> configuration id -> snapshot
+	private final Map<IProject, Map<String, SettingsSnapshot>> snapshots = new HashMap<IProject, Map<String, SettingsSnapshot>>();
+
+	/**
+	 * Get the shared cache.
+	 *
+	 * @return SettingsSnapshotCache
+	 */
+	public static synchronized SettingsSnapshotCache getDefault() {
+		if (instance == null) {
+			instance = new SettingsSnapshotCache();
+			PcDirectoryWatcher.getDefault().addListener(instance);
+		}
+		return instance;
+	}
+
+	/**
+	 * Drop the shared cache. Called when the plug-in is stopped.
+	 */
+	public static synchronized void shutdown() {
+		if (instance != null) {
+			PcDirectoryWatcher.getDefault().removeListener(instance);
+			instance = null;
+		}
+	}
+
+	/**
+	 * Get the snapshot of a configuration if it is still valid.
+	 *
+	 * @param proj Project
+	 * @param cfgId Id of the configuration whose checked packages are
+	 *            applied
+	 * @param env Current pkg-config environment of the project
+	 * @param packages Currently checked packages
+	 * @param allConfigurations Are the flags applied to all the build
+	 *            configurations
+	 * @return SettingsSnapshot or null
+	 */
+	public SettingsSnapshot get(IProject proj, String cfgId,
+			PkgConfigEnvironment env, String[] packages,
+			boolean allConfigurations) {
+		SettingsSnapshot snapshot;
+		synchronized (this.snapshots) {
+			snapshot = getSnapshots(proj, false).get(cfgId);
+		}
+		if (snapshot != null && snapshot.isSnapshotOf(env, packages, allConfigurations)) {
+			return snapshot;
+		}
+		return null;
+	}
+
+	/**
+	 * Store the snapshot of a configuration. The snapshot is kept only if
+	 * changes to the .pc files it depends on can be noticed.
+	 *
+	 * @param proj Project
+	 * @param snapshot
+	 */
+	public void put(IProject proj, SettingsSnapshot snapshot) {
+		if (!PcDirectoryWatcher.getDefault().watch(
+				snapshot.getEnvironment().getSearchDirectories())) {
+			return;
+		}
+		synchronized (this.snapshots) {
+			getSnapshots(proj, true).put(snapshot.getConfigurationId(), snapshot);
+		}
+	}
+
+	/**
+	 * Replace the snapshot of a configuration unless a different snapshot
+	 * has been stored since the expected one.
+	 *
+	 * @param proj Project
+	 * @param expected Snapshot expected to be the current one
+	 * @param snapshot New snapshot
+	 * @return True if the expected snapshot or none was the current one
+	 */
+	public boolean replace(IProject proj, SettingsSnapshot expected,
+			SettingsSnapshot snapshot) {
+		boolean watched = PcDirectoryWatcher.getDefault().watch(
+				snapshot.getEnvironment().getSearchDirectories());
+		String cfgId = snapshot.getConfigurationId();
+		synchronized (this.snapshots) {
+			Map<String, SettingsSnapshot> cfgSnapshots = getSnapshots(proj, true);
+			SettingsSnapshot current = cfgSnapshots.get(cfgId);
+			if (current != null && current != expected) {
+				return false;
+			}
+			if (watched) {
+				cfgSnapshots.put(cfgId, snapshot);
+			} else {
+				cfgSnapshots.remove(cfgId);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Get the snapshots of the configurations of a project. Must be called
+	 * with the snapshots locked.
+	 *
+	 * @param proj Project
+	 * @param create Create the map if the project has none
+	 * @return Snapshots by configuration id
+	 */
+	private Map<String, SettingsSnapshot> getSnapshots(IProject proj,
+			boolean create) {
+		Map<String, SettingsSnapshot> cfgSnapshots = this.snapshots.get(proj);
+		if (cfgSnapshots == null) {
+			if (!create) {
+				return Collections.emptyMap();
+			}
+			cfgSnapshots = new HashMap<String, SettingsSnapshot>();
+			this.snapshots.put(proj, cfgSnapshots);
+		}
+		return cfgSnapshots;
+	}
+
+	@Override
+	public void pcDirectoryChanged(File dir) {
+		synchronized (this.snapshots) {
+			for (Map<String, SettingsSnapshot> cfgSnapshots : this.snapshots
+					.values()) {
+				Iterator<SettingsSnapshot> it = cfgSnapshots.values().iterator();
+				while (it.hasNext()) {
+					if (it.next().getEnvironment().getSearchDirectories()
+							.contains(dir)) {
+						it.remove();
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,683 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012 Petri Tuononen and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Petri Tuononen - Initial implementation
+ *******************************************************************************/
+package org.eclipse.cdt.managedbuilder.pkgconfig.settings;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.cdt.core.model.CoreModel;
+import org.eclipse.cdt.core.settings.model.ICConfigurationDescription;
+import org.eclipse.cdt.core.settings.model.ICLanguageSetting;
+import org.eclipse.cdt.core.settings.model.ICLanguageSettingEntry;
+import org.eclipse.cdt.core.settings.model.ICProjectDescription;
+import org.eclipse.cdt.core.settings.model.ICSettingEntry;
+import org.eclipse.cdt.core.settings.model.ICStorageElement;
+import org.eclipse.cdt.managedbuilder.core.IConfiguration;
+import org.eclipse.cdt.managedbuilder.core.ITool;
+import org.eclipse.cdt.managedbuilder.core.ManagedBuildManager;
+import org.eclipse.cdt.managedbuilder.pkgconfig.Activator;
+import org.eclipse.cdt.managedbuilder.pkgconfig.util.PackageFlags;
+import org.eclipse.cdt.managedbuilder.pkgconfig.util.PathToToolOption;
+import org.eclipse.cdt.managedbuilder.pkgconfig.util.PathToToolOption.Compiler;
+import org.eclipse.cdt.managedbuilder.pkgconfig.util.PkgConfigUtil;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Writes the flags of the checked packages to the language settings and the
+ * tool options of a project.
+ *
+ * The language setting entries and the compiler flags each package has
+ * contributed are recorded in the configuration, see {@link Contributions},
+ * so that only the values of the packages whose check state changed are
+ * added or removed. Afterwards only the translation units affected by the
+ * change are indexed again, see {@link IndexUpdater}.
+ *
+ * Each project has its own job whose scheduling rule is the modify rule of
+ * the project, so the writes of a project are serialized with each other
+ * and with other modifications of the project. If a configuration is queued
+ * again before its previous settings have been written, only the latest
+ * settings are written and a write of the configuration already in progress
+ * is canceled.
+ */
+public class SettingsWriter {
+
+	private static final String GCC_LANGUAGE_ID = "org.eclipse.cdt.core.gcc"; //$NON-NLS-1$
+	private static final String GPP_LANGUAGE_ID = "org.eclipse.cdt.core.g++"; //$NON-NLS-1$
+
+	private static SettingsWriter instance;
+
+	private final Map<IProject, ProjectWriter> writers = new HashMap<IProject, ProjectWriter>();
+
+	/**
+	 * Get the shared writer.
+	 *
+	 * @return SettingsWriter
+	 */
+	public static synchronized SettingsWriter getDefault() {
+		if (instance == null) {
+			instance = new SettingsWriter();
+		}
+		return instance;
+	}
+
+	/**
+	 * Cancel the pending writes. Called when the plug-in is stopped.
+	 */
+	public static synchronized void shutdown() {
+		if (instance != null) {
+			Job.getJobManager().cancel(instance);
+			synchronized (instance.writers) {
+				instance.writers.clear();
+			}
+			instance = null;
+		}
+	}
+
+	/**
+	 * Queue the settings of a project to be written. The packages of an
+	 * unresolved snapshot are resolved first, and the external settings
+	 * served from it are updated afterwards.
+	 *
+	 * @param proj Project
+	 * @param snapshot Settings of the checked packages
+	 */
+	public void write(IProject proj, SettingsSnapshot snapshot) {
+		synchronized (this.writers) {
+			ProjectWriter writer = this.writers.get(proj);
+			if (writer == null) {
+				writer = new ProjectWriter(proj);
+				this.writers.put(proj, writer);
+			}
+			String cfgId = snapshot.getConfigurationId();
+			writer.pending.put(cfgId, snapshot);
+			if (writer.getState() == Job.RUNNING
+					&& cfgId.equals(writer.writing)) {
+				// the settings being written are stale
+				writer.cancel();
+			}
+			// a running job is run again when it has finished
+			writer.schedule();
+		}
+	}
+
+	/**
+	 * Writes the latest settings queued for each configuration of a project.
+	 */
+	private class ProjectWriter extends Job {
+		private final IProject proj;
+		// guarded by writers
+		final Map<String, SettingsSnapshot> pending = new LinkedHashMap<String, SettingsSnapshot>();
+		String writing;
+
+		ProjectWriter(IProject proj) {
+			super("Update pkg-config settings of " + proj.getName()); //$NON-NLS-1$
+			this.proj = proj;
+			setPriority(Job.INTERACTIVE);
+			setRule(proj.getWorkspace().getRuleFactory().modifyRule(proj));
+		}
+
+		@Override
+		public boolean belongsTo(Object family) {
+			return family == SettingsWriter.this;
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			while (!monitor.isCanceled() && this.proj.isAccessible()) {
+				SettingsSnapshot snapshot;
+				synchronized (SettingsWriter.this.writers) {
+					Iterator<SettingsSnapshot> it = this.pending.values()
+							.iterator();
+					if (!it.hasNext()) {
+						break;
+					}
+					snapshot = it.next();
+					it.remove();
+					this.writing = snapshot.getConfigurationId();
+				}
+				List<String> pkgList = snapshot.getPackages();
+				String[] pkgs = pkgList.toArray(new String[pkgList.size()]);
+				PackageFlags served = null;
+				String fingerprint = null;
+				if (!snapshot.isResolved()) {
+					served = snapshot.getFlags();
+					// taken before resolving so that a concurrent change is
+					// noticed
+					fingerprint = PkgConfigUtil.getFingerprint(pkgs,
+							this.proj.getName());
+				}
+				// the flags of each package are needed for the contributions,
+				// so the packages are resolved one by one and only once
+				List<PackageFlags> pkgFlags = PkgConfigUtil.getEachPackageFlags(
+						pkgs, this.proj.getName(), monitor);
+				if (monitor.isCanceled()) {
+					continue;
+				}
+				if (!snapshot.isResolved()) {
+					snapshot = resolveSnapshot(this.proj, snapshot,
+							PackageFlags.merge(pkgFlags), fingerprint);
+				}
+				if (snapshot != null) {
+					writeSettings(this.proj, snapshot, pkgFlags, served,
+							monitor);
+				}
+			}
+			synchronized (SettingsWriter.this.writers) {
+				this.writing = null;
+				if (this.pending.isEmpty()
+						&& SettingsWriter.this.writers.get(this.proj) == this) {
+					SettingsWriter.this.writers.remove(this.proj);
+				}
+			}
+			return monitor.isCanceled() ? Status.CANCEL_STATUS
+					: Status.OK_STATUS;
+		}
+	}
+
+	/**
+	 * Make the resolved flags of a snapshot whose flags were not known the
+	 * current snapshot of its configuration.
+	 *
+	 * @param proj
+	 * @param unresolved Snapshot served until the packages are resolved
+	 * @param flags Merged flags of the packages
+	 * @param fingerprint Fingerprint taken before the packages were resolved
+	 * @return Resolved snapshot or null if the checked packages have changed
+	 *         in the meantime
+	 */
+	private static SettingsSnapshot resolveSnapshot(IProject proj,
+			SettingsSnapshot unresolved, PackageFlags flags, String fingerprint) {
+		List<String> pkgList = unresolved.getPackages();
+		SettingsSnapshot resolved = new SettingsSnapshot(
+				unresolved.getConfigurationId(), unresolved.getEnvironment(),
+				pkgList.toArray(new String[pkgList.size()]),
+				unresolved.isAllConfigurations(), flags, fingerprint);
+		if (!SettingsSnapshotCache.getDefault().replace(proj, unresolved,
+				resolved)) {
+			return null;
+		}
+		return resolved;
+	}
+
+	/**
+	 * Update the include paths, library files and library paths in the
+	 * language settings, the other flags and defined symbols in the
+	 * compiler options and the linker flags in the linker options of the
+	 * configuration of the snapshot, or of all the configurations if the
+	 * snapshot says so. The values of the packages that are no longer
+	 * checked are removed and the values of the newly checked packages are
+	 * added. The project description is saved once and only if something
+	 * changed. The snapshot is stored in
+	 * the configuration of the snapshot along with the settings.
+	 *
+	 * @param proj
+	 * @param snapshot
+	 * @param pkgFlags Flags of each package of the snapshot
+	 * @param served Flags the external settings were served from until the
+	 *            snapshot was resolved, null if served from the stored
+	 *            snapshot
+	 * @param monitor
+	 */
+	private static void writeSettings(IProject proj, SettingsSnapshot snapshot,
+			List<PackageFlags> pkgFlags, PackageFlags served,
+			IProgressMonitor monitor) {
+		List<String> pkgs = snapshot.getPackages();
+		ICProjectDescription projDesc = CoreModel.getDefault()
+				.getProjectDescription(proj, true);
+		if (projDesc == null) {
+			return;
+		}
+		ICConfigurationDescription snapshotCfg = projDesc
+				.getConfigurationById(snapshot.getConfigurationId());
+		if (snapshotCfg == null) {
+			// the configuration has been removed
+			return;
+		}
+		ICConfigurationDescription[] cfgs;
+		if (snapshot.isAllConfigurations()) {
+			cfgs = projDesc.getConfigurations();
+		} else {
+			cfgs = new ICConfigurationDescription[] { snapshotCfg };
+		}
+		IndexUpdater indexUpdater = new IndexUpdater();
+		boolean changed = false;
+		for (ICConfigurationDescription cfg : cfgs) {
+			if (cfg != null) {
+				changed |= writeConfiguration(cfg, pkgs, pkgFlags, indexUpdater);
+			}
+		}
+		changed |= storeSnapshot(snapshotCfg, cfgs, snapshot, served);
+		changed |= migrateCheckedPackages(projDesc);
+		if (changed && !monitor.isCanceled()) {
+			try {
+				CoreModel.getDefault().setProjectDescription(proj, projDesc);
+				indexUpdater.update(proj);
+			} catch (CoreException e) {
+				Activator.getDefault().log(e,
+						"Setting/updating the project description failed."); //$NON-NLS-1$
+			}
+		}
+	}
+
+	/**
+	 * Store the snapshot in a configuration so that the next session can use
+	 * it without resolving the packages. If the flags differ from the ones
+	 * the external settings were served from, the external settings of the
+	 * configurations are updated.
+	 *
+	 * @param snapshotCfg Configuration description of the snapshot
+	 * @param cfgs Configuration descriptions the flags are applied to
+	 * @param snapshot
+	 * @param served Flags the external settings were served from, null if
+	 *            served from the stored snapshot
+	 * @return True if the stored snapshot or the external settings changed
+	 */
+	private static boolean storeSnapshot(
+			ICConfigurationDescription snapshotCfg,
+			ICConfigurationDescription[] cfgs, SettingsSnapshot snapshot,
+			PackageFlags served) {
+		ICStorageElement storage;
+		try {
+			storage = snapshotCfg.getStorage(SettingsSnapshot.STORAGE, true);
+		} catch (CoreException e) {
+			Activator.getDefault().log(e,
+					"Storing the resolved settings failed."); //$NON-NLS-1$
+			return false;
+		}
+		SettingsSnapshot stored = SettingsSnapshot.load(storage,
+				snapshotCfg.getId());
+		if (served == null && stored != null) {
+			served = stored.getFlags();
+		}
+		boolean changed = false;
+		if (!snapshot.isSameAs(stored)) {
+			snapshot.save(storage);
+			changed = true;
+		}
+		if (served != null && !served.equals(snapshot.getFlags())) {
+			// settings served in the meantime are out of date
+			for (ICConfigurationDescription cfg : cfgs) {
+				if (cfg != null) {
+					cfg.updateExternalSettingsProviders(new String[] { PkgConfigExternalSettingProvider.ID });
+				}
+			}
+			changed = true;
+		}
+		return changed;
+	}
+
+	/**
+	 * Convert the checked packages stored in the format of earlier versions.
+	 *
+	 * @param projDesc Project description
+	 * @return True if a configuration was converted
+	 */
+	private static boolean migrateCheckedPackages(ICProjectDescription projDesc) {
+		boolean changed = false;
+		for (ICConfigurationDescription cfg : projDesc.getConfigurations()) {
+			try {
+				changed |= CheckedPackages.migrate(cfg.getStorage(
+						CheckedPackages.STORAGE, false));
+			} catch (CoreException e) {
+				Activator.getDefault().log(e,
+						"Getting packages from the storage failed."); //$NON-NLS-1$
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Update the language settings and the compiler options of a
+	 * configuration.
+	 *
+	 * @param cfg Configuration description
+	 * @param pkgs Checked packages
+	 * @param pkgFlags Flags of each package
+	 * @param indexUpdater Records the changes that affect the index
+	 * @return True if the configuration changed
+	 */
+	private static boolean writeConfiguration(ICConfigurationDescription cfg,
+			List<String> pkgs, List<PackageFlags> pkgFlags,
+			IndexUpdater indexUpdater) {
+		ICStorageElement storage;
+		try {
+			storage = cfg.getStorage(Contributions.STORAGE, true);
+		} catch (CoreException e) {
+			Activator.getDefault().log(e,
+					"Getting package contributions from the storage failed."); //$NON-NLS-1$
+			return false;
+		}
+		Contributions oldContributions = Contributions.load(storage);
+		Contributions newContributions = new Contributions();
+
+		boolean changed = writeLanguageSettings(cfg, pkgs, pkgFlags,
+				oldContributions, newContributions, indexUpdater);
+		changed |= writeToolOptions(cfg, pkgs, pkgFlags, oldContributions,
+				newContributions, indexUpdater);
+		if (!newContributions.equals(oldContributions)) {
+			newContributions.save(storage);
+			changed = true;
+		}
+		return changed;
+	}
+
+	/**
+	 * Apply the difference of the include paths, library files and library
+	 * paths to the C and C++ language settings.
+	 *
+	 * @param cfg Configuration description
+	 * @param pkgs Checked packages
+	 * @param pkgFlags Flags of each package
+	 * @param oldContributions Contributions recorded by the previous write
+	 * @param newContributions Contributions of this write, filled in
+	 * @param indexUpdater Records the changed include paths and the
+	 *            include paths of the checked packages
+	 * @return True if entries were added or removed
+	 */
+	private static boolean writeLanguageSettings(ICConfigurationDescription cfg,
+			List<String> pkgs, List<PackageFlags> pkgFlags,
+			Contributions oldContributions, Contributions newContributions,
+			IndexUpdater indexUpdater) {
+		List<ICLanguageSetting> langs = getGCCLanguageSettings(cfg);
+		if (langs.isEmpty()) {
+			return false;
+		}
+		Map<String, ICLanguageSettingEntry[]> includes = new LinkedHashMap<String, ICLanguageSettingEntry[]>();
+		Map<String, ICLanguageSettingEntry[]> libFiles = new LinkedHashMap<String, ICLanguageSettingEntry[]>();
+		Map<String, ICLanguageSettingEntry[]> libPaths = new LinkedHashMap<String, ICLanguageSettingEntry[]>();
+		Set<String> packageIncludePaths = new HashSet<String>();
+		for (int i = 0; i < pkgs.size(); i++) {
+			PackageFlags flags = pkgFlags.get(i);
+			ICLanguageSettingEntry[] includePaths = PkgConfigExternalSettingProvider
+					.formIncludePathEntries(flags);
+			includes.put(pkgs.get(i), includePaths);
+			for (ICLanguageSettingEntry includePath : includePaths) {
+				packageIncludePaths.add(includePath.getName());
+			}
+			libFiles.put(pkgs.get(i),
+					PkgConfigExternalSettingProvider.formLibraryFileEntries(flags));
+			libPaths.put(pkgs.get(i),
+					PkgConfigExternalSettingProvider.formLibraryPathEntries(flags));
+		}
+		indexUpdater.packageIncludePaths(packageIncludePaths);
+		boolean changed = false;
+		// each language has its own delta, so a value set by the user in one
+		// language is not taken for a package value because of another
+		for (ICLanguageSetting lang : langs) {
+			Delta includesDelta = applyDelta(lang, ICSettingEntry.INCLUDE_PATH,
+					Contributions.INCLUDE_PATH, includes, oldContributions,
+					newContributions);
+			indexUpdater.includePathsChanged(includesDelta.added,
+					includesDelta.removed);
+			changed |= !includesDelta.isEmpty();
+			changed |= !applyDelta(lang, ICSettingEntry.LIBRARY_FILE,
+					Contributions.LIBRARY_FILE, libFiles, oldContributions,
+					newContributions).isEmpty();
+			changed |= !applyDelta(lang, ICSettingEntry.LIBRARY_PATH,
+					Contributions.LIBRARY_PATH, libPaths, oldContributions,
+					newContributions).isEmpty();
+		}
+		return changed;
+	}
+
+	/**
+	 * Apply the difference of the other flags and the defined symbols to the
+	 * options of the C and the C++ compiler and of the linker flags to the
+	 * linker options. The flags of the unchecked packages are removed and the
+	 * flags of the checked packages added in one update per option. Like the
+	 * language settings, each compiler has its own contributions.
+	 *
+	 * @param cfg Configuration description
+	 * @param pkgs Checked packages
+	 * @param pkgFlags Flags of each package
+	 * @param oldContributions Contributions recorded by the previous write
+	 * @param newContributions Contributions of this write, filled in
+	 * @param indexUpdater Records the changed flags
+	 * @return True if an option changed
+	 */
+	private static boolean writeToolOptions(ICConfigurationDescription cfg,
+			List<String> pkgs, List<PackageFlags> pkgFlags,
+			Contributions oldContributions, Contributions newContributions,
+			IndexUpdater indexUpdater) {
+		IConfiguration cf = ManagedBuildManager
+				.getConfigurationForDescription(cfg);
+		if (cf == null) {
+			return false;
+		}
+		Map<String, Collection<String>> otherFlags = new LinkedHashMap<String, Collection<String>>();
+		Map<String, Collection<String>> definedSymbols = new LinkedHashMap<String, Collection<String>>();
+		Map<String, Collection<String>> linkerFlags = new LinkedHashMap<String, Collection<String>>();
+		for (int i = 0; i < pkgs.size(); i++) {
+			PackageFlags flags = pkgFlags.get(i);
+			otherFlags.put(pkgs.get(i), flags.getOtherFlags());
+			definedSymbols.put(pkgs.get(i), flags.getDefinedSymbols());
+			linkerFlags.put(pkgs.get(i), flags.getLinkerFlags());
+		}
+		boolean changed = false;
+		Set<String> compilerIds = new HashSet<String>();
+		for (Compiler kind : Compiler.values()) {
+			ITool compiler = PathToToolOption.getCompiler(cf, kind);
+			// a tool-chain may compile C and C++ with the same tool
+			if (compiler == null || !compilerIds.add(compiler.getId())) {
+				continue;
+			}
+			String language = kind == Compiler.C ? GCC_LANGUAGE_ID
+					: GPP_LANGUAGE_ID;
+			Delta otherFlagsDelta = computeDelta(language,
+					Contributions.OTHER_FLAG, otherFlags,
+					PathToToolOption.getSetOtherFlags(cf, kind,
+							getAllValues(language, Contributions.OTHER_FLAG,
+									otherFlags, oldContributions)),
+					oldContributions, newContributions);
+			Delta definedSymbolsDelta = computeDelta(language,
+					Contributions.DEFINED_SYMBOL, definedSymbols,
+					PathToToolOption.getSetDefinedSymbols(cf, kind,
+							getAllValues(language,
+									Contributions.DEFINED_SYMBOL,
+									definedSymbols, oldContributions)),
+					oldContributions, newContributions);
+			if (otherFlagsDelta.isEmpty() && definedSymbolsDelta.isEmpty()) {
+				continue;
+			}
+			indexUpdater.otherFlagsChanged(otherFlagsDelta.added,
+					otherFlagsDelta.removed);
+			indexUpdater.definedSymbolsChanged(definedSymbolsDelta.added,
+					definedSymbolsDelta.removed);
+			changed |= PathToToolOption.updateFlags(cf, kind,
+					otherFlagsDelta.added, otherFlagsDelta.removed,
+					definedSymbolsDelta.added, definedSymbolsDelta.removed);
+		}
+		Delta linkerFlagsDelta = computeDelta(null, Contributions.LINKER_FLAG,
+				linkerFlags,
+				PathToToolOption.getSetLinkerFlags(cf, getAllValues(null,
+						Contributions.LINKER_FLAG, linkerFlags,
+						oldContributions)), oldContributions, newContributions);
+		changed |= PathToToolOption.updateLinkerFlags(cf,
+				linkerFlagsDelta.added, linkerFlagsDelta.removed);
+		return changed;
+	}
+
+	/**
+	 * Get the values of one kind that the checked packages want or that
+	 * were contributed before, i.e. the values whose presence in the
+	 * settings matters for the delta.
+	 *
+	 * @param language Language id, null for values not specific to a
+	 *            language
+	 * @param kind Kind of the contributions
+	 * @param pkgValues Values of each checked package
+	 * @param oldContributions Contributions recorded by the previous write
+	 * @return Set of values
+	 */
+	private static Set<String> getAllValues(String language, String kind,
+			Map<String, Collection<String>> pkgValues,
+			Contributions oldContributions) {
+		Set<String> all = oldContributions.getAll(language, kind);
+		for (Collection<String> values : pkgValues.values()) {
+			all.addAll(values);
+		}
+		return all;
+	}
+
+	/**
+	 * Compute which entries of one kind have to be added and removed so that
+	 * the language setting holds the entries of the checked packages, and
+	 * apply only that difference.
+	 *
+	 * @param lang Language setting
+	 * @param kind Kind of the entries
+	 * @param contributionKind Kind of the contributions
+	 * @param pkgEntries Entries of each checked package
+	 * @param oldContributions Contributions recorded by the previous write
+	 * @param newContributions Contributions of this write, filled in
+	 * @return Delta that was applied
+	 */
+	private static Delta applyDelta(ICLanguageSetting lang, int kind,
+			String contributionKind,
+			Map<String, ICLanguageSettingEntry[]> pkgEntries,
+			Contributions oldContributions, Contributions newContributions) {
+		ICLanguageSettingEntry[] currentEntries = lang.getSettingEntries(kind);
+		Set<String> current = new HashSet<String>();
+		for (ICLanguageSettingEntry entry : currentEntries) {
+			current.add(entry.getName());
+		}
+		Map<String, Collection<String>> pkgNames = new LinkedHashMap<String, Collection<String>>();
+		Map<String, ICLanguageSettingEntry> entriesByName = new HashMap<String, ICLanguageSettingEntry>();
+		for (Map.Entry<String, ICLanguageSettingEntry[]> pkg : pkgEntries
+				.entrySet()) {
+			List<String> names = new ArrayList<String>(pkg.getValue().length);
+			for (ICLanguageSettingEntry entry : pkg.getValue()) {
+				names.add(entry.getName());
+				if (!entriesByName.containsKey(entry.getName())) {
+					entriesByName.put(entry.getName(), entry);
+				}
+			}
+			pkgNames.put(pkg.getKey(), names);
+		}
+		Delta delta = computeDelta(lang.getLanguageId(), contributionKind,
+				pkgNames, current, oldContributions, newContributions);
+		if (delta.isEmpty()) {
+			return delta;
+		}
+
+		List<ICLanguageSettingEntry> entries = new ArrayList<ICLanguageSettingEntry>(
+				currentEntries.length + delta.added.size());
+		for (ICLanguageSettingEntry entry : currentEntries) {
+			if (!delta.removed.contains(entry.getName())) {
+				entries.add(entry);
+			}
+		}
+		for (String name : delta.added) {
+			entries.add(entriesByName.get(name));
+		}
+		lang.setSettingEntries(kind, entries);
+		return delta;
+	}
+
+	/**
+	 * Compute which values of one kind have to be added and removed so that
+	 * the settings hold the values of the checked packages.
+	 *
+	 * A value is owned by the packages that contributed it. A value that was
+	 * set before any package contributed it belongs to the user and is never
+	 * removed. Only the contributions to the given language are taken into
+	 * account.
+	 *
+	 * @param language Language id, null for values not specific to a
+	 *            language
+	 * @param kind Kind of the contributions
+	 * @param pkgValues Values of each checked package
+	 * @param current Values currently set, at least those of the packages and
+	 *            the old contributions
+	 * @param oldContributions Contributions recorded by the previous write
+	 * @param newContributions Contributions of this write, filled in
+	 * @return Delta
+	 */
+	static Delta computeDelta(String language, String kind,
+			Map<String, Collection<String>> pkgValues, Set<String> current,
+			Contributions oldContributions, Contributions newContributions) {
+		Set<String> owned = oldContributions.getAll(language, kind);
+
+		// values the checked packages want, in package order
+		Set<String> wanted = new LinkedHashSet<String>();
+		for (Map.Entry<String, Collection<String>> pkg : pkgValues.entrySet()) {
+			for (String value : pkg.getValue()) {
+				if (!current.contains(value) || owned.contains(value)
+						|| wanted.contains(value)) {
+					newContributions.add(pkg.getKey(), language, kind, value);
+					wanted.add(value);
+				}
+			}
+		}
+
+		Set<String> removed = new HashSet<String>(owned);
+		removed.removeAll(wanted);
+		removed.retainAll(current);
+		Set<String> added = new LinkedHashSet<String>(wanted);
+		added.removeAll(current);
+		return new Delta(added, removed);
+	}
+
+	/**
+	 * Values to add and to remove.
+	 */
+	static class Delta {
+		final Set<String> added;
+		final Set<String> removed;
+
+		Delta(Set<String> added, Set<String> removed) {
+			this.added = added;
+			this.removed = removed;
+		}
+
+		boolean isEmpty() {
+			return this.added.isEmpty() && this.removed.isEmpty();
+		}
+	}
+
+	/**
+	 * Get the C and C++ language settings of a configuration.
+	 *
+	 * @param cfg Configuration description
+	 * @return Language settings, empty if there are none
+	 */
+	private static List<ICLanguageSetting> getGCCLanguageSettings(
+			ICConfigurationDescription cfg) {
+		List<ICLanguageSetting> langs = new ArrayList<ICLanguageSetting>(2);
+		if (cfg == null || cfg.getRootFolderDescription() == null) {
+			return langs;
+		}
+		for (ICLanguageSetting langSetting : cfg.getRootFolderDescription()
+				.getLanguageSettings()) {
+			String id = langSetting.getLanguageId();
+			if (id != null
+					&& (id.equalsIgnoreCase(GCC_LANGUAGE_ID) || id
+							.equalsIgnoreCase(GPP_LANGUAGE_ID))) {
+				langs.add(langSetting);
+			}
+		}
+		return langs;
+	}
+
+}
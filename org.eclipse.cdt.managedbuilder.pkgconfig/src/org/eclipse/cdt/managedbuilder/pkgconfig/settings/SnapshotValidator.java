@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012 Petri Tuononen and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Petri Tuononen - Initial implementation
+ *******************************************************************************/
+package org.eclipse.cdt.managedbuilder.pkgconfig.settings;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.cdt.managedbuilder.pkgconfig.util.PkgConfigUtil;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Checks in the background whether a {@link SettingsSnapshot} read from the
+ * storage of a configuration is still up to date.
+ *
+ * The fingerprint of the .pc files is compared with the one stored with the
+ * snapshot. Only if they differ is the snapshot queued to the
+ * {@link SettingsWriter} to be resolved again, which replaces the stored
+ * snapshot and writes the new flags to the project.
+ */
+public class SnapshotValidator {
+
+	private static SnapshotValidator instance;
+
+	// project name and configuration id -> job
+	private final Map<String, ValidationJob> jobs = new HashMap<String, ValidationJob>();
+
+	/**
+	 * Get the shared validator.
+	 *
+	 * @return SnapshotValidator
+	 */
+	public static synchronized SnapshotValidator getDefault() {
+		if (instance == null) {
+			instance = new SnapshotValidator();
+		}
+		return instance;
+	}
+
+	/**
+	 * Cancel the pending validations. Called when the plug-in is stopped.
+	 */
+	public static synchronized void shutdown() {
+		if (instance != null) {
+			Job.getJobManager().cancel(instance);
+			synchronized (instance.jobs) {
+				instance.jobs.clear();
+			}
+			instance = null;
+		}
+	}
+
+	/**
+	 * Queue a stored snapshot of a configuration to be validated. Nothing is
+	 * done if a validation of the configuration is already queued.
+	 *
+	 * @param proj Project
+	 * @param snapshot Snapshot read from the configuration storage
+	 */
+	public void validate(IProject proj, SettingsSnapshot snapshot) {
+		String key = proj.getName() + '/' + snapshot.getConfigurationId();
+		synchronized (this.jobs) {
+			if (this.jobs.containsKey(key)) {
+				return;
+			}
+			ValidationJob job = new ValidationJob(key, proj, snapshot);
+			this.jobs.put(key, job);
+			job.schedule();
+		}
+	}
+
+	/**
+	 * Validates the stored snapshot of a configuration.
+	 */
+	private class ValidationJob extends Job {
+		private final String key;
+		private final IProject proj;
+		private final SettingsSnapshot snapshot;
+
+		ValidationJob(String key, IProject proj, SettingsSnapshot snapshot) {
+			super("Validate pkg-config settings of " + proj.getName()); //$NON-NLS-1$
+			this.key = key;
+			this.proj = proj;
+			this.snapshot = snapshot;
+			setPriority(Job.DECORATE);
+			setSystem(true);
+		}
+
+		@Override
+		public boolean belongsTo(Object family) {
+			return family == SnapshotValidator.this;
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			try {
+				if (this.proj.isAccessible()) {
+					validateSnapshot(this.proj, this.snapshot);
+				}
+			} finally {
+				synchronized (SnapshotValidator.this.jobs) {
+					SnapshotValidator.this.jobs.remove(this.key);
+				}
+			}
+			return monitor.isCanceled() ? Status.CANCEL_STATUS
+					: Status.OK_STATUS;
+		}
+	}
+
+	/**
+	 * Have the packages of a snapshot resolved again if the .pc files have
+	 * changed since it was stored.
+	 *
+	 * @param proj Project
+	 * @param snapshot Stored snapshot
+	 */
+	private static void validateSnapshot(IProject proj,
+			SettingsSnapshot snapshot) {
+		List<String> pkgList = snapshot.getPackages();
+		if (pkgList.isEmpty()) {
+			return;
+		}
+		String[] pkgs = pkgList.toArray(new String[pkgList.size()]);
+		String fingerprint = PkgConfigUtil.getFingerprint(pkgs, proj.getName());
+		if (fingerprint != null
+				&& fingerprint.equals(snapshot.getFingerprint())) {
+			return;
+		}
+		// the writer resolves the packages once for the flags of each
+		// package and the merged flags, the stored flags are served until then
+		SettingsSnapshot unresolved = SettingsSnapshot.unresolved(
+				snapshot.getConfigurationId(), snapshot.getEnvironment(), pkgs,
+				snapshot.isAllConfigurations(), snapshot.getFlags());
+		// the checked packages may have changed in the meantime
+		if (SettingsSnapshotCache.getDefault().replace(proj, snapshot,
+				unresolved)) {
+			SettingsWriter.getDefault().write(proj, unresolved);
+		}
+	}
+
+}
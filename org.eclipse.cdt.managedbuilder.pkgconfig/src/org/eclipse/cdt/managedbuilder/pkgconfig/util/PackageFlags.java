@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012 Petri Tuononen and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Petri Tuononen - Initial implementation
+ *******************************************************************************/
+package org.eclipse.cdt.managedbuilder.pkgconfig.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The compiler and linker flags of one or more packages parsed from the
+ * output of "pkg-config --cflags --libs".
+ *
+ * Instances are immutable.
+ */
+public class PackageFlags {
+
+	public static final PackageFlags EMPTY = new PackageFlags(
+			new ArrayList<String>(), new ArrayList<String>(),
+			new ArrayList<String>(), new ArrayList<String>(),
+			new ArrayList<String>(), new ArrayList<String>(),
+			new ArrayList<String>());
+
+	private final List<String> includePaths;
+	private final List<String> systemIncludePaths;
+	private final List<String> definedSymbols;
+	private final List<String> otherFlags;
+	private final List<String> libraryPaths;
+	private final List<String> libraries;
+	private final List<String> linkerFlags;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param includePaths Include paths without -I
+	 * @param systemIncludePaths Include paths without -isystem
+	 * @param definedSymbols Defined symbols without -D
+	 * @param otherFlags Other compiler flags
+	 * @param libraryPaths Library search paths without -L
+	 * @param libraries Libraries without -l
+	 * @param linkerFlags Flags only the linker needs
+	 */
+	public PackageFlags(List<String> includePaths,
+			List<String> systemIncludePaths, List<String> definedSymbols,
+			List<String> otherFlags, List<String> libraryPaths,
+			List<String> libraries, List<String> linkerFlags) {
+		this.includePaths = Collections.unmodifiableList(includePaths);
+		this.systemIncludePaths = Collections.unmodifiableList(systemIncludePaths);
+		this.definedSymbols = Collections.unmodifiableList(definedSymbols);
+		this.otherFlags = Collections.unmodifiableList(otherFlags);
+		this.libraryPaths = Collections.unmodifiableList(libraryPaths);
+		this.libraries = Collections.unmodifiableList(libraries);
+		this.linkerFlags = Collections.unmodifiableList(linkerFlags);
+	}
+
+	/**
+	 * Merge the flags of several packages the way pkg-config merges them
+	 * when it is given several packages. Duplicate flags keep their first
+	 * occurrence except libraries, see {@link #removeDuplicateLibraries}.
+	 *
+	 * @param pkgFlags Flags of the packages in order
+	 * @return Merged flags
+	 */
+	public static PackageFlags merge(List<PackageFlags> pkgFlags) {
+		if (pkgFlags.size() == 1) {
+			return pkgFlags.get(0);
+		}
+		Set<String> includePaths = new LinkedHashSet<String>();
+		Set<String> systemIncludePaths = new LinkedHashSet<String>();
+		Set<String> definedSymbols = new LinkedHashSet<String>();
+		Set<String> otherFlags = new LinkedHashSet<String>();
+		Set<String> libraryPaths = new LinkedHashSet<String>();
+		List<String> libraries = new ArrayList<String>();
+		Set<String> linkerFlags = new LinkedHashSet<String>();
+		for (PackageFlags flags : pkgFlags) {
+			includePaths.addAll(flags.includePaths);
+			systemIncludePaths.addAll(flags.systemIncludePaths);
+			definedSymbols.addAll(flags.definedSymbols);
+			otherFlags.addAll(flags.otherFlags);
+			libraryPaths.addAll(flags.libraryPaths);
+			libraries.addAll(flags.libraries);
+			linkerFlags.addAll(flags.linkerFlags);
+		}
+		return new PackageFlags(toList(includePaths),
+				toList(systemIncludePaths), toList(definedSymbols),
+				toList(otherFlags), toList(libraryPaths),
+				removeDuplicateLibraries(libraries), toList(linkerFlags));
+	}
+
+	/**
+	 * Remove duplicate libraries keeping the last occurrence of each, so
+	 * that a library still comes after the libraries that need it.
+	 *
+	 * @param libraries Libraries in link order
+	 * @return Libraries without duplicates
+	 */
+	static List<String> removeDuplicateLibraries(List<String> libraries) {
+		Set<String> seen = new HashSet<String>();
+		List<String> result = new ArrayList<String>(libraries.size());
+		// walk backwards to keep the last occurrence of each library
+		for (int i = libraries.size() - 1; i >= 0; i--) {
+			if (seen.add(libraries.get(i))) {
+				result.add(libraries.get(i));
+			}
+		}
+		Collections.reverse(result);
+		return result;
+	}
+
+	private static List<String> toList(Collection<String> values) {
+		return new ArrayList<String>(values);
+	}
+
+	/**
+	 * Get include paths.
+	 *
+	 * @return Include paths without -I
+	 */
+	public List<String> getIncludePaths() {
+		return this.includePaths;
+	}
+
+	/**
+	 * Get system include paths.
+	 *
+	 * @return Include paths without -isystem
+	 */
+	public List<String> getSystemIncludePaths() {
+		return this.systemIncludePaths;
+	}
+
+	/**
+	 * Get defined symbols.
+	 *
+	 * @return Defined symbols without -D, e.g. NAME or NAME=VALUE
+	 */
+	public List<String> getDefinedSymbols() {
+		return this.definedSymbols;
+	}
+
+	/**
+	 * Get compiler flags other than include paths and defined symbols.
+	 * An option whose value is a separate argument, e.g. "-include file", is
+	 * kept as a single flag.
+	 *
+	 * @return Other compiler flags
+	 */
+	public List<String> getOtherFlags() {
+		return this.otherFlags;
+	}
+
+	/**
+	 * Get library search paths.
+	 *
+	 * @return Library search paths without -L
+	 */
+	public List<String> getLibraryPaths() {
+		return this.libraryPaths;
+	}
+
+	/**
+	 * Get libraries.
+	 *
+	 * @return Libraries without -l
+	 */
+	public List<String> getLibraries() {
+		return this.libraries;
+	}
+
+	/**
+	 * Get flags that are only passed to the linker, such as -Wl,... options.
+	 *
+	 * @return Linker flags
+	 */
+	public List<String> getLinkerFlags() {
+		return this.linkerFlags;
+	}
+
+	@Override
+	public int hashCode() {
+		int result = this.includePaths.hashCode();
+		result = 31 * result + this.systemIncludePaths.hashCode();
+		result = 31 * result + this.definedSymbols.hashCode();
+		result = 31 * result + this.otherFlags.hashCode();
+		result = 31 * result + this.libraryPaths.hashCode();
+		result = 31 * result + this.libraries.hashCode();
+		result = 31 * result + this.linkerFlags.hashCode();
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof PackageFlags)) {
+			return false;
+		}
+		PackageFlags other = (PackageFlags) obj;
+		return this.includePaths.equals(other.includePaths)
+				&& this.systemIncludePaths.equals(other.systemIncludePaths)
+				&& this.definedSymbols.equals(other.definedSymbols)
+				&& this.otherFlags.equals(other.otherFlags)
+				&& this.libraryPaths.equals(other.libraryPaths)
+				&& this.libraries.equals(other.libraries)
+				&& this.linkerFlags.equals(other.linkerFlags);
+	}
+
+}
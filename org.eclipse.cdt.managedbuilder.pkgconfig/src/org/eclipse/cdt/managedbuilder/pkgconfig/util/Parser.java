@@ -11,9 +11,9 @@
 package org.eclipse.cdt.managedbuilder.pkgconfig.util;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
 
 /**
  * Parses pkg-config utility output.
@@ -21,17 +21,21 @@ import java.util.regex.Pattern;
  */
 public class Parser {
 	
-	// Regex for matching include path from "pkg-config --cflags" command
-	private static Pattern incPathRegex = Pattern.compile("(-I)(/{1}[^/\\s]*)+");//$NON-NLS-1$
-	
-	// Regex for matching include path from "pkg-config --libs-only-L" command
-	private static Pattern libPathRegex = Pattern.compile("(-L)(/{1}[^/\\s]*)+");//$NON-NLS-1$
-	
-	// Regex for matching include path from "pkg-config --libs-only-l" command
-	private static Pattern libsRegex = Pattern.compile("(-l)([^/\\s]*)+");//$NON-NLS-1$
-	
-	// Regex for matching quoted strings
-	private static Pattern quotedStringRegex = Pattern.compile("[^\\\\s\\\"']+|\\\"([^\\\"]*)\\\"|'([^']*)'");//$NON-NLS-1$
+	// Options whose value may be given as the next argument
+	private static final String INCLUDE_PATH = "-I"; //$NON-NLS-1$
+	private static final String SYSTEM_INCLUDE_PATH = "-isystem"; //$NON-NLS-1$
+	private static final String DEFINED_SYMBOL = "-D"; //$NON-NLS-1$
+	private static final String LIBRARY_PATH = "-L"; //$NON-NLS-1$
+	private static final String LIBRARY = "-l"; //$NON-NLS-1$
+	private static final String XLINKER = "-Xlinker"; //$NON-NLS-1$
+	private static final String FRAMEWORK = "-framework"; //$NON-NLS-1$
+	private static final String[] OTHER_SEPARATE_VALUE_OPTIONS = {
+			"-include", "-imacros", "-iquote", "-idirafter", "-U" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+	};
+
+	// Linker-only flags without a value
+	private static final String WL = "-Wl,"; //$NON-NLS-1$
+	private static final String RDYNAMIC = "-rdynamic"; //$NON-NLS-1$
 		
 	/**
 	 * Parses options from "pkg-config --cflags" input for -Dproperty=value.
@@ -39,25 +43,8 @@ public class Parser {
 	 * @param s Output from pkg-config.
 	 * @return Parsed String array.
 	 */
-	public static String[] parseCflagDefinedSymbolsOptions(String s) throws NullPointerException {
-		if (s != null && !s.isEmpty()) {
-			String str = null;
-			//find the first index where include list starts, look for -I<unix-path>
-			//Using regex (-I)(/[^/\s]*)+
-			Matcher m = incPathRegex.matcher(s);
-			// removing matches leaving only the flags
-			str = m.replaceAll("").trim();//$NON-NLS-1$
-			
-			Matcher definedSymbolsMatches = quotedStringRegex.matcher(str);
-			ArrayList<String> definedSymbols = new ArrayList<String>();
-			while(definedSymbolsMatches.find() && (str = definedSymbolsMatches.group())!= null && !str.isEmpty()) {
-				if(str.startsWith("-D") && str.length() > 2) //$NON-NLS-1$
-					definedSymbols.add(str.substring(2,str.length()));
-			}
-			return definedSymbols.size()>0?definedSymbols.toArray(new String[definedSymbols.size()]):null;
-		}
-		return null;
-			
+	public static String[] parseCflagDefinedSymbolsOptions(String s) {
+		return toArray(parsePackageFlags(s).getDefinedSymbols());
 	}
 	
 	/**
@@ -66,24 +53,8 @@ public class Parser {
 	 * @param s Output from pkg-config.
 	 * @return Parsed String array.
 	 */
-	public static String[] parseCflagOtherFlagsOptions(String s) throws NullPointerException {
-		if (s != null && !s.isEmpty()) {
-			String str = null;
-			//find the first index where include list starts, look for -I<unix-path>
-			//Using regex (-I)(/[^/\s]*)+
-			Matcher m = incPathRegex.matcher(s);
-			// removing matches leaving only the flags
-			str = m.replaceAll("").trim();//$NON-NLS-1$
-			Matcher defMatches = quotedStringRegex.matcher(str);
-			ArrayList<String> flagsList = new ArrayList<String>();
-			while(defMatches.find() && (str = defMatches.group())!= null && !str.isEmpty()) {
-				if(!str.startsWith("-D")) //$NON-NLS-1$
-					flagsList.add(str);
-			}
-			return flagsList.size()>0?flagsList.toArray(new String[flagsList.size()]):null;
-		}
-		return null;
-			
+	public static String[] parseCflagOtherFlagsOptions(String s) {
+		return toArray(parsePackageFlags(s).getOtherFlags());
 	}
 	
 	/**
@@ -92,19 +63,8 @@ public class Parser {
 	 * @param s Output from pkg-config.
 	 * @return Parsed String array.
 	 */
-	public static String[] parseIncPaths(String s) throws NullPointerException {
-		if (s != null && !s.isEmpty()) {
-			String str = null;
-			//Using regex (-I)(/{1}[^/\s]*)+")
-			Matcher m = incPathRegex.matcher(s);
-			ArrayList<String> incPaths = new ArrayList<String>();
-			while(m.find() && (str = m.group())!= null && !str.isEmpty()) {
-				// removing '-I' then inserting path into array
-				incPaths.add(str.substring(2,str.length()));
-			}
-			return incPaths.size()>0?incPaths.toArray(new String[incPaths.size()]):null;
-		}
-		return null;
+	public static String[] parseIncPaths(String s) {
+		return toArray(parsePackageFlags(s).getIncludePaths());
 	}
 	
 
@@ -114,19 +74,8 @@ public class Parser {
 	 * @param s Output from pkg-config.
 	 * @return Parsed String array.
 	 */
-	public static String[] parseLibPaths2(String s) throws NullPointerException{
-		if (s != null && !s.isEmpty()) {
-			String str = null;
-			//Using regex (-L)(/{1}[^/\s]*)+
-			Matcher m = libPathRegex.matcher(s);
-			ArrayList<String> libPaths = new ArrayList<String>();
-			while(m.find() && (str = m.group())!= null && !str.isEmpty()) {
-				// removing '-L' then inserting path into array
-				libPaths.add(str.substring(2,str.length()));
-			}
-			return libPaths.size()>0?libPaths.toArray(new String[libPaths.size()]):null;
-		}
-		return null;
+	public static String[] parseLibPaths2(String s) {
+		return toArray(parsePackageFlags(s).getLibraryPaths());
 	}
 	
 	/**
@@ -135,58 +84,296 @@ public class Parser {
 	 * @param s Output from pkg-config.
 	 * @return Parsed String array.
 	 */
-	public static String[] parseLibs2(String s) throws NullPointerException {
-		if (s != null && !s.isEmpty()) {
-			String str = null;
-			//Using regex (-l)([^/\s]*)+
-			Matcher m = libsRegex.matcher(s);
-			ArrayList<String> libs = new ArrayList<String>();
-			while(m.find() && (str = m.group())!= null && !str.isEmpty()) {
-				// removing '-l' then inserting path into array
-				libs.add(str.substring(2,str.length()));
-			}
-			return libs.size()>0?libs.toArray(new String[libs.size()]):null;
+	public static String[] parseLibs2(String s) {
+		return toArray(parsePackageFlags(s).getLibraries());
+	}
+
+	/**
+	 * Convert a list to an array.
+	 * 
+	 * @param values
+	 * @return String array or null if there are no values.
+	 */
+	private static String[] toArray(List<String> values) {
+		return values.isEmpty() ? null : values.toArray(new String[values.size()]);
+	}
+
+	/**
+	 * Parses the output of "pkg-config --cflags --libs" into include paths,
+	 * system include paths, defined symbols, other compiler flags, library
+	 * paths, libraries and linker flags. Duplicate flags are dropped keeping
+	 * the first occurrence, except for libraries which keep the last one
+	 * like pkg-config and {@link PackageFlags#merge(List)} do.
+	 * 
+	 * The output is split into arguments the way a shell splits them in a
+	 * single pass, honouring quotes and backslash escapes. A backslash that
+	 * does not escape whitespace, a quote, a backslash or $ is kept, so that
+	 * Windows paths stay intact. Each argument is classified as soon as it
+	 * is complete.
+	 * 
+	 * pkg-config prints the Cflags before the Libs. The Libs start at the
+	 * first library path, library, linker option or file such as a static
+	 * library, and the flags that follow are linker flags unless they are
+	 * include paths or defined symbols. A file is always a linker flag.
+	 * 
+	 * @param s Output from pkg-config.
+	 * @return PackageFlags, empty if s is null or empty.
+	 */
+	public static PackageFlags parsePackageFlags(String s) {
+		if (s == null || s.isEmpty()) {
+			return PackageFlags.EMPTY;
 		}
-		return null;
+		FlagCollector flags = new FlagCollector();
+		split(s, flags);
+		return flags.toPackageFlags();
 	}
-	
+
 	/**
-	 * Parse package list so that only package names are added to List.
+	 * Splits a string of flags into arguments the way a shell splits them,
+	 * see {@link #parsePackageFlags(String)}.
 	 * 
-	 * @param packages
-	 * @return
+	 * @param s Flags, may be null.
+	 * @return Arguments, empty if s is null or empty.
 	 */
-	public static List<String> parsePackageList(List<String> packages) {
-		List<String> operated = new ArrayList<String>();
-		for (String s : packages) {
-			//cut the string after the first white space
-			int end = s.indexOf(" "); //$NON-NLS-1$
-			operated.add(s.substring(0, end));
+	public static List<String> splitArguments(String s) {
+		final List<String> args = new ArrayList<String>();
+		if (s != null && !s.isEmpty()) {
+			split(s, new ArgumentHandler() {
+				@Override
+				public void add(String arg, int start, int end) {
+					args.add(arg);
+				}
+			});
 		}
-		return operated;
+		return args;
 	}
-	
+
 	/**
-	 * Parse package list that only package descriptions are added to List.
+	 * Splits a string of flags into arguments like
+	 * {@link #splitArguments(String)} and records where in the string each
+	 * argument was found, so that parts of the string can be removed without
+	 * touching the rest.
 	 * 
-	 * @param packages
-	 * @return
+	 * @param s Flags, may be null.
+	 * @return Arguments, empty if s is null or empty.
+	 */
+	static List<Argument> splitArgumentSpans(String s) {
+		final List<Argument> args = new ArrayList<Argument>();
+		if (s != null && !s.isEmpty()) {
+			split(s, new ArgumentHandler() {
+				@Override
+				public void add(String arg, int start, int end) {
+					args.add(new Argument(arg, start, end));
+				}
+			});
+		}
+		return args;
+	}
+
+	/**
+	 * Splits the string into arguments in a single pass and passes each
+	 * argument to the handler as soon as it is complete.
 	 */
-	public static List<String> parseDescription(List<String> packages) {
-		List<String> operated = new ArrayList<String>();
-		int ws, start = 0;
-		for (String s : packages) {
-			ws = s.indexOf(" "); //$NON-NLS-1$
-			//read as many characters forward that non white space is found
-			find: for (int i=1; i+ws<s.length(); i++) {
-				if (s.charAt(ws+i) != ' ') {
-					start = ws+i;
-					break find;
+	private static void split(String s, ArgumentHandler handler) {
+		StringBuilder arg = new StringBuilder();
+		boolean inArg = false;
+		int start = 0;
+		char quote = 0;
+		int length = s.length();
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				} else if (c == '\\' && quote == '"' && i + 1 < length
+						&& isEscapable(s.charAt(i + 1))) {
+					arg.append(s.charAt(++i));
+				} else {
+					arg.append(c);
 				}
+				continue;
 			}
-			operated.add(s.substring(start, s.length()));
+			if (Character.isWhitespace(c)) {
+				if (inArg) {
+					handler.add(arg.toString(), start, i);
+					arg.setLength(0);
+					inArg = false;
+				}
+				continue;
+			}
+			if (!inArg) {
+				start = i;
+				inArg = true;
+			}
+			if (c == '"' || c == '\'') {
+				quote = c;
+			} else if (c == '\\' && i + 1 < length && isEscapable(s.charAt(i + 1))) {
+				arg.append(s.charAt(++i));
+			} else {
+				arg.append(c);
+			}
+		}
+		if (inArg) {
+			handler.add(arg.toString(), start, length);
 		}
-		return operated;
 	}
-	
+
+	/**
+	 * Can the character be escaped with a backslash.
+	 */
+	private static boolean isEscapable(char c) {
+		return Character.isWhitespace(c) || c == '"' || c == '\'' || c == '\\'
+				|| c == '$';
+	}
+
+	/**
+	 * Receives the arguments split from a string.
+	 */
+	private interface ArgumentHandler {
+		/**
+		 * @param arg Argument without quotes and escapes
+		 * @param start Index of the first character of the argument
+		 * @param end Index after the last character of the argument
+		 */
+		void add(String arg, int start, int end);
+	}
+
+	/**
+	 * An argument and where it was found in the string it was split from.
+	 */
+	static class Argument {
+		final String value;
+		final int start;
+		final int end;
+
+		Argument(String value, int start, int end) {
+			this.value = value;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	/**
+	 * Classifies the arguments of pkg-config output.
+	 */
+	private static class FlagCollector implements ArgumentHandler {
+		private final Set<String> includePaths = new LinkedHashSet<String>();
+		private final Set<String> systemIncludePaths = new LinkedHashSet<String>();
+		private final Set<String> definedSymbols = new LinkedHashSet<String>();
+		private final Set<String> otherFlags = new LinkedHashSet<String>();
+		private final Set<String> libraryPaths = new LinkedHashSet<String>();
+		private final List<String> libraries = new ArrayList<String>();
+		private final Set<String> linkerFlags = new LinkedHashSet<String>();
+		// option waiting for its value in the next argument
+		private String pending;
+		// have the Libs started
+		private boolean inLibs = false;
+
+		/**
+		 * Classify an argument.
+		 * 
+		 * @param arg
+		 * @param start
+		 * @param end
+		 */
+		@Override
+		public void add(String arg, int start, int end) {
+			if (this.pending != null) {
+				String option = this.pending;
+				this.pending = null;
+				add(option, arg);
+			} else if (arg.length() < 2 || arg.charAt(0) != '-') {
+				// a file given to the linker, e.g. a static library
+				this.inLibs = true;
+				this.linkerFlags.add(arg);
+			} else if (arg.startsWith(SYSTEM_INCLUDE_PATH)) {
+				addOption(SYSTEM_INCLUDE_PATH, arg);
+			} else if (arg.startsWith(INCLUDE_PATH)) {
+				addOption(INCLUDE_PATH, arg);
+			} else if (arg.startsWith(DEFINED_SYMBOL)) {
+				addOption(DEFINED_SYMBOL, arg);
+			} else if (arg.startsWith(LIBRARY_PATH)) {
+				this.inLibs = true;
+				addOption(LIBRARY_PATH, arg);
+			} else if (arg.startsWith(LIBRARY)) {
+				this.inLibs = true;
+				addOption(LIBRARY, arg);
+			} else if (arg.equals(XLINKER) || arg.equals(FRAMEWORK)) {
+				this.inLibs = true;
+				this.pending = arg;
+			} else if (isOtherSeparateValueOption(arg)) {
+				this.pending = arg;
+			} else if (arg.startsWith(WL) || arg.equals(RDYNAMIC)) {
+				this.inLibs = true;
+				this.linkerFlags.add(arg);
+			} else if (this.inLibs) {
+				// e.g. -pthread or -fopenmp given to the linker
+				this.linkerFlags.add(arg);
+			} else {
+				this.otherFlags.add(arg);
+			}
+		}
+
+		/**
+		 * Add an option whose value is either attached to it or given as the
+		 * next argument.
+		 */
+		private void addOption(String option, String arg) {
+			if (arg.length() == option.length()) {
+				this.pending = option;
+			} else {
+				add(option, arg.substring(option.length()));
+			}
+		}
+
+		/**
+		 * Add the value of an option.
+		 */
+		private void add(String option, String value) {
+			if (option.equals(INCLUDE_PATH)) {
+				this.includePaths.add(value);
+			} else if (option.equals(SYSTEM_INCLUDE_PATH)) {
+				this.systemIncludePaths.add(value);
+			} else if (option.equals(DEFINED_SYMBOL)) {
+				this.definedSymbols.add(value);
+			} else if (option.equals(LIBRARY_PATH)) {
+				this.libraryPaths.add(value);
+			} else if (option.equals(LIBRARY)) {
+				this.libraries.add(value);
+			} else if (option.equals(XLINKER) || option.equals(FRAMEWORK)) {
+				this.linkerFlags.add(option + " " + value); //$NON-NLS-1$
+			} else {
+				this.otherFlags.add(option + " " + value); //$NON-NLS-1$
+			}
+		}
+
+		private static boolean isOtherSeparateValueOption(String arg) {
+			for (String option : OTHER_SEPARATE_VALUE_OPTIONS) {
+				if (option.equals(arg)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Get the classified flags. An option left without a value is kept
+		 * as an other flag.
+		 */
+		PackageFlags toPackageFlags() {
+			if (this.pending != null) {
+				this.otherFlags.add(this.pending);
+			}
+			return new PackageFlags(toList(this.includePaths),
+					toList(this.systemIncludePaths), toList(this.definedSymbols),
+					toList(this.otherFlags), toList(this.libraryPaths),
+					PackageFlags.removeDuplicateLibraries(this.libraries),
+					toList(this.linkerFlags));
+		}
+
+		private static List<String> toList(Set<String> values) {
+			return new ArrayList<String>(values);
+		}
+	}
+
 }
@@ -12,119 +12,365 @@ package org.eclipse.cdt.managedbuilder.pkgconfig.util;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.cdt.managedbuilder.core.BuildException;
 import org.eclipse.cdt.managedbuilder.core.IConfiguration;
-import org.eclipse.cdt.managedbuilder.core.IManagedBuildInfo;
 import org.eclipse.cdt.managedbuilder.core.IOption;
 import org.eclipse.cdt.managedbuilder.core.ITool;
+import org.eclipse.cdt.managedbuilder.core.IToolChain;
 import org.eclipse.cdt.managedbuilder.core.ManagedBuildManager;
 import org.eclipse.cdt.managedbuilder.pkgconfig.Activator;
-import org.eclipse.core.resources.IProject;
-import org.eclipse.core.runtime.IStatus;
 
 /**
- * Add other flags to compiler's miscellaneous option.
-
+ * Add other flags to compiler's miscellaneous option and linker flags to
+ * linker's flags option. The options are only updated through
+ * {@link #updateFlags} and {@link #updateLinkerFlags} for the build
+ * configuration given by the caller.
  */
 public class PathToToolOption {
 
-	//tool input extensions
-	private static final String[] inputTypes = {"C", "c++", "cc", "cpp", "cxx"};  //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ 
+	/**
+	 * Compilers whose options receive the other flags and the defined
+	 * symbols, each found by the input extensions it compiles.
+	 */
+	public enum Compiler {
+		C("c"), //$NON-NLS-1$
+		CPP("cpp", "cxx", "cc", "c++", "C"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+
+		//tool input extensions
+		private final String[] inputTypes;
+
+		private Compiler(String... inputTypes) {
+			this.inputTypes = inputTypes;
+		}
+	}
 	
 	private final static String OtherFlagsOptionName = "Other flags"; //$NON-NLS-1$
 	
 	private final static String DefinedSymbolsOptionName = "Defined symbols (-D)"; //$NON-NLS-1$
 
+	private final static String LinkerFlagsOptionName = "Linker flags"; //$NON-NLS-1$
+
+	private static final int MAX_RESOLVED = 64;
+
+	//resolved compilers by build configuration and tool-chain
+	private static final Map<String, ResolvedCompiler> resolved = new LinkedHashMap<String, ResolvedCompiler>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, ResolvedCompiler> eldest) {
+			return size() > MAX_RESOLVED;
+		}
+	};
+
 	/**
-	 * Adds new other flag to Compiler's Other flags option.
+	 * Adds and removes other flags and defined symbols in Compiler's options.
+	 * The compiler and its options are resolved once and each option is set
+	 * at most once. Removed flags are removed before the added flags are
+	 * added.
 	 * 
-	 * @param otherFlag Include path to be added to Compiler's Include Option 
+	 * @param cf IConfiguration Build configuration
+	 * @param kind Compiler to update
+	 * @param addedOtherFlags Other flags to add
+	 * @param removedOtherFlags Other flags to remove
+	 * @param addedDefinedSymbols Defined symbols to add
+	 * @param removedDefinedSymbols Defined symbols to remove
+	 * @return boolean Returns true if an option changed.
 	 */
-	public static void addOtherFlag(String otherFlag, IProject proj) {
-		if (proj != null && (otherFlag.length()>0)) {
-			IConfiguration cf = getActiveBuildConf(proj);
-			if (cf != null) {
-				//Add path to compiler's Other flags Option
-				addOtherFlagToToolOption(cf, otherFlag);
+	public static boolean updateFlags(IConfiguration cf, Compiler kind, Collection<String> addedOtherFlags,
+			Collection<String> removedOtherFlags, Collection<String> addedDefinedSymbols,
+			Collection<String> removedDefinedSymbols) {
+		ITool compiler = getCompiler(cf, kind);
+		//If the compiler is found from the given build configuration
+		if (compiler == null) {
+			return false;
+		}
+		boolean changed = false;
+		if (!addedOtherFlags.isEmpty() || !removedOtherFlags.isEmpty()) {
+			IOption otherFlagsOption = getCompilerOption(cf, kind, compiler, OtherFlagsOptionName);
+			if (otherFlagsOption != null) {
+				changed |= updateFlagsOption(cf, compiler, otherFlagsOption, addedOtherFlags, removedOtherFlags);
 			}
 		}
+		if (!addedDefinedSymbols.isEmpty() || !removedDefinedSymbols.isEmpty()) {
+			IOption definedSymbolsOption = getCompilerOption(cf, kind, compiler, DefinedSymbolsOptionName);
+			if (definedSymbolsOption != null) {
+				changed |= updateDefinedSymbolsOption(cf, compiler, definedSymbolsOption, addedDefinedSymbols, removedDefinedSymbols);
+			}
+		}
+		return changed;
 	}
-	
+
+	/**
+	 * Adds and removes flags in Linker's Linker flags option, e.g. -Wl,...
+	 * options. The linker is the tool that creates the build artifact, so
+	 * nothing is changed in a configuration that builds a static library.
+	 * 
+	 * @param cf IConfiguration Build configuration
+	 * @param addedLinkerFlags Linker flags to add
+	 * @param removedLinkerFlags Linker flags to remove
+	 * @return boolean Returns true if the option changed.
+	 */
+	public static boolean updateLinkerFlags(IConfiguration cf, Collection<String> addedLinkerFlags,
+			Collection<String> removedLinkerFlags) {
+		ITool linker = cf.getTargetTool();
+		IOption option = linker != null ? getOptionByName(linker, LinkerFlagsOptionName) : null;
+		if (option == null || (addedLinkerFlags.isEmpty() && removedLinkerFlags.isEmpty())) {
+			return false;
+		}
+		return updateFlagsOption(cf, linker, option, addedLinkerFlags, removedLinkerFlags);
+	}
+
+	/**
+	 * Returns the given other flags that are set in Compiler's Other flags
+	 * Option.
+	 * 
+	 * @param cf IConfiguration Build configuration
+	 * @param kind Compiler to look in
+	 * @param otherFlags Other flags to look for
+	 * @return Set of the flags that are set
+	 */
+	public static Set<String> getSetOtherFlags(IConfiguration cf, Compiler kind, Collection<String> otherFlags) {
+		ITool compiler = getCompiler(cf, kind);
+		IOption option = compiler != null ? getCompilerOption(cf, kind, compiler, OtherFlagsOptionName) : null;
+		return getSetFlags(option, otherFlags);
+	}
+
+	/**
+	 * Returns the given linker flags that are set in Linker's Linker flags
+	 * Option.
+	 * 
+	 * @param cf IConfiguration Build configuration
+	 * @param linkerFlags Linker flags to look for
+	 * @return Set of the flags that are set
+	 */
+	public static Set<String> getSetLinkerFlags(IConfiguration cf, Collection<String> linkerFlags) {
+		ITool linker = cf.getTargetTool();
+		IOption option = linker != null ? getOptionByName(linker, LinkerFlagsOptionName) : null;
+		return getSetFlags(option, linkerFlags);
+	}
+
 	/**
-	 * Adds new defined symbol to Compiler's defined symbols option.
+	 * Returns the given flags that are set in a string option.
 	 * 
-	 * @param definedSymbol Defined Symbols to added 
+	 * @param option Tool Option type, may be null
+	 * @param flags Flags to look for
+	 * @return Set of the flags that are set
 	 */
-	public static void addDefinedSymbol(String definedSymbol, IProject proj) {
-		if (proj != null && (definedSymbol.length()>0)) {
-			IConfiguration cf = getActiveBuildConf(proj);
-			if (cf != null) {
-				//Add defined symbol to compiler's settings
-				addDefinedSymbolToToolOption(cf, definedSymbol);
+	private static Set<String> getSetFlags(IOption option, Collection<String> flags) {
+		Set<String> set = new HashSet<String>();
+		if (option == null || flags.isEmpty()) {
+			return set;
+		}
+		List<String> args = Parser.splitArguments(getStringValue(option));
+		Set<String> argSet = new HashSet<String>(args);
+		for (String flag : flags) {
+			List<String> flagArgs = Parser.splitArguments(flag);
+			if (!flagArgs.isEmpty() && containsArguments(args, argSet, flagArgs)) {
+				set.add(flag);
 			}
 		}
+		return set;
 	}
 
 	/**
-	 * Adds an other flag to compiler's Other flags Option.
+	 * Returns the given defined symbols that are set in Compiler's Defined
+	 * symbols Option.
 	 * 
 	 * @param cf IConfiguration Build configuration
-	 * @param otherFlag Other flag
-	 * @return boolean Returns true if Other flags Option was added successfully to the compiler.
+	 * @param kind Compiler to look in
+	 * @param definedSymbols Defined symbols to look for
+	 * @return Set of the symbols that are set
 	 */
-	private static boolean addOtherFlagToToolOption(IConfiguration cf, String otherFlag) {
-		ITool compiler = getCompiler(cf);
-		//If the compiler is found from the given build configuration
-		if (compiler != null) {
-			//get compiler's Other flags option
-			IOption otherFlagOption = getCompilerOtherFlagsOption(cf);
-			if (otherFlagOption != null) {
-				//add other flag to compiler's Other flags Option type
-				return addOtherFlagToToolOption(cf, compiler, otherFlagOption, otherFlag);
+	public static Set<String> getSetDefinedSymbols(IConfiguration cf, Compiler kind, Collection<String> definedSymbols) {
+		Set<String> set = new HashSet<String>();
+		ITool compiler = getCompiler(cf, kind);
+		IOption option = compiler != null ? getCompilerOption(cf, kind, compiler, DefinedSymbolsOptionName) : null;
+		if (option == null || definedSymbols.isEmpty()) {
+			return set;
+		}
+		set.addAll(Arrays.asList(getDefinedSymbols(option)));
+		set.retainAll(definedSymbols);
+		return set;
+	}
+
+	/**
+	 * Updates a string option such as Compiler's Other flags Option. The option value is split
+	 * into arguments and a flag is added only if its arguments are not there
+	 * yet, so that e.g. -pthread is added even if -pthreads is set. A flag is
+	 * removed by cutting its arguments and the white space before them out of
+	 * the value, so the rest of the value stays exactly as the user wrote it.
+	 * 
+	 * @param cf IConfiguration Build configuration
+	 * @param cfTool ITool Tool
+	 * @param option Tool Option type
+	 * @param newOtherFlags
+	 * @param oldOtherFlags
+	 * @return boolean Returns true if the option was changed.
+	 */
+	private static boolean updateFlagsOption(IConfiguration cf, ITool cfTool, IOption option,
+			Collection<String> newOtherFlags, Collection<String> oldOtherFlags) {
+		String flags = getStringValue(option);
+		String newValue = removeFlags(flags, oldOtherFlags);
+		List<String> args = Parser.splitArguments(newValue);
+		Set<String> argSet = new HashSet<String>(args);
+		StringBuilder newFlags = new StringBuilder(newValue);
+		for (String newOtherFlag : newOtherFlags) {
+			List<String> newArgs = Parser.splitArguments(newOtherFlag);
+			if (newArgs.isEmpty() || containsArguments(args, argSet, newArgs)) {
+				continue;
+			}
+			//append the new flag to existing flags
+			if (newFlags.length() > 0) {
+				newFlags.append(' ');
 			}
+			newFlags.append(newOtherFlag);
+			args.addAll(newArgs);
+			argSet.addAll(newArgs);
+		}
+		if (newFlags.toString().equals(flags)) {
 			return false;
-		} 
-		//adding the other flag failed
-		return false;
+		}
+
+		//set the flags to the option at once.
+		ManagedBuildManager.setOption(cf, cfTool, option, newFlags.toString());
+		return true;
 	}
-	
-	
+
 	/**
-	 * Adds a Defined symbol to compiler's Settings.
+	 * Removes the first occurrence of the arguments of each flag from a
+	 * string option value. Only the characters of the removed arguments and
+	 * the white space before them are cut, or the white space after them if
+	 * they start the value; the rest of the value is kept as is.
 	 * 
-	 * @param cf IConfiguration Build configuration
-	 * @param definedSymbol Defined symbol to be added 
-	 * @return boolean Returns true if Defined symbols Option was added successfully to the compiler.
+	 * @param value Option value
+	 * @param removedFlags Flags to remove
+	 * @return String Value without the flags
 	 */
-	private static boolean addDefinedSymbolToToolOption(IConfiguration cf, String definedSymbol) {
-		ITool compiler = getCompiler(cf);
-		//If the compiler is found from the given build configuration
-		if (compiler != null) {
-			//get compiler's Other flags option
-			IOption definedSymbolsOption = getCompilerDefinedSymbolsOption(cf);
-			if (definedSymbolsOption != null) {
-				//add other flag to compiler's Other flags Option type
-				return addDefinedSymbolToToolOption(cf, compiler, definedSymbolsOption, definedSymbol);
+	static String removeFlags(String value, Collection<String> removedFlags) {
+		List<Parser.Argument> spans = Parser.splitArgumentSpans(value);
+		List<String> args = new ArrayList<String>(spans.size());
+		for (Parser.Argument span : spans) {
+			args.add(span.value);
+		}
+		// characters to cut
+		boolean[] cut = new boolean[value.length()];
+		boolean removed = false;
+		for (String removedFlag : removedFlags) {
+			List<String> removedArgs = Parser.splitArguments(removedFlag);
+			int index = removedArgs.isEmpty() ? -1 : Collections.indexOfSubList(args, removedArgs);
+			if (index < 0) {
+				continue;
+			}
+			int first = spans.get(index).start;
+			int last = spans.get(index + removedArgs.size() - 1).end;
+			Arrays.fill(cut, first, last, true);
+			args.subList(index, index + removedArgs.size()).clear();
+			spans.subList(index, index + removedArgs.size()).clear();
+			removed = true;
+		}
+		if (!removed) {
+			return value;
+		}
+		StringBuilder sb = new StringBuilder(value.length());
+		int i = 0;
+		while (i < value.length()) {
+			if (!cut[i]) {
+				sb.append(value.charAt(i++));
+				continue;
 			}
+			int end = i;
+			while (end < value.length() && cut[end]) {
+				end++;
+			}
+			//drop the separating white space with the removed arguments
+			int kept = sb.length();
+			while (kept > 0 && Character.isWhitespace(sb.charAt(kept - 1))) {
+				kept--;
+			}
+			if (kept < sb.length() && kept > 0) {
+				sb.setLength(kept);
+			} else {
+				while (end < value.length() && !cut[end] && Character.isWhitespace(value.charAt(end))) {
+					end++;
+				}
+			}
+			i = end;
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Is the sequence of arguments contained in the arguments.
+	 * 
+	 * @param args Arguments
+	 * @param argSet Arguments as a set for a quick check
+	 * @param sequence Arguments to look for
+	 * @return boolean
+	 */
+	private static boolean containsArguments(List<String> args, Set<String> argSet, List<String> sequence) {
+		if (!argSet.containsAll(sequence)) {
 			return false;
-		} 
-		//adding the other flag failed
-		return false;
+		}
+		if (sequence.size() == 1) {
+			return true;
+		}
+		return Collections.indexOfSubList(args, sequence) >= 0;
 	}
 
 	/**
-	 * Adds new other flag to the Compiler's Other flags Option.
+	 * Updates the Compiler's Defined symbols Option.
 	 * 
 	 * @param cf IConfiguration Build configuration
 	 * @param cfTool ITool Tool
 	 * @param option Tool Option type
-	 * @param newOtherFlag
-	 * @since 8.0
+	 * @param newDefinedSymbols
+	 * @param oldDefinedSymbols
+	 * @return boolean Returns true if the option was changed.
+	 */
+	private static boolean updateDefinedSymbolsOption(IConfiguration cf, ITool cfTool, IOption option,
+			Collection<String> newDefinedSymbols, Collection<String> oldDefinedSymbols) {
+		String[] flags = getDefinedSymbols(option);
+		Set<String> removed = new HashSet<String>(oldDefinedSymbols);
+		Set<String> oldFlags = new HashSet<String>();
+		List<String> newFlags = new ArrayList<String>(flags.length + newDefinedSymbols.size());
+		for (String flag : flags) {
+			if (!removed.contains(flag)) {
+				newFlags.add(flag);
+				oldFlags.add(flag);
+			}
+		}
+		boolean changed = newFlags.size() != flags.length;
+		for (String newDefinedSymbol : newDefinedSymbols) {
+			//append the new flag to existing flags
+			if (newDefinedSymbol.length() > 0 && oldFlags.add(newDefinedSymbol)) {
+				newFlags.add(newDefinedSymbol);
+				changed = true;
+			}
+		}
+		if (!changed) {
+			return false;
+		}
+		//set the symbols to compiler's defined symbols option at once.
+		ManagedBuildManager.setOption(cf, cfTool, option, newFlags.toArray(new String[newFlags.size()]));
+		return true;
+	}
+
+	/**
+	 * Returns the value of a string option.
+	 * 
+	 * @param option Tool Option type
+	 * @return String Value, empty if not available
 	 */
-	private static boolean addOtherFlagToToolOption(IConfiguration cf, ITool cfTool, IOption option, String newOtherFlag) {
+	private static String getStringValue(IOption option) {
 		String flags = null;
 		try {
 			flags = option.getStringValue();
@@ -137,38 +383,16 @@ public class PathToToolOption {
 		if (flags == null) {
 			flags = ""; //$NON-NLS-1$
 		}
-
-		if (!flags.contains(newOtherFlag)) {
-			//append the new flag to existing flags
-			flags = flags+" "+newOtherFlag; //$NON-NLS-1$
-
-			//add a new other flag to compiler's other flags option.
-			IOption opt = ManagedBuildManager.setOption(cf, cfTool, option, flags);
-			try {
-				return opt.getStringValue().contains(newOtherFlag);
-			}catch(BuildException e) {
-				Activator
-				.getDefault()
-				.log(e,
-						String.format("Unable to update %1$s, flags=%2$s, value=%3$s not added", option.getName(),flags, newOtherFlag)); //$NON-NLS-1$
-				return false;
-			}
-			
-		} 
-		return flags.contains(newOtherFlag);
+		return flags;
 	}
-	
-	
+
 	/**
-	 * Adds new defs flag to the Compiler's Other flags Option.
+	 * Returns the value of a defined symbols option.
 	 * 
-	 * @param cf IConfiguration Build configuration
-	 * @param cfTool ITool Tool
 	 * @param option Tool Option type
-	 * @param newDefinedSymbol
-	 * @since 8.0
+	 * @return String[] Defined symbols, empty if not available
 	 */
-	private static boolean addDefinedSymbolToToolOption(IConfiguration cf, ITool cfTool, IOption option, String newDefinedSymbol) {
+	private static String[] getDefinedSymbols(IOption option) {
 		String[] flags = null;
 		try {
 			flags = option.getDefinedSymbols();
@@ -181,44 +405,107 @@ public class PathToToolOption {
 		if (flags == null) {
 			flags = new String[0]; 
 		}
-
-		List<String> oldFlags = Arrays.asList(flags);
-		if (!oldFlags.contains(newDefinedSymbol)) {//append the new flag to existing flags
-			ArrayList<String> newFlags = new ArrayList<String>(flags.length + 1);
-			Collections.addAll(newFlags, flags);
-			if(newFlags.add(newDefinedSymbol)) {
-				//add a new other flag to compiler's other flags option.
-				IOption opt = ManagedBuildManager.setOption(cf, cfTool, option, newFlags.toArray(new String[newFlags.size()]));
-				try {
-					return Arrays.asList(opt.getDefinedSymbols()).contains(newDefinedSymbol);
-				}catch(BuildException e) {
-					Activator
-					.getDefault()
-					.log(e,
-							String.format("Unable to update %1$s, flags=%2$s, value=%3$s not added", option.getName(),flags, newDefinedSymbol)); //$NON-NLS-1$
-					return false;
-				}
-			}
-		} 
-		return oldFlags.contains(newDefinedSymbol);
+		return flags;
 	}
 
 	/**
-	 * Return compiler according to the input type.
+	 * Return compiler according to the input type. The id of the compiler is
+	 * cached per build configuration and tool-chain, so the input types are
+	 * probed only when the configuration is seen for the first time or its
+	 * tool-chain has changed. A tool-chain may use the same tool for C and
+	 * C++.
 	 * @param cf IConfiguration Build configuration
-	 * @return ITool Compiler
+	 * @param kind Compiler to look for
+	 * @return ITool Compiler or null
 	 */
-	private static ITool getCompiler(IConfiguration cf) {
+	public static ITool getCompiler(IConfiguration cf, Compiler kind) {
+		String key = getResolvedKey(cf, kind);
+		ResolvedCompiler compiler;
+		synchronized (resolved) {
+			compiler = resolved.get(key);
+		}
+		if (compiler != null) {
+			ITool tool = cf.getTool(compiler.toolId);
+			if (tool != null) {
+				return tool;
+			}
+		}
 		//get compiler according to the input type
-		for(int i=0; i<inputTypes.length; i++) {
-			ITool tool = getIToolByInputType(cf, inputTypes[i]);
+		for(int i=0; i<kind.inputTypes.length; i++) {
+			ITool tool = getIToolByInputType(cf, kind.inputTypes[i]);
 			if (tool != null) {
+				synchronized (resolved) {
+					resolved.put(key, new ResolvedCompiler(tool.getId()));
+				}
 				return tool;
 			}
 		}
 		return null;
 	}
 
+	/**
+	 * Returns compiler's Option type by name. The id of the option is cached
+	 * with the compiler, see {@link #getCompiler(IConfiguration, Compiler)}.
+	 * 
+	 * @param cf IConfiguration Build configuration
+	 * @param kind Kind of the compiler
+	 * @param compiler ITool Compiler of the build configuration
+	 * @param name Option's name
+	 * @return IOption Tool option type or null
+	 */
+	private static IOption getCompilerOption(IConfiguration cf, Compiler kind, ITool compiler, String name) {
+		ResolvedCompiler resolvedCompiler;
+		synchronized (resolved) {
+			resolvedCompiler = resolved.get(getResolvedKey(cf, kind));
+		}
+		if (resolvedCompiler == null || !resolvedCompiler.toolId.equals(compiler.getId())) {
+			return getOptionByName(compiler, name);
+		}
+		String optionId = resolvedCompiler.optionIds.get(name);
+		if (optionId != null) {
+			//the option that overrides the cached one in this configuration
+			IOption option = compiler.getOptionBySuperClassId(optionId);
+			if (option != null) {
+				return option;
+			}
+		}
+		IOption option = getOptionByName(compiler, name);
+		if (option != null) {
+			//cache the id of the extension option which does not change when the option is set
+			IOption base = option;
+			while (base.getSuperClass() != null) {
+				base = base.getSuperClass();
+			}
+			resolvedCompiler.optionIds.put(name, base.getId());
+		}
+		return option;
+	}
+
+	/**
+	 * Returns the key of the cached compiler of a build configuration.
+	 * 
+	 * @param cf IConfiguration Build configuration
+	 * @param kind Kind of the compiler
+	 * @return String Configuration id, tool-chain id and kind
+	 */
+	private static String getResolvedKey(IConfiguration cf, Compiler kind) {
+		IToolChain toolChain = cf.getToolChain();
+		return cf.getId() + '|' + (toolChain != null ? toolChain.getId() : "") + '|' + kind.name(); //$NON-NLS-1$
+	}
+
+	/**
+	 * Compiler and option ids resolved for a build configuration.
+	 */
+	private static class ResolvedCompiler {
+		final String toolId;
+		// option name -> option id
+		final Map<String, String> optionIds = new ConcurrentHashMap<String, String>();
+
+		ResolvedCompiler(String toolId) {
+			this.toolId = toolId;
+		}
+	}
+
 	/**
 	 * Returns ITool associated based on the input extension.
 	 * 
@@ -232,32 +519,18 @@ public class PathToToolOption {
 	}
 
 	/**
-	 * Returns compiler's Other flags Option type.
+	 * Returns Tool's Option type by name.
 	 * 
-	 * @param cf IConfiguration Project build configuration
-	 * @return IOption Tool option type
-	 */
-	private static IOption getCompilerOtherFlagsOption(IConfiguration cf) {
-		//get ITool associated with the input extension
-		ITool cfTool = getCompiler(cf);
-		//get option id for other flags
-		String otherFlagsOptionId = getOptionIdByName(cfTool, OtherFlagsOptionName);
-		return getToolOptionType(cfTool, otherFlagsOptionId);
-	}
-	
-	
-	/**
-	 * Returns compiler's Defined symbols Option type.
-	 * 
-	 * @param cf IConfiguration Project build configuration
-	 * @return IOption Tool option type
+	 * @param cfTool ITool Tool
+	 * @param name Option's name
+	 * @return IOption Tool option type or null
 	 */
-	private static IOption getCompilerDefinedSymbolsOption(IConfiguration cf) {
-		//get ITool associated with the input extension
-		ITool cfTool = getCompiler(cf);
-		//get option id for other flags
-		String definedSymbolsOptionId = getOptionIdByName(cfTool, DefinedSymbolsOptionName);
-		return getToolOptionType(cfTool,definedSymbolsOptionId);
+	private static IOption getOptionByName(ITool cfTool, String name) {
+		String optionId = getOptionIdByName(cfTool, name);
+		if (optionId == null) {
+			return null;
+		}
+		return getToolOptionType(cfTool, optionId);
 	}
 
 	/**
@@ -322,29 +595,4 @@ public class PathToToolOption {
 		return newArray;
 	}
 
-	/**
-	 * Get the active build configuration.
-	 * 
-	 * @param proj IProject
-	 * @return IConfiguration
-	 */
-	public static IConfiguration getActiveBuildConf(IProject proj) {
-		IConfiguration conf = null;
-		IManagedBuildInfo info = null;
-		//try to get Managed build info
-		try {
-			info = ManagedBuildManager.getBuildInfo(proj); //null if doesn't exists
-		} catch (Exception e) { //if not a managed build project
-			Activator.getDefault().log(IStatus.INFO, e, "Not a managed build project."); //$NON-NLS-1$
-			return conf;
-		}
-		//info can be null for projects without build info. For example, when creating a project
-		//from Import -> C/C++ Executable
-		if(info == null) {
-			return conf;
-		}
-		conf = info.getDefaultConfiguration();
-		return conf;
-	}
-	
 }
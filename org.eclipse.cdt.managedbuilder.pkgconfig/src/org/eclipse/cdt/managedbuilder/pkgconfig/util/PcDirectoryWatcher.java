@@ -0,0 +1,219 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012 Petri Tuononen and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Petri Tuononen - Initial implementation
+ *******************************************************************************/
+package org.eclipse.cdt.managedbuilder.pkgconfig.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.eclipse.cdt.managedbuilder.pkgconfig.Activator;
+import org.eclipse.core.runtime.IStatus;
+
+/**
+ * Watches the .pc file search directories and notifies the registered
+ * listeners when a .pc file is created, modified or deleted.
+ *
+ * The watcher runs in a single daemon thread which is started when the
+ * first directory is registered.
+ */
+public class PcDirectoryWatcher {
+
+	/**
+	 * Listener notified about changes in a watched directory.
+	 */
+	public interface IPcDirectoryListener {
+
+		/**
+		 * A .pc file in the given directory was created, modified or
+		 * deleted.
+		 *
+		 * @param dir Directory
+		 */
+		void pcDirectoryChanged(File dir);
+	}
+
+	private static PcDirectoryWatcher instance;
+
+	private final Map<WatchKey, File> keys = new ConcurrentHashMap<WatchKey, File>();
+	private final Map<File, WatchKey> dirs = new ConcurrentHashMap<File, WatchKey>();
+	private final List<IPcDirectoryListener> listeners = new CopyOnWriteArrayList<IPcDirectoryListener>();
+	private WatchService watchService;
+	private Thread thread;
+	private boolean failed = false;
+
+	/**
+	 * Get the shared watcher.
+	 *
+	 * @return PcDirectoryWatcher
+	 */
+	public static synchronized PcDirectoryWatcher getDefault() {
+		if (instance == null) {
+			instance = new PcDirectoryWatcher();
+		}
+		return instance;
+	}
+
+	/**
+	 * Stop watching. Called when the plug-in is stopped.
+	 */
+	public static synchronized void shutdown() {
+		if (instance != null) {
+			instance.close();
+			instance = null;
+		}
+	}
+
+	/**
+	 * Add a listener.
+	 *
+	 * @param listener
+	 */
+	public void addListener(IPcDirectoryListener listener) {
+		this.listeners.add(listener);
+	}
+
+	/**
+	 * Remove a listener.
+	 *
+	 * @param listener
+	 */
+	public void removeListener(IPcDirectoryListener listener) {
+		this.listeners.remove(listener);
+	}
+
+	/**
+	 * Start watching the given directories unless they are watched already.
+	 *
+	 * @param directories
+	 * @return true if all the directories are watched, false if changes in
+	 *         them would go unnoticed
+	 */
+	public synchronized boolean watch(List<File> directories) {
+		if (this.failed) {
+			return false;
+		}
+		try {
+			for (File dir : directories) {
+				if (this.dirs.containsKey(dir)) {
+					continue;
+				}
+				if (this.watchService == null) {
+					start();
+				}
+				WatchKey key = dir.toPath().register(this.watchService,
+						StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_DELETE,
+						StandardWatchEventKinds.ENTRY_MODIFY);
+				this.keys.put(key, dir);
+				this.dirs.put(dir, key);
+			}
+			return true;
+		} catch (IOException e) {
+			Activator.getDefault().log(IStatus.WARNING, e,
+					"Watching .pc file directories failed."); //$NON-NLS-1$
+		} catch (UnsupportedOperationException e) {
+			Activator.getDefault().log(IStatus.WARNING, e,
+					"Watching .pc file directories is not supported."); //$NON-NLS-1$
+			this.failed = true;
+		}
+		return false;
+	}
+
+	/**
+	 * Create the watch service and start the thread that polls it.
+	 *
+	 * @throws IOException
+	 */
+	private void start() throws IOException {
+		this.watchService = FileSystems.getDefault().newWatchService();
+		final WatchService service = this.watchService;
+		this.thread = new Thread("Pkg-config .pc directory watcher") { //$NON-NLS-1$
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						WatchKey key = service.take();
+						processEvents(key);
+					}
+				} catch (InterruptedException e) {
+					// stopped
+				} catch (ClosedWatchServiceException e) {
+					// stopped
+				}
+			}
+		};
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Notify the listeners if the events of the key concern .pc files.
+	 *
+	 * @param key
+	 */
+	private void processEvents(WatchKey key) {
+		File dir = this.keys.get(key);
+		boolean changed = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				changed = true;
+			} else if (event.context() instanceof Path
+					&& event.context().toString().endsWith(PcFile.EXTENSION)) {
+				changed = true;
+			}
+		}
+		if (!key.reset()) {
+			// the directory is no longer accessible
+			this.keys.remove(key);
+			if (dir != null) {
+				this.dirs.remove(dir);
+			}
+			changed = true;
+		}
+		if (changed && dir != null) {
+			for (IPcDirectoryListener listener : this.listeners) {
+				listener.pcDirectoryChanged(dir);
+			}
+		}
+	}
+
+	/**
+	 * Close the watch service and stop the thread.
+	 */
+	private synchronized void close() {
+		if (this.watchService != null) {
+			try {
+				this.watchService.close();
+			} catch (IOException e) {
+				// ignore
+			}
+			this.watchService = null;
+		}
+		if (this.thread != null) {
+			this.thread.interrupt();
+			this.thread = null;
+		}
+		this.keys.clear();
+		this.dirs.clear();
+		this.listeners.clear();
+	}
+
+}
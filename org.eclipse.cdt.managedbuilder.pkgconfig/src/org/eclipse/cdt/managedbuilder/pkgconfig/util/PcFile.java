@@ -0,0 +1,445 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012 Petri Tuononen and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Petri Tuononen - Initial implementation
+ *******************************************************************************/
+package org.eclipse.cdt.managedbuilder.pkgconfig.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A parsed pkg-config metadata (.pc) file.
+ *
+ * Variables are expanded while the file is read, so the keyword values
+ * returned by this class are final.
+ */
+public class PcFile {
+
+	public static final String EXTENSION = ".pc"; //$NON-NLS-1$
+
+	private static final String PCFILEDIR = "pcfiledir"; //$NON-NLS-1$
+	private static final String PREFIX = "prefix"; //$NON-NLS-1$
+	private static final String VERSION = "Version"; //$NON-NLS-1$
+
+	// package name, optionally followed by a comparison and a version
+	private static final Pattern REQUIREMENT = Pattern
+			.compile("([^\\s,<>=!]+)\\s*(?:([<>=!]+)\\s*([^\\s,]+))?"); //$NON-NLS-1$
+
+	private final File file;
+	private final Map<String, String> variables = new HashMap<String, String>();
+	private final Map<String, String> keywords = new HashMap<String, String>();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param file .pc file
+	 */
+	private PcFile(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Parse the given .pc file.
+	 *
+	 * @param file .pc file
+	 * @return PcFile
+	 * @throws IOException if the file cannot be read or a variable is undefined
+	 */
+	public static PcFile parse(File file) throws IOException {
+		PcFile pc = new PcFile(file);
+		String dir = file.getAbsoluteFile().getParent();
+		pc.variables.put(PCFILEDIR, dir);
+		BufferedReader input = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), "UTF-8")); //$NON-NLS-1$
+		try {
+			StringBuilder logicalLine = new StringBuilder();
+			String line;
+			while ((line = input.readLine()) != null) {
+				// a trailing backslash continues the line
+				if (line.endsWith("\\") && !line.endsWith("\\\\")) { //$NON-NLS-1$ //$NON-NLS-2$
+					logicalLine.append(line, 0, line.length() - 1);
+					continue;
+				}
+				logicalLine.append(line);
+				pc.parseLine(logicalLine.toString());
+				logicalLine.setLength(0);
+			}
+			if (logicalLine.length() > 0) {
+				pc.parseLine(logicalLine.toString());
+			}
+		} finally {
+			input.close();
+		}
+		if (OSDetector.isWindows()) {
+			pc.redefinePrefix(dir);
+		}
+		return pc;
+	}
+
+	/**
+	 * Parse a line which is either a variable definition (name=value) or a
+	 * keyword (Name: value).
+	 *
+	 * @param line
+	 * @throws IOException
+	 */
+	private void parseLine(String line) throws IOException {
+		line = stripComment(line).trim();
+		int i = 0;
+		while (i < line.length() && isTagChar(line.charAt(i))) {
+			i++;
+		}
+		if (i == 0) {
+			return;
+		}
+		String tag = line.substring(0, i);
+		while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+			i++;
+		}
+		if (i == line.length()) {
+			return;
+		}
+		char op = line.charAt(i);
+		String value = line.substring(i + 1).trim();
+		if (op == '=') {
+			// the first definition of a variable wins
+			if (!this.variables.containsKey(tag)) {
+				this.variables.put(tag, expand(value));
+			}
+		} else if (op == ':') {
+			this.keywords.put(tag, expand(value));
+		}
+	}
+
+	/**
+	 * Remove a comment which starts from an unescaped # character.
+	 *
+	 * @param line
+	 * @return Line without the comment
+	 */
+	private static String stripComment(String line) {
+		int hash = line.indexOf('#');
+		if (hash < 0) {
+			return line;
+		}
+		StringBuilder sb = new StringBuilder(line.length());
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '\\' && i + 1 < line.length() && line.charAt(i + 1) == '#') {
+				sb.append('#');
+				i++;
+			} else if (c == '#') {
+				break;
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static boolean isTagChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '.';
+	}
+
+	/**
+	 * Expand ${variable} references. $$ is an escaped $.
+	 *
+	 * @param value
+	 * @return Expanded value
+	 * @throws IOException if a variable is not defined
+	 */
+	private String expand(String value) throws IOException {
+		if (value.indexOf('$') < 0) {
+			return value;
+		}
+		StringBuilder sb = new StringBuilder(value.length());
+		int i = 0;
+		while (i < value.length()) {
+			char c = value.charAt(i);
+			if (c == '$' && i + 1 < value.length() && value.charAt(i + 1) == '$') {
+				sb.append('$');
+				i += 2;
+			} else if (c == '$' && i + 1 < value.length()
+					&& value.charAt(i + 1) == '{') {
+				int end = value.indexOf('}', i + 2);
+				if (end < 0) {
+					sb.append(value, i, value.length());
+					break;
+				}
+				String name = value.substring(i + 2, end);
+				String var = this.variables.get(name);
+				if (var == null) {
+					throw new IOException(String.format(
+							"Variable '%1$s' not defined in %2$s", name, this.file)); //$NON-NLS-1$
+				}
+				sb.append(var);
+				i = end + 1;
+			} else {
+				sb.append(c);
+				i++;
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Relocate the package the same way pkg-config does on Windows where the
+	 * prefix variable is replaced when the file is located in
+	 * &lt;prefix&gt;/lib/pkgconfig or &lt;prefix&gt;/share/pkgconfig.
+	 *
+	 * @param dir Directory of the .pc file
+	 * @throws IOException
+	 */
+	private void redefinePrefix(String dir) throws IOException {
+		File pkgconfigDir = new File(dir);
+		File parent = pkgconfigDir.getParentFile();
+		if (parent == null || parent.getParentFile() == null
+				|| !pkgconfigDir.getName().equalsIgnoreCase("pkgconfig")) { //$NON-NLS-1$
+			return;
+		}
+		String oldPrefix = this.variables.get(PREFIX);
+		if (oldPrefix == null || oldPrefix.isEmpty()) {
+			return;
+		}
+		String newPrefix = parent.getParentFile().getPath().replace('\\', '/');
+		for (Map.Entry<String, String> keyword : this.keywords.entrySet()) {
+			keyword.setValue(keyword.getValue().replace(oldPrefix, newPrefix));
+		}
+	}
+
+	/**
+	 * Get the package name used on the command line, i.e. the file name
+	 * without the .pc extension.
+	 *
+	 * @return Package name
+	 */
+	public String getPackage() {
+		String name = this.file.getName();
+		return name.substring(0, name.length() - EXTENSION.length());
+	}
+
+	/**
+	 * Get the file this package was read from.
+	 *
+	 * @return .pc file
+	 */
+	public File getFile() {
+		return this.file;
+	}
+
+	/**
+	 * Get the value of a keyword.
+	 *
+	 * @param keyword Keyword such as Cflags or Libs
+	 * @return Value or an empty String if the keyword is not set
+	 */
+	public String getKeyword(String keyword) {
+		String value = this.keywords.get(keyword);
+		return value != null ? value : ""; //$NON-NLS-1$
+	}
+
+	/**
+	 * Get the value of a variable.
+	 *
+	 * @param name Variable name
+	 * @return Value or null if not defined
+	 */
+	public String getVariable(String name) {
+		return this.variables.get(name);
+	}
+
+	/**
+	 * Get the packages listed by the given keyword, i.e. Requires or
+	 * Requires.private.
+	 *
+	 * @param keyword
+	 * @return List of requirements
+	 */
+	public List<Requirement> getRequirements(String keyword) {
+		return parseRequirements(getKeyword(keyword));
+	}
+
+	/**
+	 * Parse a package list such as "glib-2.0 &gt;= 2.30, gio-2.0".
+	 *
+	 * @param list
+	 * @return List of requirements
+	 */
+	static List<Requirement> parseRequirements(String list) {
+		List<Requirement> requirements = new ArrayList<Requirement>();
+		Matcher m = REQUIREMENT.matcher(list);
+		while (m.find()) {
+			requirements.add(new Requirement(m.group(1), m.group(2), m.group(3)));
+		}
+		return requirements;
+	}
+
+	/**
+	 * Compare two versions the way pkg-config does. Numeric and alphabetic
+	 * segments are compared one by one, numeric ones by their value, and
+	 * the characters separating the segments are ignored.
+	 *
+	 * @param a
+	 * @param b
+	 * @return Negative, zero or positive as a is older than, equal to or
+	 *         newer than b
+	 */
+	static int compareVersions(String a, String b) {
+		if (a.equals(b)) {
+			return 0;
+		}
+		int i = 0;
+		int j = 0;
+		while (i < a.length() && j < b.length()) {
+			while (i < a.length() && !isAlnum(a.charAt(i))) {
+				i++;
+			}
+			while (j < b.length() && !isAlnum(b.charAt(j))) {
+				j++;
+			}
+			if (i == a.length() || j == b.length()) {
+				break;
+			}
+			boolean numeric = isDigit(a.charAt(i));
+			int startA = i;
+			int startB = j;
+			i = segmentEnd(a, i, numeric);
+			j = segmentEnd(b, j, numeric);
+			if (j == startB) {
+				// a numeric segment is newer than an alphabetic one
+				return numeric ? 1 : -1;
+			}
+			String segA = a.substring(startA, i);
+			String segB = b.substring(startB, j);
+			if (numeric) {
+				segA = stripLeadingZeros(segA);
+				segB = stripLeadingZeros(segB);
+				if (segA.length() != segB.length()) {
+					return segA.length() > segB.length() ? 1 : -1;
+				}
+			}
+			int rc = segA.compareTo(segB);
+			if (rc != 0) {
+				return rc < 0 ? -1 : 1;
+			}
+		}
+		if (i == a.length() && j == b.length()) {
+			return 0;
+		}
+		// the version with characters left over is newer
+		return i == a.length() ? -1 : 1;
+	}
+
+	private static int segmentEnd(String version, int start, boolean numeric) {
+		int end = start;
+		while (end < version.length() && (numeric ? isDigit(version.charAt(end))
+				: isAlpha(version.charAt(end)))) {
+			end++;
+		}
+		return end;
+	}
+
+	private static String stripLeadingZeros(String segment) {
+		int i = 0;
+		while (i < segment.length() - 1 && segment.charAt(i) == '0') {
+			i++;
+		}
+		return segment.substring(i);
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isAlpha(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	private static boolean isAlnum(char c) {
+		return isDigit(c) || isAlpha(c);
+	}
+
+	/**
+	 * A package required by another package or by a query, optionally with
+	 * a version constraint.
+	 */
+	public static class Requirement {
+
+		private final String pkg;
+		private final String comparison;
+		private final String version;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param pkg Package name
+		 * @param comparison Comparison operator or null
+		 * @param version Required version or null
+		 */
+		Requirement(String pkg, String comparison, String version) {
+			this.pkg = pkg;
+			this.comparison = comparison;
+			this.version = version;
+		}
+
+		/**
+		 * Get the name of the required package.
+		 *
+		 * @return Package name
+		 */
+		public String getPackage() {
+			return this.pkg;
+		}
+
+		/**
+		 * Does the given package satisfy the version constraint.
+		 *
+		 * @param pc Found package
+		 * @return True if there is no constraint or the version of the
+		 *         package satisfies it
+		 */
+		public boolean isSatisfiedBy(PcFile pc) {
+			if (this.comparison == null) {
+				return true;
+			}
+			int rc = compareVersions(pc.getKeyword(VERSION), this.version);
+			if ("=".equals(this.comparison)) { //$NON-NLS-1$
+				return rc == 0;
+			} else if ("!=".equals(this.comparison)) { //$NON-NLS-1$
+				return rc != 0;
+			} else if ("<".equals(this.comparison)) { //$NON-NLS-1$
+				return rc < 0;
+			} else if ("<=".equals(this.comparison)) { //$NON-NLS-1$
+				return rc <= 0;
+			} else if (">".equals(this.comparison)) { //$NON-NLS-1$
+				return rc > 0;
+			} else if (">=".equals(this.comparison)) { //$NON-NLS-1$
+				return rc >= 0;
+			}
+			// pkg-config rejects unknown operators
+			return false;
+		}
+
+		@Override
+		public String toString() {
+			return this.comparison == null ? this.pkg : this.pkg + ' '
+					+ this.comparison + ' ' + this.version;
+		}
+	}
+
+}
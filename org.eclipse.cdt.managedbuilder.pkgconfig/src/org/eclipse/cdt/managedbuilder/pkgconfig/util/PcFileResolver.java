@@ -0,0 +1,535 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012 Petri Tuononen and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Petri Tuononen - Initial implementation
+ *******************************************************************************/
+package org.eclipse.cdt.managedbuilder.pkgconfig.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.cdt.managedbuilder.pkgconfig.Activator;
+import org.eclipse.core.runtime.IStatus;
+
+/**
+ * Resolves pkg-config queries inside the JVM by reading the .pc files from
+ * the search directories of a pkg-config environment. Variables, Requires,
+ * Requires.private, version constraints and the stripping of the system
+ * directories are handled like pkg-config handles them.
+ *
+ * Duplicate flags are merged into one: libraries (-l) keep their last
+ * occurrence so that the link order stays valid, other flags their first.
+ * pkg-config versions that merge only consecutive duplicates may print
+ * more flags for packages that share requirements.
+ *
+ * Queries that cannot be answered, i.e. unsupported options, packages that
+ * are not found, unsatisfied version constraints or a PKG_CONFIG_SYSROOT_DIR
+ * being set, return null so that the caller can fall back to the pkg-config
+ * executable.
+ */
+public class PcFileResolver {
+
+	// Supported options
+	private static final String LIST_ALL = "--list-all"; //$NON-NLS-1$
+	private static final String CFLAGS = "--cflags"; //$NON-NLS-1$
+	private static final String CFLAGS_ONLY_I = "--cflags-only-I"; //$NON-NLS-1$
+	private static final String CFLAGS_ONLY_OTHER = "--cflags-only-other"; //$NON-NLS-1$
+	private static final String LIBS = "--libs"; //$NON-NLS-1$
+	private static final String LIBS_ONLY_L = "--libs-only-L"; //$NON-NLS-1$
+	private static final String LIBS_ONLY_LIB = "--libs-only-l"; //$NON-NLS-1$
+	private static final String LIBS_ONLY_OTHER = "--libs-only-other"; //$NON-NLS-1$
+	private static final String STATIC = "--static"; //$NON-NLS-1$
+
+	// Keywords of a .pc file
+	private static final String NAME = "Name"; //$NON-NLS-1$
+	private static final String DESCRIPTION = "Description"; //$NON-NLS-1$
+	private static final String REQUIRES = "Requires"; //$NON-NLS-1$
+	private static final String REQUIRES_PRIVATE = "Requires.private"; //$NON-NLS-1$
+	private static final String KW_CFLAGS = "Cflags"; //$NON-NLS-1$
+	private static final String KW_LIBS = "Libs"; //$NON-NLS-1$
+	private static final String KW_LIBS_PRIVATE = "Libs.private"; //$NON-NLS-1$
+
+	// Flag kinds
+	private static final int CFLAGS_I = 1;
+	private static final int CFLAGS_OTHER = 1 << 1;
+	private static final int LIBS_L = 1 << 2;
+	private static final int LIBS_LIB = 1 << 3;
+	private static final int LIBS_OTHER = 1 << 4;
+	private static final int ANY_CFLAGS = CFLAGS_I | CFLAGS_OTHER;
+	private static final int ANY_LIBS = LIBS_L | LIBS_LIB | LIBS_OTHER;
+
+	// Width of the package name column of --list-all
+	private static final int LIST_ALL_NAME_WIDTH = 30;
+
+	private static final String DEFAULT_SYSTEM_INCLUDE_PATH = "/usr/include"; //$NON-NLS-1$
+	private static final String DEFAULT_SYSTEM_LIBRARY_PATH = "/usr/lib:/lib:/usr/lib64:/lib64"; //$NON-NLS-1$
+	private static final String ENV_PKG_CONFIG_SYSROOT_DIR = "PKG_CONFIG_SYSROOT_DIR"; //$NON-NLS-1$
+
+	private final PkgConfigEnvironment env;
+	private final Map<String, PcFile> loaded = new HashMap<String, PcFile>();
+	private final Set<String> systemIncludePaths;
+	private final Set<String> systemLibraryPaths;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param env pkg-config environment whose search directories are used
+	 */
+	public PcFileResolver(PkgConfigEnvironment env) {
+		this.env = env;
+		this.systemIncludePaths = systemPaths("PKG_CONFIG_ALLOW_SYSTEM_CFLAGS", //$NON-NLS-1$
+				"PKG_CONFIG_SYSTEM_INCLUDE_PATH", DEFAULT_SYSTEM_INCLUDE_PATH); //$NON-NLS-1$
+		this.systemLibraryPaths = systemPaths("PKG_CONFIG_ALLOW_SYSTEM_LIBS", //$NON-NLS-1$
+				"PKG_CONFIG_SYSTEM_LIBRARY_PATH", DEFAULT_SYSTEM_LIBRARY_PATH); //$NON-NLS-1$
+	}
+
+	/**
+	 * Get the system directories which pkg-config strips from the output.
+	 *
+	 * @param allowVariable Variable which disables stripping when set
+	 * @param pathVariable Variable which overrides the default directories
+	 * @param defaultPath Default directories
+	 * @return Set of directories
+	 */
+	private static Set<String> systemPaths(String allowVariable,
+			String pathVariable, String defaultPath) {
+		Set<String> paths = new HashSet<String>();
+		if (OSDetector.isWindows() || System.getenv(allowVariable) != null) {
+			return paths;
+		}
+		String value = System.getenv(pathVariable);
+		if (value == null) {
+			value = defaultPath;
+			if (DEFAULT_SYSTEM_LIBRARY_PATH.equals(defaultPath)) {
+				addMultiarchDirs(paths);
+			}
+		}
+		for (String path : value.split(Separators.getPathSeparator())) {
+			if (!path.isEmpty()) {
+				paths.add(path);
+			}
+		}
+		return paths;
+	}
+
+	/**
+	 * Add multiarch library directories such as /usr/lib/x86_64-linux-gnu.
+	 *
+	 * @param paths
+	 */
+	private static void addMultiarchDirs(Set<String> paths) {
+		File[] libDirs = new File("/usr/lib").listFiles(); //$NON-NLS-1$
+		if (libDirs != null) {
+			for (File libDir : libDirs) {
+				if (libDir.getName().contains("-linux-")) { //$NON-NLS-1$
+					paths.add(libDir.getPath());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Run a pkg-config query.
+	 *
+	 * @param args Command line arguments, i.e. options followed by packages
+	 * @return Output lines or null if the query cannot be resolved
+	 */
+	public List<String> run(List<String> args) {
+		Query query = Query.parse(args);
+		if (query == null) {
+			return null;
+		}
+		try {
+			if (query.listAll) {
+				return listAll();
+			}
+			if (System.getenv(ENV_PKG_CONFIG_SYSROOT_DIR) != null) {
+				// the sysroot prefixed paths are left to pkg-config
+				return null;
+			}
+			List<String> flags = new ArrayList<String>();
+			if ((query.kinds & ANY_CFLAGS) != 0) {
+				List<PcFile> cflagPkgs = expand(query.pkgs, true);
+				if (cflagPkgs == null) {
+					return null;
+				}
+				flags.addAll(getCflags(cflagPkgs, query.kinds));
+			}
+			if ((query.kinds & ANY_LIBS) != 0) {
+				List<PcFile> libPkgs = expand(query.pkgs, query.isStatic);
+				if (libPkgs == null) {
+					return null;
+				}
+				flags.addAll(getLibs(libPkgs, query.kinds, query.isStatic));
+			}
+			if (query.kinds == 0 && expand(query.pkgs, false) == null) {
+				// pkg-config only checks that the packages exist
+				return null;
+			}
+			return Collections.singletonList(toOutput(flags));
+		} catch (IOException e) {
+			Activator.getDefault().log(IStatus.WARNING, e,
+					"Reading .pc files failed, falling back to pkg-config."); //$NON-NLS-1$
+			return null;
+		}
+	}
+
+	/**
+	 * Get the files the result of a query depends on: the search directories
+	 * and the .pc files of the queried packages and their requirements. For
+	 * --list-all every .pc file of the search directories is involved.
+	 *
+	 * @param args Command line arguments, i.e. options followed by packages
+	 * @return List of files or null if the query cannot be resolved
+	 */
+	public List<File> getInvolvedFiles(List<String> args) {
+		Query query = Query.parse(args);
+		if (query == null) {
+			return null;
+		}
+		// adding or removing a .pc file changes the modification time of the
+		// directory
+		List<File> files = new ArrayList<File>(this.env.getSearchDirectories());
+		if (query.listAll) {
+			for (File dir : this.env.getSearchDirectories()) {
+				File[] pcFiles = dir.listFiles();
+				if (pcFiles != null) {
+					for (File pcFile : pcFiles) {
+						if (pcFile.getName().endsWith(PcFile.EXTENSION)) {
+							files.add(pcFile);
+						}
+					}
+				}
+			}
+			return files;
+		}
+		try {
+			List<PcFile> pkgs = expand(query.pkgs, true);
+			if (pkgs == null) {
+				return null;
+			}
+			for (PcFile pc : pkgs) {
+				files.add(pc.getFile());
+			}
+			return files;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * List all packages found from the search directories in the format of
+	 * "pkg-config --list-all".
+	 *
+	 * @return Output lines
+	 */
+	public List<String> listAll() {
+		List<String> lines = new ArrayList<String>();
+		Set<String> seen = new HashSet<String>();
+		for (File dir : this.env.getSearchDirectories()) {
+			File[] files = dir.listFiles();
+			if (files == null) {
+				continue;
+			}
+			for (File file : files) {
+				String fileName = file.getName();
+				if (!fileName.endsWith(PcFile.EXTENSION) || !file.isFile()) {
+					continue;
+				}
+				String pkg = fileName.substring(0, fileName.length()
+						- PcFile.EXTENSION.length());
+				// packages found first shadow the ones found later
+				if (!seen.add(pkg)) {
+					continue;
+				}
+				try {
+					PcFile pc = PcFile.parse(file);
+					lines.add(String.format("%1$-" + LIST_ALL_NAME_WIDTH + "s %2$s - %3$s", //$NON-NLS-1$ //$NON-NLS-2$
+							pkg, pc.getKeyword(NAME), pc.getKeyword(DESCRIPTION)));
+				} catch (IOException e) {
+					// pkg-config skips broken files as well
+				}
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * Find and parse the .pc file of the given package.
+	 *
+	 * @param pkg Package name
+	 * @return PcFile or null if the package is not found
+	 * @throws IOException
+	 */
+	public PcFile findPackage(String pkg) throws IOException {
+		if (this.loaded.containsKey(pkg)) {
+			return this.loaded.get(pkg);
+		}
+		PcFile pc = null;
+		for (File dir : this.env.getSearchDirectories()) {
+			File file = new File(dir, pkg + PcFile.EXTENSION);
+			if (file.isFile()) {
+				pc = PcFile.parse(file);
+				break;
+			}
+		}
+		this.loaded.put(pkg, pc);
+		return pc;
+	}
+
+	/**
+	 * Expand the requested packages with their requirements. Every package
+	 * is listed before the packages it requires.
+	 *
+	 * @param pkgs Requested packages
+	 * @param includePrivate Follow Requires.private
+	 * @return List of packages or null if a package is not found or its
+	 *         version does not satisfy a constraint
+	 * @throws IOException
+	 */
+	private List<PcFile> expand(List<PcFile.Requirement> pkgs, boolean includePrivate)
+			throws IOException {
+		List<PcFile> postOrder = new ArrayList<PcFile>();
+		Set<String> visited = new HashSet<String>();
+		// visiting the roots backwards keeps them in the requested order
+		for (int i = pkgs.size() - 1; i >= 0; i--) {
+			if (!visit(pkgs.get(i), includePrivate, visited, postOrder)) {
+				return null;
+			}
+		}
+		Collections.reverse(postOrder);
+		return postOrder;
+	}
+
+	/**
+	 * Depth first visit of a package and its requirements.
+	 *
+	 * @return false if a package is not found or its version does not
+	 *         satisfy the constraint
+	 * @throws IOException
+	 */
+	private boolean visit(PcFile.Requirement requirement, boolean includePrivate,
+			Set<String> visited, List<PcFile> postOrder) throws IOException {
+		PcFile pc = findPackage(requirement.getPackage());
+		if (pc == null || !requirement.isSatisfiedBy(pc)) {
+			return false;
+		}
+		if (!visited.add(requirement.getPackage())) {
+			return true;
+		}
+		List<PcFile.Requirement> required = pc.getRequirements(REQUIRES);
+		if (includePrivate) {
+			required.addAll(pc.getRequirements(REQUIRES_PRIVATE));
+		}
+		for (int i = required.size() - 1; i >= 0; i--) {
+			if (!visit(required.get(i), includePrivate, visited, postOrder)) {
+				return false;
+			}
+		}
+		postOrder.add(pc);
+		return true;
+	}
+
+	/**
+	 * Get the merged cflags of the packages. Like pkg-config, the other
+	 * flags come before the include paths. Duplicates are removed keeping
+	 * the first occurrence.
+	 */
+	private List<String> getCflags(List<PcFile> pkgs, int kinds) {
+		Set<String> others = new LinkedHashSet<String>();
+		Set<String> includes = new LinkedHashSet<String>();
+		for (PcFile pc : pkgs) {
+			for (String flag : splitFlags(pc.getKeyword(KW_CFLAGS))) {
+				if (flag.startsWith("-I")) { //$NON-NLS-1$
+					if ((kinds & CFLAGS_I) != 0
+							&& !this.systemIncludePaths.contains(flag.substring(2))) {
+						includes.add(flag);
+					}
+				} else if ((kinds & CFLAGS_OTHER) != 0) {
+					others.add(flag);
+				}
+			}
+		}
+		List<String> flags = new ArrayList<String>(others);
+		flags.addAll(includes);
+		return flags;
+	}
+
+	/**
+	 * Get the merged libs of the packages in the order library paths, other
+	 * flags and libraries. Libraries keep their last occurrence so that the
+	 * link order stays valid, other duplicates keep the first one.
+	 */
+	private List<String> getLibs(List<PcFile> pkgs, int kinds, boolean isStatic) {
+		List<String> all = new ArrayList<String>();
+		for (PcFile pc : pkgs) {
+			all.addAll(splitFlags(pc.getKeyword(KW_LIBS)));
+			if (isStatic) {
+				all.addAll(splitFlags(pc.getKeyword(KW_LIBS_PRIVATE)));
+			}
+		}
+		Set<String> libPaths = new LinkedHashSet<String>();
+		Set<String> others = new LinkedHashSet<String>();
+		Set<String> libs = new HashSet<String>();
+		List<String> reversedLibs = new ArrayList<String>();
+		for (int i = all.size() - 1; i >= 0; i--) {
+			String flag = all.get(i);
+			if (flag.startsWith("-l") && libs.add(flag)) { //$NON-NLS-1$
+				reversedLibs.add(flag);
+			}
+		}
+		for (String flag : all) {
+			if (flag.startsWith("-L")) { //$NON-NLS-1$
+				if (!this.systemLibraryPaths.contains(flag.substring(2))) {
+					libPaths.add(flag);
+				}
+			} else if (!flag.startsWith("-l")) { //$NON-NLS-1$
+				others.add(flag);
+			}
+		}
+		List<String> flags = new ArrayList<String>();
+		if ((kinds & LIBS_L) != 0) {
+			flags.addAll(libPaths);
+		}
+		if ((kinds & LIBS_OTHER) != 0) {
+			flags.addAll(others);
+		}
+		if ((kinds & LIBS_LIB) != 0) {
+			Collections.reverse(reversedLibs);
+			flags.addAll(reversedLibs);
+		}
+		return flags;
+	}
+
+	/**
+	 * Parsed command line arguments of a query.
+	 */
+	private static class Query {
+		int kinds;
+		boolean listAll;
+		boolean isStatic;
+		List<PcFile.Requirement> pkgs;
+
+		/**
+		 * Parse command line arguments.
+		 *
+		 * @param args
+		 * @return Query or null if an option is not supported
+		 */
+		static Query parse(List<String> args) {
+			Query query = new Query();
+			StringBuilder pkgList = new StringBuilder();
+			for (String arg : args) {
+				if (LIST_ALL.equals(arg)) {
+					query.listAll = true;
+				} else if (CFLAGS.equals(arg)) {
+					query.kinds |= ANY_CFLAGS;
+				} else if (CFLAGS_ONLY_I.equals(arg)) {
+					query.kinds |= CFLAGS_I;
+				} else if (CFLAGS_ONLY_OTHER.equals(arg)) {
+					query.kinds |= CFLAGS_OTHER;
+				} else if (LIBS.equals(arg)) {
+					query.kinds |= ANY_LIBS;
+				} else if (LIBS_ONLY_L.equals(arg)) {
+					query.kinds |= LIBS_L;
+				} else if (LIBS_ONLY_LIB.equals(arg)) {
+					query.kinds |= LIBS_LIB;
+				} else if (LIBS_ONLY_OTHER.equals(arg)) {
+					query.kinds |= LIBS_OTHER;
+				} else if (STATIC.equals(arg)) {
+					query.isStatic = true;
+				} else if (arg.startsWith("-")) { //$NON-NLS-1$
+					// unsupported option
+					return null;
+				} else {
+					pkgList.append(arg).append(' ');
+				}
+			}
+			query.pkgs = PcFile.parseRequirements(pkgList.toString());
+			if (!query.listAll && query.pkgs.isEmpty()) {
+				return null;
+			}
+			return query;
+		}
+	}
+
+	/**
+	 * Split flags the way a shell splits arguments.
+	 *
+	 * @param value Keyword value
+	 * @return List of flags
+	 */
+	static List<String> splitFlags(String value) {
+		List<String> flags = new ArrayList<String>();
+		StringBuilder current = new StringBuilder();
+		boolean inToken = false;
+		char quote = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				} else if (c == '\\' && quote == '"' && i + 1 < value.length()
+						&& "\"\\$`".indexOf(value.charAt(i + 1)) >= 0) { //$NON-NLS-1$
+					current.append(value.charAt(++i));
+				} else {
+					current.append(c);
+				}
+			} else if (c == '"' || c == '\'') {
+				quote = c;
+				inToken = true;
+			} else if (c == '\\' && i + 1 < value.length()) {
+				current.append(value.charAt(++i));
+				inToken = true;
+			} else if (Character.isWhitespace(c)) {
+				if (inToken) {
+					flags.add(current.toString());
+					current.setLength(0);
+					inToken = false;
+				}
+			} else {
+				current.append(c);
+				inToken = true;
+			}
+		}
+		if (inToken) {
+			flags.add(current.toString());
+		}
+		return flags;
+	}
+
+	/**
+	 * Form an output line. Whitespace inside a flag is escaped the same way
+	 * pkg-config escapes it.
+	 */
+	private static String toOutput(List<String> flags) {
+		StringBuilder sb = new StringBuilder();
+		for (String flag : flags) {
+			if (sb.length() > 0) {
+				sb.append(' ');
+			}
+			for (int i = 0; i < flag.length(); i++) {
+				char c = flag.charAt(i);
+				if (Character.isWhitespace(c)) {
+					sb.append('\\');
+				}
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+}
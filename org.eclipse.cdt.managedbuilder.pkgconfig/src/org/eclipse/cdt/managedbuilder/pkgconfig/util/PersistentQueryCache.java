@@ -0,0 +1,293 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012 Petri Tuononen and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Petri Tuononen - Initial implementation
+ *******************************************************************************/
+package org.eclipse.cdt.managedbuilder.pkgconfig.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.eclipse.cdt.managedbuilder.pkgconfig.Activator;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Persistent cache of pkg-config query results stored in the plug-in state
+ * location.
+ *
+ * An entry is keyed by the pkg-config executable, PKG_CONFIG_PATH,
+ * PKG_CONFIG_LIBDIR and the query arguments. It is valid as long as the
+ * fingerprint of the involved .pc files, i.e. their modification times and
+ * sizes, matches the fingerprint stored with the entry. This lets a warm
+ * workspace start without running pkg-config at all.
+ */
+public class PersistentQueryCache {
+
+	private static final String CACHE_FILE = "pkgconfig-cache.properties"; //$NON-NLS-1$
+	private static final String SEPARATOR = "|"; //$NON-NLS-1$
+	private static final String LINE_SEPARATOR = "\n"; //$NON-NLS-1$
+	private static final int MAX_ENTRIES = 10000;
+	// delay before the modified cache is written to the disk
+	private static final long SAVE_DELAY = 10000;
+
+	private static PersistentQueryCache instance;
+
+	private final File file;
+	private final Map<String, String> entries = new LinkedHashMap<String, String>(
+			16, 0.75f, true);
+	private boolean loaded = false;
+	private boolean dirty = false;
+	private Job saveJob;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param file File where the cache is persisted, may be null
+	 */
+	private PersistentQueryCache(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Get the shared cache stored in the plug-in state location.
+	 *
+	 * @return PersistentQueryCache
+	 */
+	public static synchronized PersistentQueryCache getDefault() {
+		if (instance == null) {
+			File stateFile = null;
+			Activator plugin = Activator.getDefault();
+			if (plugin != null) {
+				try {
+					stateFile = plugin.getStateLocation().append(CACHE_FILE)
+							.toFile();
+				} catch (IllegalStateException e) {
+					// no instance location, the cache is kept in memory only
+				}
+			}
+			instance = new PersistentQueryCache(stateFile);
+		}
+		return instance;
+	}
+
+	/**
+	 * Write the shared cache to the disk if it has been modified. Called when
+	 * the plug-in is stopped.
+	 */
+	public static synchronized void shutdown() {
+		if (instance != null) {
+			if (instance.saveJob != null) {
+				instance.saveJob.cancel();
+			}
+			instance.save();
+			instance = null;
+		}
+	}
+
+	/**
+	 * Get a cached query result.
+	 *
+	 * @param env pkg-config environment
+	 * @param args Query arguments
+	 * @param fingerprint Fingerprint of the involved files
+	 * @return Output lines or null if not cached or the entry is stale
+	 */
+	public synchronized List<String> get(PkgConfigEnvironment env,
+			List<String> args, String fingerprint) {
+		load();
+		String key = getKey(env, args);
+		String value = this.entries.get(key);
+		if (value == null) {
+			return null;
+		}
+		int lineEnd = value.indexOf(LINE_SEPARATOR);
+		String storedFingerprint = lineEnd < 0 ? value : value.substring(0, lineEnd);
+		if (!storedFingerprint.equals(fingerprint)) {
+			this.entries.remove(key);
+			this.dirty = true;
+			return null;
+		}
+		if (lineEnd < 0) {
+			return new ArrayList<String>();
+		}
+		return new ArrayList<String>(Arrays.asList(value.substring(
+				lineEnd + 1).split(LINE_SEPARATOR, -1)));
+	}
+
+	/**
+	 * Store a query result.
+	 *
+	 * @param env pkg-config environment
+	 * @param args Query arguments
+	 * @param fingerprint Fingerprint of the involved files
+	 * @param lines Output lines
+	 */
+	public synchronized void put(PkgConfigEnvironment env, List<String> args,
+			String fingerprint, List<String> lines) {
+		load();
+		StringBuilder value = new StringBuilder(fingerprint);
+		for (String line : lines) {
+			value.append(LINE_SEPARATOR).append(line);
+		}
+		this.entries.put(getKey(env, args), value.toString());
+		// forget the least recently used entries
+		Iterator<String> it = this.entries.keySet().iterator();
+		while (this.entries.size() > MAX_ENTRIES && it.hasNext()) {
+			it.next();
+			it.remove();
+		}
+		this.dirty = true;
+		scheduleSave();
+	}
+
+	/**
+	 * Compute a fingerprint of the given files from their paths,
+	 * modification times and sizes.
+	 *
+	 * @param files
+	 * @return Fingerprint
+	 */
+	public static String fingerprint(List<File> files) {
+		StringBuilder sb = new StringBuilder();
+		for (File f : files) {
+			sb.append(f.getPath()).append(SEPARATOR)
+					.append(f.lastModified()).append(SEPARATOR)
+					.append(f.length()).append(LINE_SEPARATOR);
+		}
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+			byte[] hash = digest.digest(sb.toString().getBytes("UTF-8")); //$NON-NLS-1$
+			StringBuilder hex = new StringBuilder(hash.length * 2);
+			for (byte b : hash) {
+				hex.append(String.format("%02x", Integer.valueOf(b & 0xff))); //$NON-NLS-1$
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			return Integer.toHexString(sb.toString().hashCode());
+		} catch (UnsupportedEncodingException e) {
+			return Integer.toHexString(sb.toString().hashCode());
+		}
+	}
+
+	/**
+	 * Form the key of an entry.
+	 */
+	private static String getKey(PkgConfigEnvironment env, List<String> args) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(env.getBinary()).append(SEPARATOR)
+				.append(env.getPkgConfigPath()).append(SEPARATOR)
+				.append(env.getPkgConfigLibDir());
+		for (String arg : args) {
+			sb.append(SEPARATOR).append(arg);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Read the cache from the disk when it is used for the first time.
+	 */
+	private void load() {
+		if (this.loaded) {
+			return;
+		}
+		this.loaded = true;
+		if (this.file == null || !this.file.isFile()) {
+			return;
+		}
+		Properties props = new Properties();
+		InputStream in = null;
+		try {
+			in = new FileInputStream(this.file);
+			props.load(in);
+			for (String key : props.stringPropertyNames()) {
+				this.entries.put(key, props.getProperty(key));
+			}
+		} catch (IOException e) {
+			Activator.getDefault().log(IStatus.WARNING, e,
+					"Reading the pkg-config cache failed."); //$NON-NLS-1$
+		} finally {
+			close(in);
+		}
+	}
+
+	/**
+	 * Write the cache to the disk if it has been modified.
+	 */
+	synchronized void save() {
+		if (!this.dirty || this.file == null) {
+			return;
+		}
+		Properties props = new Properties();
+		for (Map.Entry<String, String> entry : this.entries.entrySet()) {
+			props.setProperty(entry.getKey(), entry.getValue());
+		}
+		OutputStream out = null;
+		try {
+			out = new FileOutputStream(this.file);
+			props.store(out, "pkg-config query results"); //$NON-NLS-1$
+			this.dirty = false;
+		} catch (IOException e) {
+			Activator.getDefault().log(IStatus.WARNING, e,
+					"Writing the pkg-config cache failed."); //$NON-NLS-1$
+		} finally {
+			close(out);
+		}
+	}
+
+	/**
+	 * Schedule writing the cache to the disk. Modifications made in quick
+	 * succession are written at once.
+	 */
+	private void scheduleSave() {
+		if (this.file == null) {
+			return;
+		}
+		if (this.saveJob == null) {
+			this.saveJob = new Job("Save pkg-config cache") { //$NON-NLS-1$
+				@Override
+				protected IStatus run(IProgressMonitor monitor) {
+					save();
+					return Status.OK_STATUS;
+				}
+			};
+			this.saveJob.setSystem(true);
+		}
+		if (this.saveJob.getState() == Job.NONE) {
+			this.saveJob.schedule(SAVE_DELAY);
+		}
+	}
+
+	private static void close(Closeable c) {
+		if (c != null) {
+			try {
+				c.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+}
@@ -0,0 +1,401 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012 Petri Tuononen and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Petri Tuononen - Initial implementation
+ *******************************************************************************/
+package org.eclipse.cdt.managedbuilder.pkgconfig.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.cdt.managedbuilder.pkgconfig.preferences.PreferenceStore;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChangeListener;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
+
+/**
+ * The pkg-config environment of a project: the executable together with the
+ * effective PKG_CONFIG_PATH and PKG_CONFIG_LIBDIR values and the resulting
+ * .pc file search directories.
+ *
+ * Instances are immutable and can be used as a key for results that only
+ * depend on the environment. The environment of each project is kept until
+ * a preference changes.
+ */
+public class PkgConfigEnvironment {
+
+	private static final String PKG_CONFIG = "pkg-config"; //$NON-NLS-1$
+	private static final String ENV_PKG_CONFIG_PATH = "PKG_CONFIG_PATH"; //$NON-NLS-1$
+	private static final String ENV_PKG_CONFIG_LIBDIR = "PKG_CONFIG_LIBDIR"; //$NON-NLS-1$
+	private static final String PKGCONFIG_DIR = "pkgconfig"; //$NON-NLS-1$
+	// arguments printing the default search path of pkg-config
+	private static final List<String> PC_PATH_QUERY = Arrays.asList(
+			"--variable", "pc_path", PKG_CONFIG); //$NON-NLS-1$ //$NON-NLS-2$
+
+	// Default search directories of a pkg-config installed on Unix/Mac
+	private static final String[] UNIX_DEFAULT_DIRS = {
+			"/usr/local/lib/pkgconfig", //$NON-NLS-1$
+			"/usr/local/lib64/pkgconfig", //$NON-NLS-1$
+			"/usr/local/share/pkgconfig", //$NON-NLS-1$
+			"/usr/lib/pkgconfig", //$NON-NLS-1$
+			"/usr/lib64/pkgconfig", //$NON-NLS-1$
+			"/usr/share/pkgconfig", //$NON-NLS-1$
+			"/opt/local/lib/pkgconfig", //$NON-NLS-1$
+			"/opt/homebrew/lib/pkgconfig" //$NON-NLS-1$
+	};
+
+	// default search path of each executable, empty if it is not known
+	private static final ConcurrentMap<String, String> DEFAULT_SEARCH_PATHS = new ConcurrentHashMap<String, String>();
+
+	// environment of each project, guarded by itself
+	private static final Map<String, PkgConfigEnvironment> PROJECT_ENVIRONMENTS = new HashMap<String, PkgConfigEnvironment>();
+	// incremented when a preference changes, guarded by PROJECT_ENVIRONMENTS
+	private static long preferenceGeneration = 0;
+	private static IPreferenceChangeListener preferenceListener;
+
+	private final String binary;
+	private final String pkgConfigPath;
+	private final String pkgConfigLibDir;
+	// computed when first needed
+	private volatile List<File> searchDirs;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param binary pkg-config executable
+	 * @param pkgConfigPath PKG_CONFIG_PATH value, empty if not set
+	 * @param pkgConfigLibDir PKG_CONFIG_LIBDIR value, empty if not set
+	 */
+	public PkgConfigEnvironment(String binary, String pkgConfigPath,
+			String pkgConfigLibDir) {
+		this.binary = binary;
+		this.pkgConfigPath = pkgConfigPath;
+		this.pkgConfigLibDir = pkgConfigLibDir;
+	}
+
+	/**
+	 * Get the pkg-config environment configured for the given project.
+	 *
+	 * @param project Project name
+	 * @return PkgConfigEnvironment
+	 */
+	public static PkgConfigEnvironment forProject(String project) {
+		long generation;
+		synchronized (PROJECT_ENVIRONMENTS) {
+			PkgConfigEnvironment env = PROJECT_ENVIRONMENTS.get(project);
+			if (env != null) {
+				return env;
+			}
+			if (preferenceListener == null) {
+				preferenceListener = new IPreferenceChangeListener() {
+					@Override
+					public void preferenceChange(PreferenceChangeEvent event) {
+						clearProjectEnvironments();
+					}
+				};
+				PreferenceStore.getPreferenceStore().addPreferenceChangeListener(
+						preferenceListener);
+			}
+			generation = preferenceGeneration;
+		}
+		PkgConfigEnvironment env = createForProject(project);
+		synchronized (PROJECT_ENVIRONMENTS) {
+			// not kept if a preference changed while it was created
+			if (generation == preferenceGeneration) {
+				PROJECT_ENVIRONMENTS.put(project, env);
+			}
+		}
+		return env;
+	}
+
+	/**
+	 * Forget the environments of the projects, e.g. because a preference
+	 * has changed.
+	 */
+	private static void clearProjectEnvironments() {
+		synchronized (PROJECT_ENVIRONMENTS) {
+			preferenceGeneration++;
+			PROJECT_ENVIRONMENTS.clear();
+		}
+		// e.g. the executable may have been installed in the meantime
+		DEFAULT_SEARCH_PATHS.values().remove(""); //$NON-NLS-1$
+	}
+
+	/**
+	 * Stop listening to the preferences. Called when the plug-in is stopped.
+	 */
+	public static void shutdown() {
+		synchronized (PROJECT_ENVIRONMENTS) {
+			if (preferenceListener != null) {
+				PreferenceStore.getPreferenceStore()
+						.removePreferenceChangeListener(preferenceListener);
+				preferenceListener = null;
+			}
+			preferenceGeneration++;
+			PROJECT_ENVIRONMENTS.clear();
+		}
+		DEFAULT_SEARCH_PATHS.clear();
+	}
+
+	/**
+	 * Create the pkg-config environment from the preferences of the project.
+	 *
+	 * @param project Project name
+	 * @return PkgConfigEnvironment
+	 */
+	private static PkgConfigEnvironment createForProject(String project) {
+		String bin = PreferenceStore.getPkgConfigBinPath(project);
+		if (bin.isEmpty()) {
+			if (OSDetector.isWindows()) {
+				bin = PKG_CONFIG + ".exe"; //$NON-NLS-1$
+			} else {
+				bin = PKG_CONFIG;
+			}
+		}
+		return new PkgConfigEnvironment(bin,
+				joinPaths(PreferenceStore.getPkgConfigPath(project)),
+				joinPaths(PreferenceStore.getPkgConfigLibDir(project)));
+	}
+
+	/**
+	 * Join paths using the path separator of the operating system.
+	 *
+	 * @param paths Paths, may be null
+	 * @return Joined paths or an empty String
+	 */
+	private static String joinPaths(String[] paths) {
+		StringBuilder sb = new StringBuilder();
+		if (paths != null) {
+			for (String path : paths) {
+				if (path.isEmpty()) {
+					continue;
+				}
+				if (sb.length() > 0) {
+					sb.append(Separators.getPathSeparator());
+				}
+				sb.append(path);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Get the pkg-config executable.
+	 *
+	 * @return pkg-config executable
+	 */
+	public String getBinary() {
+		return this.binary;
+	}
+
+	/**
+	 * Get PKG_CONFIG_PATH set for the project.
+	 *
+	 * @return PKG_CONFIG_PATH or an empty String
+	 */
+	public String getPkgConfigPath() {
+		return this.pkgConfigPath;
+	}
+
+	/**
+	 * Get PKG_CONFIG_LIBDIR set for the project.
+	 *
+	 * @return PKG_CONFIG_LIBDIR or an empty String
+	 */
+	public String getPkgConfigLibDir() {
+		return this.pkgConfigLibDir;
+	}
+
+	/**
+	 * Get the existing directories that are searched for .pc files in the
+	 * order pkg-config searches them.
+	 *
+	 * @return List of directories
+	 */
+	public List<File> getSearchDirectories() {
+		List<File> dirs = this.searchDirs;
+		if (dirs == null) {
+			dirs = computeSearchDirectories();
+			this.searchDirs = dirs;
+		}
+		return dirs;
+	}
+
+	/**
+	 * Compute the search directories. PKG_CONFIG_PATH entries come first and
+	 * are followed either by PKG_CONFIG_LIBDIR or by the default directories.
+	 * Values set for the project override the ones inherited from the
+	 * environment of the workbench, as they do for the spawned pkg-config.
+	 *
+	 * @return List of directories
+	 */
+	private List<File> computeSearchDirectories() {
+		Set<String> dirs = new LinkedHashSet<String>();
+		addPaths(dirs, effectiveValue(this.pkgConfigPath, ENV_PKG_CONFIG_PATH));
+		String libDir = effectiveValue(this.pkgConfigLibDir, ENV_PKG_CONFIG_LIBDIR);
+		if (!libDir.isEmpty()) {
+			addPaths(dirs, libDir);
+		} else {
+			addDefaultDirs(dirs);
+		}
+		List<File> existing = new ArrayList<File>();
+		for (String dir : dirs) {
+			File f = new File(dir);
+			if (f.isDirectory()) {
+				existing.add(f);
+			}
+		}
+		return existing;
+	}
+
+	/**
+	 * Get the value set for the project or the one inherited from the
+	 * environment.
+	 *
+	 * @param value Value set for the project
+	 * @param envVariable Environment variable name
+	 * @return Effective value or an empty String
+	 */
+	private static String effectiveValue(String value, String envVariable) {
+		if (!value.isEmpty()) {
+			return value;
+		}
+		String env = System.getenv(envVariable);
+		return env != null ? env : ""; //$NON-NLS-1$
+	}
+
+	/**
+	 * Add paths separated by the path separator to the given set.
+	 *
+	 * @param dirs
+	 * @param paths
+	 */
+	private static void addPaths(Set<String> dirs, String paths) {
+		for (String path : paths.split(Separators.getPathSeparator())) {
+			if (!path.isEmpty()) {
+				dirs.add(path);
+			}
+		}
+	}
+
+	/**
+	 * Add the default search directories. They are read from the pc_path
+	 * variable of pkg-config, which is run once per executable. If that
+	 * fails, the usual directories are guessed.
+	 *
+	 * @param dirs
+	 */
+	private void addDefaultDirs(Set<String> dirs) {
+		String defaultPath = DEFAULT_SEARCH_PATHS.get(this.binary);
+		if (defaultPath == null) {
+			defaultPath = queryDefaultSearchPath();
+			DEFAULT_SEARCH_PATHS.putIfAbsent(this.binary, defaultPath);
+		}
+		if (!defaultPath.isEmpty()) {
+			addPaths(dirs, defaultPath);
+		} else {
+			addGuessedDefaultDirs(dirs);
+		}
+	}
+
+	/**
+	 * Read the default search path from the pc_path variable of pkg-config.
+	 *
+	 * @return Default search path or an empty String if it cannot be read
+	 */
+	private String queryDefaultSearchPath() {
+		// the default path does not depend on the variables of the project
+		List<String> lines = new PkgConfigLauncher(new PkgConfigEnvironment(
+				this.binary, "", ""), PreferenceStore.getQueryTimeout()).run( //$NON-NLS-1$ //$NON-NLS-2$
+				PC_PATH_QUERY, null);
+		if (lines == null || lines.isEmpty()) {
+			return ""; //$NON-NLS-1$
+		}
+		return lines.get(0).trim();
+	}
+
+	/**
+	 * Add the usual default search directories. A pkg-config located in a
+	 * &lt;prefix&gt;/bin directory searches &lt;prefix&gt;/lib/pkgconfig and
+	 * &lt;prefix&gt;/share/pkgconfig which is the only default on Windows.
+	 *
+	 * @param dirs
+	 */
+	private void addGuessedDefaultDirs(Set<String> dirs) {
+		File bin = new File(this.binary);
+		if (bin.isAbsolute() && bin.getParentFile() != null
+				&& bin.getParentFile().getParentFile() != null) {
+			File prefix = bin.getParentFile().getParentFile();
+			dirs.add(new File(new File(prefix, "lib"), PKGCONFIG_DIR).getPath()); //$NON-NLS-1$
+			dirs.add(new File(new File(prefix, "share"), PKGCONFIG_DIR).getPath()); //$NON-NLS-1$
+		}
+		if (OSDetector.isWindows()) {
+			return;
+		}
+		for (String dir : UNIX_DEFAULT_DIRS) {
+			dirs.add(dir);
+		}
+		// multiarch directories such as /usr/lib/x86_64-linux-gnu/pkgconfig
+		addMultiarchDirs(dirs, "/usr/local/lib"); //$NON-NLS-1$
+		addMultiarchDirs(dirs, "/usr/lib"); //$NON-NLS-1$
+	}
+
+	/**
+	 * Add the pkgconfig directories of the multiarch subdirectories of a
+	 * library directory.
+	 *
+	 * @param dirs
+	 * @param lib Library directory
+	 */
+	private static void addMultiarchDirs(Set<String> dirs, String lib) {
+		File[] libDirs = new File(lib).listFiles();
+		if (libDirs != null) {
+			for (File libDir : libDirs) {
+				if (libDir.getName().contains("-linux-")) { //$NON-NLS-1$
+					dirs.add(new File(libDir, PKGCONFIG_DIR).getPath());
+				}
+			}
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		int result = this.binary.hashCode();
+		result = 31 * result + this.pkgConfigPath.hashCode();
+		result = 31 * result + this.pkgConfigLibDir.hashCode();
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof PkgConfigEnvironment)) {
+			return false;
+		}
+		PkgConfigEnvironment other = (PkgConfigEnvironment) obj;
+		return this.binary.equals(other.binary)
+				&& this.pkgConfigPath.equals(other.pkgConfigPath)
+				&& this.pkgConfigLibDir.equals(other.pkgConfigLibDir);
+	}
+
+	@Override
+	public String toString() {
+		return this.binary + " PKG_CONFIG_PATH=" + this.pkgConfigPath //$NON-NLS-1$
+				+ " PKG_CONFIG_LIBDIR=" + this.pkgConfigLibDir; //$NON-NLS-1$
+	}
+
+}
@@ -0,0 +1,265 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012 Petri Tuononen and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Petri Tuononen - Initial implementation
+ *******************************************************************************/
+package org.eclipse.cdt.managedbuilder.pkgconfig.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.cdt.managedbuilder.pkgconfig.Activator;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+
+/**
+ * Runs the pkg-config executable of a {@link PkgConfigEnvironment}.
+ *
+ * The executable is started directly without a shell. PKG_CONFIG_PATH and
+ * PKG_CONFIG_LIBDIR are passed in the process environment. Standard output
+ * and standard error are read in their own threads so that the process
+ * cannot block on a full pipe. A process that runs longer than the timeout
+ * or whose monitor is canceled is destroyed.
+ */
+public class PkgConfigLauncher {
+
+	/**
+	 * Handler of the output lines of pkg-config, called as the lines are
+	 * read.
+	 */
+	public interface ILineHandler {
+
+		/**
+		 * Handle a line written to the standard output.
+		 *
+		 * @param line
+		 */
+		void handleLine(String line);
+	}
+
+	private static final String ENV_PKG_CONFIG_PATH = "PKG_CONFIG_PATH"; //$NON-NLS-1$
+	private static final String ENV_PKG_CONFIG_LIBDIR = "PKG_CONFIG_LIBDIR"; //$NON-NLS-1$
+	// milliseconds between the checks for cancellation and timeout
+	private static final long POLL_INTERVAL = 50;
+	// milliseconds to wait for the process to exit after closing its output
+	private static final long EXIT_POLL_INTERVAL = 2;
+
+	private final PkgConfigEnvironment env;
+	private final long timeout;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param env pkg-config environment
+	 * @param timeout Timeout in milliseconds, 0 or less for none
+	 */
+	public PkgConfigLauncher(PkgConfigEnvironment env, long timeout) {
+		this.env = env;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Run pkg-config with the given arguments.
+	 *
+	 * @param args Command line arguments
+	 * @param monitor Progress monitor used for cancellation
+	 * @return Lines written to the standard output, null if the process
+	 *         could not be started, failed, timed out or was canceled
+	 */
+	public List<String> run(List<String> args, IProgressMonitor monitor) {
+		return run(args, monitor, null);
+	}
+
+	/**
+	 * Run pkg-config with the given arguments and pass each output line to
+	 * the handler as soon as it is read. Lines may be passed to the handler
+	 * before a failure of the process is noticed.
+	 *
+	 * @param args Command line arguments
+	 * @param monitor Progress monitor used for cancellation
+	 * @param handler Output line handler, may be null
+	 * @return Lines written to the standard output, null if the process
+	 *         could not be started, failed, timed out or was canceled. A
+	 *         package whose flags are all stripped gives no lines.
+	 */
+	public List<String> run(List<String> args, IProgressMonitor monitor,
+			ILineHandler handler) {
+		List<String> command = new ArrayList<String>();
+		command.add(this.env.getBinary());
+		command.addAll(args);
+		ProcessBuilder pb = new ProcessBuilder(command);
+		Map<String, String> environment = pb.environment();
+		if (!this.env.getPkgConfigPath().isEmpty()) {
+			environment.put(ENV_PKG_CONFIG_PATH, this.env.getPkgConfigPath());
+		}
+		if (!this.env.getPkgConfigLibDir().isEmpty()) {
+			environment.put(ENV_PKG_CONFIG_LIBDIR, this.env.getPkgConfigLibDir());
+		}
+
+		Process p;
+		try {
+			p = pb.start();
+		} catch (IOException e) {
+			Activator.getDefault().log(e,
+					"Starting the pkg-config process failed."); //$NON-NLS-1$
+			return null;
+		}
+
+		StreamReader out = new StreamReader(p.getInputStream(), handler);
+		StreamReader err = new StreamReader(p.getErrorStream(), null);
+		try {
+			p.getOutputStream().close();
+			out.start();
+			err.start();
+			int exitValue = waitFor(p, out, monitor);
+			err.join(POLL_INTERVAL);
+			if (exitValue != 0) {
+				Activator.getDefault().log(IStatus.WARNING, null, String.format(
+						"%1$s exited with status %2$d: %3$s", //$NON-NLS-1$
+						command, Integer.valueOf(exitValue), err.getText()));
+				return null;
+			}
+			return out.getLines();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			Activator.getDefault().log(e, "Running pkg-config failed."); //$NON-NLS-1$
+		} catch (TimeoutException e) {
+			Activator.getDefault().log(IStatus.WARNING, null, String.format(
+					"%1$s did not finish in %2$d ms.", //$NON-NLS-1$
+					command, Long.valueOf(this.timeout)));
+		} catch (CanceledException e) {
+			// the caller is no longer interested in the result
+		} finally {
+			p.destroy();
+		}
+		return null;
+	}
+
+	/**
+	 * Wait until the process has exited.
+	 *
+	 * @param p Process
+	 * @param out Reader of the standard output
+	 * @param monitor
+	 * @return Exit value
+	 */
+	private int waitFor(Process p, StreamReader out, IProgressMonitor monitor)
+			throws InterruptedException, TimeoutException, CanceledException {
+		long deadline = System.currentTimeMillis() + this.timeout;
+		// the output is closed when the process exits
+		while (true) {
+			out.join(POLL_INTERVAL);
+			if (!out.isAlive()) {
+				break;
+			}
+			checkCanceled(monitor, deadline);
+		}
+		// Process.waitFor() cannot time out
+		while (true) {
+			try {
+				return p.exitValue();
+			} catch (IllegalThreadStateException e) {
+				checkCanceled(monitor, deadline);
+				Thread.sleep(EXIT_POLL_INTERVAL);
+			}
+		}
+	}
+
+	private void checkCanceled(IProgressMonitor monitor, long deadline)
+			throws TimeoutException, CanceledException {
+		if (monitor != null && monitor.isCanceled()) {
+			throw new CanceledException();
+		}
+		if (this.timeout > 0 && System.currentTimeMillis() > deadline) {
+			throw new TimeoutException();
+		}
+	}
+
+	/**
+	 * Reads the lines of a process stream until it is closed.
+	 */
+	private static class StreamReader extends Thread {
+		private final InputStream stream;
+		private final ILineHandler handler;
+		private final List<String> lines = Collections
+				.synchronizedList(new ArrayList<String>());
+		private IOException exception;
+
+		StreamReader(InputStream stream, ILineHandler handler) {
+			super("Pkg-config output reader"); //$NON-NLS-1$
+			this.stream = stream;
+			this.handler = handler;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					this.stream));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					this.lines.add(line);
+					if (this.handler != null) {
+						this.handler.handleLine(line);
+					}
+				}
+			} catch (IOException e) {
+				this.exception = e;
+			} finally {
+				try {
+					reader.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+
+		/**
+		 * Get the lines read. Must be called after the thread has finished.
+		 */
+		List<String> getLines() throws IOException {
+			if (this.exception != null) {
+				throw this.exception;
+			}
+			return new ArrayList<String>(this.lines);
+		}
+
+		/**
+		 * Get the lines read so far as a single String.
+		 */
+		String getText() {
+			StringBuilder sb = new StringBuilder();
+			synchronized (this.lines) {
+				for (String line : this.lines) {
+					if (sb.length() > 0) {
+						sb.append(' ');
+					}
+					sb.append(line.trim());
+				}
+			}
+			return sb.toString();
+		}
+	}
+
+	private static class TimeoutException extends Exception {
+		private static final long serialVersionUID = 1L;
+	}
+
+	private static class CanceledException extends Exception {
+		private static final long serialVersionUID = 1L;
+	}
+
+}
@@ -10,14 +10,21 @@
  *******************************************************************************/
 package org.eclipse.cdt.managedbuilder.pkgconfig.util;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.eclipse.cdt.managedbuilder.pkgconfig.Activator;
 import org.eclipse.cdt.managedbuilder.pkgconfig.preferences.PreferenceStore;
+import org.eclipse.cdt.managedbuilder.pkgconfig.util.PkgConfigLauncher.ILineHandler;
+import org.eclipse.core.runtime.IProgressMonitor;
 
 /**
  * Runs pkg-config utility in the command line and outputs necessary options to
@@ -26,20 +33,22 @@ import org.eclipse.cdt.managedbuilder.pkgconfig.preferences.PreferenceStore;
  */
 public class PkgConfigUtil {
 
-	private static final String UNIX_PATH_SEPARATOR = ":"; //$NON-NLS-1$
-	private static final String WINDOWS_PATH_SEPARATOR = ";"; //$NON-NLS-1$
 	// Constant variables
-	private static final String PKG_CONFIG = "pkg-config"; //$NON-NLS-1$
 	private static final String LIST_PACKAGES = "--list-all"; //$NON-NLS-1$
 	private static final String OUTPUT_LIBS = "--libs"; //$NON-NLS-1$
 	private static final String OUTPUT_CFLAGS = "--cflags"; //$NON-NLS-1$
 	private static final String OUTPUT_ALL = "--cflags --libs"; //$NON-NLS-1$
 	private static final String OUTPUT_ONLY_LIB_PATHS = "--libs-only-L"; //$NON-NLS-1$
 	private static final String OUTPUT_ONLY_LIB_FILES = "--libs-only-l"; //$NON-NLS-1$
+	// milliseconds between the checks for cancellation while waiting for
+	// a query run by another thread
+	private static final long AWAIT_POLL_INTERVAL = 50;
+
+	// queries being run, keyed by environment and arguments
+	private static final ConcurrentMap<QueryResultCache.Key, SharedQuery> RUNNING_QUERIES = new ConcurrentHashMap<QueryResultCache.Key, SharedQuery>();
 
 	/**
-	 * Get options needed to build the given package. Does not like spaces on
-	 * paths except that getAllPackages seem to work.
+	 * Get options needed to build the given package.
 	 * 
 	 * @param pkgConfigOptions
 	 *            Pkg-config options
@@ -47,138 +56,333 @@ public class PkgConfigUtil {
 	 * @return
 	 */
 	private static String getPkgOutput(String project, String pkgConfigOptions) {
-		List<String> pkgOutputs = getPkgOutputs(project, pkgConfigOptions);
-		if (pkgOutputs.isEmpty())
+		return getPkgOutput(project, pkgConfigOptions, null);
+	}
+
+	/**
+	 * Get the first line of pkg-config output.
+	 * 
+	 * @param project
+	 *            Project name
+	 * @param pkgConfigOptions
+	 *            Pkg-config options
+	 * @param monitor
+	 *            Progress monitor used for cancellation, may be null
+	 * @return First output line, empty if there is no output, or null if
+	 *         pkg-config failed
+	 */
+	private static String getPkgOutput(String project, String pkgConfigOptions,
+			IProgressMonitor monitor) {
+		List<String> pkgOutputs = getPkgOutputs(project, pkgConfigOptions,
+				monitor, null, false);
+		if (pkgOutputs == null)
 			return null;
+		if (pkgOutputs.isEmpty())
+			return ""; //$NON-NLS-1$
 		return pkgOutputs.get(0);
 	}
 
 	/**
-	 * Get options needed to build the given package. Does not like spaces on
-	 * paths except that getAllPackages seem to work.
+	 * Get options needed to build the given package.
 	 * 
 	 * @param pkgconfigOptions
 	 *            Pkg-config options as --list-all, --libs...
 	 * @param project
 	 *            Project name
-	 * @return pkg-config command results as a list of string
+	 * @param monitor
+	 *            Progress monitor used for cancellation, may be null
+	 * @param handler
+	 *            Handler the output lines are passed to, may be null
+	 * @param interactive
+	 *            Is the user waiting for the result, see
+	 *            {@link ProcessThrottle}
+	 * @return pkg-config command results as a list of string or null if
+	 *         pkg-config failed
 	 */
 	private static List<String> getPkgOutputs(String project,
-			String pkgconfigOptions) {
-		ProcessBuilder pb = null;
-		String pkgConfigBinPath = PreferenceStore.getPkgConfigBinPath(project);
-
-		if (pkgConfigBinPath.isEmpty()) {
-			if (OSDetector.isWindows())
-				pkgConfigBinPath = PKG_CONFIG + ".exe"; //$NON-NLS-1$
-			else
-				pkgConfigBinPath = PKG_CONFIG;
-		}
-
-		String[] pkgConfigPaths = PreferenceStore.getPkgConfigPath(project);
-		StringBuffer pkgConfigCmd = new StringBuffer();
-		String pkgConfigPath = ""; //$NON-NLS-1$
-
-		if (pkgConfigPaths != null) {
-			for (int i = 0; i < pkgConfigPaths.length; i++) {
-				String pkgConfigPathValue = pkgConfigPaths[i];
-				pkgConfigPath += pkgConfigPathValue;
-				if (i != pkgConfigPaths.length - 1) {
-					if (OSDetector.isWindows()) {
-						pkgConfigPath += WINDOWS_PATH_SEPARATOR;
-					} else {
-						pkgConfigPath += UNIX_PATH_SEPARATOR;
-					}
-				}
+			String pkgconfigOptions, IProgressMonitor monitor,
+			ILineHandler handler, boolean interactive) {
+		PkgConfigEnvironment env = PkgConfigEnvironment.forProject(project);
+		List<String> args = splitOptions(pkgconfigOptions);
+
+		while (true) {
+			// results stay in memory until a .pc file changes
+			List<String> results = QueryResultCache.getDefault().get(env, args);
+			if (results != null) {
+				handleLines(handler, results);
+				return results;
 			}
 
-			if (!pkgConfigPath.isEmpty()) {
-				pkgConfigPath = pkgConfigPath.replace(" ", "\\ "); //$NON-NLS-1$ //$NON-NLS-2$
-				if (OSDetector.isWindows()) {
-					pkgConfigCmd
-							.append(" set PKG_CONFIG_PATH=" + pkgConfigPath + "&");//$NON-NLS-1$ //$NON-NLS-2$
-				} else {
-					pkgConfigCmd
-							.append(" PKG_CONFIG_PATH=" + pkgConfigPath + " ");//$NON-NLS-1$ //$NON-NLS-2$
+			// identical queries of other threads share a single run
+			QueryResultCache.Key key = new QueryResultCache.Key(env, args);
+			ProcessThrottle.Ticket ticket = new ProcessThrottle.Ticket(
+					interactive);
+			SharedQuery query = new SharedQuery(new CachingQuery(project, env,
+					args, monitor, handler, ticket), ticket);
+			SharedQuery running = RUNNING_QUERIES.putIfAbsent(key, query);
+			if (running == null) {
+				try {
+					query.run();
+					SharedOutput output = getOutput(query);
+					return output != null ? output.lines : null;
+				} finally {
+					RUNNING_QUERIES.remove(key, query);
 				}
 			}
-		}
-
-		String[] pkgConfigLibDirPaths = PreferenceStore
-				.getPkgConfigLibDir(project);
-		if (pkgConfigLibDirPaths != null) {
-			String pkgConfigLibDirPath = ""; //$NON-NLS-1$
-			for (int i = 0; i < pkgConfigLibDirPaths.length; i++) {
-				String pkgConfigPathValue = pkgConfigLibDirPaths[i];
-				pkgConfigLibDirPath += pkgConfigPathValue;
-				if (pkgConfigPaths != null && i != pkgConfigPaths.length - 1) {
-					if (OSDetector.isWindows()) {
-						pkgConfigPath += WINDOWS_PATH_SEPARATOR;
-					} else {
-						pkgConfigPath += UNIX_PATH_SEPARATOR;
-					}
+			if (interactive) {
+				ProcessThrottle.getDefault().promote(running.ticket);
+			}
+			SharedOutput output = awaitOutput(running, monitor);
+			if (output == null) {
+				return null;
+			}
+			if (!output.canceled) {
+				if (output.lines == null) {
+					return null;
 				}
+				handleLines(handler, output.lines);
+				return new ArrayList<String>(output.lines);
 			}
+			// the thread running the query was canceled, run it again
+		}
+	}
+
+	/**
+	 * Get the output of a query that has been run.
+	 * 
+	 * @param query
+	 * @return Output or null if the query failed
+	 */
+	private static SharedOutput getOutput(SharedQuery query) {
+		try {
+			return query.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			Activator.getDefault().log(e, "Running pkg-config query failed."); //$NON-NLS-1$
+		}
+		return null;
+	}
 
-			if (!pkgConfigLibDirPath.isEmpty()) {
-				pkgConfigLibDirPath = pkgConfigLibDirPath.replace(" ", "\\ "); //$NON-NLS-1$ //$NON-NLS-2$
-				if (OSDetector.isWindows()) {
-					pkgConfigCmd
-							.append(" set PKG_CONFIG_LIBDIR=" + pkgConfigLibDirPath + "&");//$NON-NLS-1$ //$NON-NLS-2$
-				} else {
-					pkgConfigCmd
-							.append(" PKG_CONFIG_LIBDIR=" + pkgConfigLibDirPath + " ");//$NON-NLS-1$ //$NON-NLS-2$
+	/**
+	 * Wait for a query run by another thread.
+	 * 
+	 * @param query
+	 * @param monitor
+	 *            Progress monitor used for cancellation, may be null
+	 * @return Output or null if the query failed or the wait was canceled
+	 */
+	private static SharedOutput awaitOutput(SharedQuery query,
+			IProgressMonitor monitor) {
+		while (true) {
+			try {
+				return query.get(AWAIT_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				if (monitor != null && monitor.isCanceled()) {
+					return null;
 				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			} catch (ExecutionException e) {
+				Activator.getDefault().log(e, "Running pkg-config query failed."); //$NON-NLS-1$
+				return null;
 			}
 		}
-		pkgConfigCmd.append(pkgConfigBinPath);
-		if (pkgconfigOptions != null && !pkgconfigOptions.isEmpty())
-			pkgConfigCmd.append(" " + pkgconfigOptions);//$NON-NLS-1$
+	}
 
-		if (OSDetector.isWindows()) {
-			// For Windows the command should look like :
-			// cmd /c 'PKG_CONFIG_PATH=/path/to/something pkg-config
-			// --list-all'
-			pb = new ProcessBuilder("cmd", "/c", pkgConfigCmd.toString()); //$NON-NLS-1$ //$NON-NLS-2$
-		} else {
-			// For Unix/Mac the command should look like :
-			// bash -c 'PKG_CONFIG_PATH=/path/to/something pkg-config
-			// --list-all'
-			pb = new ProcessBuilder("bash", "-c", pkgConfigCmd.toString()); //$NON-NLS-1$ //$NON-NLS-2$
+	/**
+	 * Output of a query shared by the threads that asked for it.
+	 */
+	private static class SharedOutput {
+		// null if the query failed
+		final List<String> lines;
+		// the query failed because the running thread was canceled
+		final boolean canceled;
+
+		SharedOutput(List<String> lines, boolean canceled) {
+			this.lines = lines;
+			this.canceled = canceled;
 		}
+	}
 
-		return runCommand(pb);
+	/**
+	 * A query run by one thread on behalf of all the threads asking for it.
+	 */
+	private static class SharedQuery extends FutureTask<SharedOutput> {
+		final ProcessThrottle.Ticket ticket;
+
+		SharedQuery(CachingQuery query, ProcessThrottle.Ticket ticket) {
+			super(query);
+			this.ticket = ticket;
+		}
+	}
+
+	/**
+	 * Runs a query and caches its output.
+	 */
+	private static class CachingQuery implements Callable<SharedOutput> {
+		private final String project;
+		private final PkgConfigEnvironment env;
+		private final List<String> args;
+		private final IProgressMonitor monitor;
+		private final ILineHandler handler;
+		private final ProcessThrottle.Ticket ticket;
+
+		CachingQuery(String project, PkgConfigEnvironment env,
+				List<String> args, IProgressMonitor monitor,
+				ILineHandler handler, ProcessThrottle.Ticket ticket) {
+			this.project = project;
+			this.env = env;
+			this.args = args;
+			this.monitor = monitor;
+			this.handler = handler;
+			this.ticket = ticket;
+		}
+
+		@Override
+		public SharedOutput call() {
+			QueryResultCache cache = QueryResultCache.getDefault();
+			long generation = cache.getGeneration(this.env);
+			List<String> results = getUncachedPkgOutputs(this.project,
+					this.env, this.args, this.monitor, this.handler,
+					this.ticket);
+			// a failure is not cached, an empty result is
+			if (results != null) {
+				cache.put(this.env, this.args, results, generation);
+			}
+			return new SharedOutput(results, results == null
+					&& this.monitor != null && this.monitor.isCanceled());
+		}
 	}
 
 	/**
-	 * Run the process and get the results as string array.
+	 * Get pkg-config output from the persistent cache, from the .pc files or
+	 * by running pkg-config.
 	 * 
-	 * @param pb
-	 *            Process builder
-	 * @return Array of process results
+	 * @param project
+	 *            Project name
+	 * @param env
+	 *            pkg-config environment
+	 * @param args
+	 *            Pkg-config options as command line arguments
+	 * @param monitor
+	 *            Progress monitor used for cancellation, may be null
+	 * @param handler
+	 *            Handler the output lines are passed to, may be null
+	 * @param ticket
+	 *            Request to run pkg-config
+	 * @return pkg-config command results as a list of string or null if
+	 *         pkg-config failed
 	 */
-	private static List<String> runCommand(ProcessBuilder pb) {
-		List<String> results = new ArrayList<String>();
+	private static List<String> getUncachedPkgOutputs(String project,
+			PkgConfigEnvironment env, List<String> args,
+			IProgressMonitor monitor, ILineHandler handler,
+			ProcessThrottle.Ticket ticket) {
+		PcFileResolver resolver = new PcFileResolver(env);
 
+		// results stay valid as long as the involved .pc files do not change
+		String fingerprint = null;
+		List<File> involvedFiles = resolver.getInvolvedFiles(args);
+		if (involvedFiles != null) {
+			fingerprint = PersistentQueryCache.fingerprint(involvedFiles);
+			List<String> cached = PersistentQueryCache.getDefault().get(env,
+					args, fingerprint);
+			if (cached != null) {
+				handleLines(handler, cached);
+				return cached;
+			}
+		}
+
+		List<String> results = null;
+		if (PreferenceStore.isPkgConfigResolverBuiltin(project)) {
+			// read the .pc files directly, no process needs to be started
+			results = resolver.run(args);
+			if (results != null) {
+				handleLines(handler, results);
+			}
+		}
+		if (results == null) {
+			results = runPkgConfig(env, args, monitor, handler, ticket);
+		}
+
+		if (fingerprint != null && results != null) {
+			PersistentQueryCache.getDefault().put(env, args, fingerprint,
+					results);
+		}
+		return results;
+	}
+
+	/**
+	 * Run pkg-config once the throttle lets the request run a process.
+	 * 
+	 * @param env
+	 *            pkg-config environment
+	 * @param args
+	 *            Pkg-config options as command line arguments
+	 * @param monitor
+	 *            Progress monitor used for cancellation, may be null
+	 * @param handler
+	 *            Handler the output lines are passed to, may be null
+	 * @param ticket
+	 *            Request to run pkg-config
+	 * @return pkg-config command results as a list of string or null if
+	 *         pkg-config failed, timed out or was canceled
+	 */
+	private static List<String> runPkgConfig(PkgConfigEnvironment env,
+			List<String> args, IProgressMonitor monitor, ILineHandler handler,
+			ProcessThrottle.Ticket ticket) {
+		ProcessThrottle throttle = ProcessThrottle.getDefault();
+		try {
+			if (!throttle.acquire(ticket, monitor)) {
+				return null;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
 		try {
-			Process p = pb.start();
-			String line;
-			BufferedReader input = new BufferedReader(new InputStreamReader(
-					p.getInputStream()));
-			do {
-				line = input.readLine();
-				if (line != null) {
-					results.add(line);
+			// the lines are passed to the handler as they are read
+			return new PkgConfigLauncher(env,
+					PreferenceStore.getQueryTimeout()).run(args, monitor,
+					handler);
+		} finally {
+			throttle.release();
+		}
+	}
+
+	/**
+	 * Pass lines to a handler.
+	 * 
+	 * @param handler
+	 *            Handler, may be null
+	 * @param lines
+	 */
+	private static void handleLines(ILineHandler handler, List<String> lines) {
+		if (handler != null) {
+			for (String line : lines) {
+				handler.handleLine(line);
+			}
+		}
+	}
+
+	/**
+	 * Split pkg-config options to command line arguments.
+	 * 
+	 * @param pkgconfigOptions
+	 *            Pkg-config options as --list-all, --libs...
+	 * @return List of arguments
+	 */
+	private static List<String> splitOptions(String pkgconfigOptions) {
+		List<String> args = new ArrayList<String>();
+		if (pkgconfigOptions != null) {
+			for (String arg : pkgconfigOptions.trim().split("\\s+")) { //$NON-NLS-1$
+				if (!arg.isEmpty()) {
+					args.add(arg);
 				}
-			} while (line != null);
-			input.close();
-		} catch (IOException e) {
-			Activator
-					.getDefault()
-					.log(e,
-							"Starting a process (executing a command line script) failed."); //$NON-NLS-1$
+			}
 		}
-		return results;
+		return args;
 	}
 
 	/**
@@ -192,6 +396,130 @@ public class PkgConfigUtil {
 		return getPkgOutput(project, OUTPUT_ALL + " " + pkg); //$NON-NLS-1$
 	}
 
+	/**
+	 * Get cflags and libraries needed to build the given package parsed
+	 * from a single pkg-config query.
+	 * 
+	 * @param pkg Package
+	 * @param project Project name
+	 * @return PackageFlags
+	 */
+	public static PackageFlags getPackageFlags(String pkg, String project) {
+		return getPackageFlags(pkg, project, null);
+	}
+
+	/**
+	 * Get cflags and libraries needed to build the given package.
+	 * 
+	 * @param pkg Package
+	 * @param project Project name
+	 * @param monitor Progress monitor used for cancellation, may be null
+	 * @return PackageFlags
+	 */
+	public static PackageFlags getPackageFlags(String pkg, String project,
+			IProgressMonitor monitor) {
+		return Parser.parsePackageFlags(getPkgOutput(project, OUTPUT_ALL
+				+ " " + pkg, monitor)); //$NON-NLS-1$
+	}
+
+	/**
+	 * Get cflags and libraries needed to build all the given packages. The
+	 * packages are resolved with a single pkg-config query, which also drops
+	 * the flags the packages have in common. If the query fails, e.g.
+	 * because one of the packages cannot be found, the packages are queried
+	 * one by one so that the flags of the others are still available.
+	 * 
+	 * @param pkgs Packages
+	 * @param project Project name
+	 * @return PackageFlags
+	 */
+	public static PackageFlags getPackageFlags(String[] pkgs, String project) {
+		return getPackageFlags(pkgs, project, null);
+	}
+
+	/**
+	 * Get cflags and libraries needed to build all the given packages.
+	 * 
+	 * @param pkgs Packages
+	 * @param project Project name
+	 * @param monitor Progress monitor used for cancellation, may be null
+	 * @return PackageFlags
+	 * @see #getPackageFlags(String[], String)
+	 */
+	public static PackageFlags getPackageFlags(String[] pkgs, String project,
+			IProgressMonitor monitor) {
+		if (pkgs.length == 0) {
+			return PackageFlags.EMPTY;
+		}
+		if (pkgs.length == 1) {
+			return getPackageFlags(pkgs[0], project, monitor);
+		}
+		StringBuilder options = new StringBuilder(OUTPUT_ALL);
+		for (String pkg : pkgs) {
+			options.append(' ').append(pkg);
+		}
+		String output = getPkgOutput(project, options.toString(), monitor);
+		if (output != null) {
+			return Parser.parsePackageFlags(output);
+		}
+		if (monitor != null && monitor.isCanceled()) {
+			return PackageFlags.EMPTY;
+		}
+		return PackageFlags.merge(getEachPackageFlags(pkgs, project, monitor));
+	}
+
+	/**
+	 * Get cflags and libraries of each of the given packages separately. The
+	 * packages are queried in parallel in the shared worker pool.
+	 * 
+	 * @param pkgs Packages
+	 * @param project Project name
+	 * @param monitor Progress monitor used for cancellation, may be null
+	 * @return PackageFlags of each package in the order of the packages
+	 */
+	public static List<PackageFlags> getEachPackageFlags(String[] pkgs,
+			final String project, final IProgressMonitor monitor) {
+		List<Callable<PackageFlags>> tasks = new ArrayList<Callable<PackageFlags>>();
+		for (final String pkg : pkgs) {
+			tasks.add(new Callable<PackageFlags>() {
+				@Override
+				public PackageFlags call() {
+					return getPackageFlags(pkg, project, monitor);
+				}
+			});
+		}
+		List<PackageFlags> pkgFlags = QueryExecutor.getDefault().invokeAll(tasks);
+		for (int i = 0; i < pkgFlags.size(); i++) {
+			if (pkgFlags.get(i) == null) {
+				pkgFlags.set(i, PackageFlags.EMPTY);
+			}
+		}
+		return pkgFlags;
+	}
+
+	/**
+	 * Get a fingerprint of the .pc files the flags of the given packages are
+	 * resolved from. The fingerprint changes when one of the files or a
+	 * search directory changes.
+	 *
+	 * @param pkgs Packages
+	 * @param project Project name
+	 * @return Fingerprint or null if the involved files cannot be determined
+	 */
+	public static String getFingerprint(String[] pkgs, String project) {
+		List<String> args = splitOptions(OUTPUT_ALL);
+		for (String pkg : pkgs) {
+			args.add(pkg);
+		}
+		PkgConfigEnvironment env = PkgConfigEnvironment.forProject(project);
+		List<File> involvedFiles = new PcFileResolver(env)
+				.getInvolvedFiles(args);
+		if (involvedFiles == null) {
+			return null;
+		}
+		return PersistentQueryCache.fingerprint(involvedFiles);
+	}
+
 	/**
 	 * Get libraries (files and paths) needed to build the given package.
 	 * 
@@ -245,7 +573,25 @@ public class PkgConfigUtil {
 	 * @return
 	 */
 	public static List<String> getAllPackages(String project) {
-		return getPkgOutputs(project, LIST_PACKAGES);
+		List<String> pkgs = getPkgOutputs(project, LIST_PACKAGES, null, null,
+				false);
+		return pkgs != null ? pkgs : new ArrayList<String>();
+	}
+
+	/**
+	 * Pass all packages that pkg-config utility finds (package name with
+	 * description) to the handler line by line. When pkg-config is run, the
+	 * lines are passed while its output is read. The query is served before
+	 * background queries because the user is waiting for the package list.
+	 * 
+	 * @param project
+	 *            Project name
+	 * @param handler
+	 *            Handler of the output lines
+	 * @return True if pkg-config succeeded
+	 */
+	public static boolean getAllPackages(String project, ILineHandler handler) {
+		return getPkgOutputs(project, LIST_PACKAGES, null, handler, true) != null;
 	}
 
 }
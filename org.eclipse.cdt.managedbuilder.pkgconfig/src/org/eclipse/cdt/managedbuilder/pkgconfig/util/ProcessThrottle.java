@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012 Petri Tuononen and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Petri Tuononen - Initial implementation
+ *******************************************************************************/
+package org.eclipse.cdt.managedbuilder.pkgconfig.util;
+
+import java.util.LinkedList;
+
+import org.eclipse.cdt.managedbuilder.pkgconfig.preferences.PreferenceStore;
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * Limits the number of pkg-config processes running at the same time in the
+ * whole workspace.
+ *
+ * The limit is the workspace preference
+ * {@link PreferenceStore#getMaxConcurrentQueries()}. Waiting requests are
+ * served in the order they arrived, except that interactive requests, e.g.
+ * listing the packages for the property tab, are served before background
+ * ones.
+ */
+public class ProcessThrottle {
+
+	// milliseconds between the checks for cancellation while waiting
+	private static final long POLL_INTERVAL = 50;
+
+	private static ProcessThrottle instance;
+
+	// guarded by this
+	private final LinkedList<Ticket> waiting = new LinkedList<Ticket>();
+	private int running = 0;
+	private int limit;
+
+	/**
+	 * A request to run a process.
+	 */
+	public static class Ticket {
+		// guarded by the throttle
+		boolean interactive;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param interactive Is the request made on behalf of the user
+		 */
+		public Ticket(boolean interactive) {
+			this.interactive = interactive;
+		}
+	}
+
+	/**
+	 * Constructor. Use {@link #getDefault()} outside of the tests.
+	 *
+	 * @param limit Maximum number of processes running at the same time
+	 */
+	ProcessThrottle(int limit) {
+		this.limit = limit;
+	}
+
+	/**
+	 * Get the shared throttle. The limit follows the preference.
+	 *
+	 * @return ProcessThrottle
+	 */
+	public static synchronized ProcessThrottle getDefault() {
+		int limit = PreferenceStore.getMaxConcurrentQueries();
+		if (instance == null) {
+			instance = new ProcessThrottle(limit);
+		} else {
+			instance.setLimit(limit);
+		}
+		return instance;
+	}
+
+	private synchronized void setLimit(int limit) {
+		if (limit > this.limit) {
+			notifyAll();
+		}
+		this.limit = limit;
+	}
+
+	/**
+	 * Wait until the request may run a process. {@link #release()} must be
+	 * called when the process has finished if this method returns true.
+	 *
+	 * @param ticket Request
+	 * @param monitor Progress monitor used for cancellation, may be null
+	 * @return True if the process may be run, false if the monitor was
+	 *         canceled
+	 * @throws InterruptedException
+	 */
+	public synchronized boolean acquire(Ticket ticket, IProgressMonitor monitor)
+			throws InterruptedException {
+		this.waiting.add(ticket);
+		try {
+			while (this.running >= this.limit || next() != ticket) {
+				if (monitor != null && monitor.isCanceled()) {
+					return false;
+				}
+				wait(POLL_INTERVAL);
+			}
+		} finally {
+			this.waiting.remove(ticket);
+			// the next request may be allowed to run now
+			notifyAll();
+		}
+		this.running++;
+		return true;
+	}
+
+	/**
+	 * Let the next request run a process.
+	 */
+	public synchronized void release() {
+		this.running--;
+		notifyAll();
+	}
+
+	/**
+	 * Serve a waiting request as an interactive one, e.g. because the user
+	 * is waiting for the same result.
+	 *
+	 * @param ticket Request
+	 */
+	public synchronized void promote(Ticket ticket) {
+		if (!ticket.interactive) {
+			ticket.interactive = true;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Get the number of waiting requests.
+	 *
+	 * @return int
+	 */
+	synchronized int getWaitingCount() {
+		return this.waiting.size();
+	}
+
+	/**
+	 * Get the request to be served next.
+	 *
+	 * @return The first interactive request or the first request
+	 */
+	private Ticket next() {
+		for (Ticket ticket : this.waiting) {
+			if (ticket.interactive) {
+				return ticket;
+			}
+		}
+		return this.waiting.getFirst();
+	}
+
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012 Petri Tuononen and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Petri Tuononen - Initial implementation
+ *******************************************************************************/
+package org.eclipse.cdt.managedbuilder.pkgconfig.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.cdt.managedbuilder.pkgconfig.Activator;
+import org.eclipse.cdt.managedbuilder.pkgconfig.preferences.PreferenceStore;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+
+/**
+ * Shared worker pool for pkg-config queries that cannot be batched into a
+ * single invocation.
+ *
+ * The number of queries running at the same time is limited by the
+ * workspace preference {@link PreferenceStore#getMaxConcurrentQueries()}.
+ * Idle worker threads are stopped after a while.
+ */
+public class QueryExecutor {
+
+	// seconds an idle worker thread is kept alive
+	private static final long KEEP_ALIVE = 30;
+
+	private static QueryExecutor instance;
+
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param threads Maximum number of worker threads
+	 */
+	private QueryExecutor(int threads) {
+		final AtomicInteger count = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "Pkg-config query " //$NON-NLS-1$
+								+ count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Get the shared executor. The pool size follows the preference.
+	 *
+	 * @return QueryExecutor
+	 */
+	public static synchronized QueryExecutor getDefault() {
+		int threads = PreferenceStore.getMaxConcurrentQueries();
+		if (instance == null) {
+			instance = new QueryExecutor(threads);
+		} else {
+			instance.setPoolSize(threads);
+		}
+		return instance;
+	}
+
+	/**
+	 * Stop the worker threads. Called when the plug-in is stopped.
+	 */
+	public static synchronized void shutdown() {
+		if (instance != null) {
+			instance.executor.shutdownNow();
+			instance = null;
+		}
+	}
+
+	/**
+	 * Run the given tasks in the worker pool and wait until all of them have
+	 * finished.
+	 *
+	 * @param tasks
+	 * @return Results in the order of the tasks, null for a failed task
+	 */
+	public <T> List<T> invokeAll(List<Callable<T>> tasks) {
+		List<T> results = new ArrayList<T>(tasks.size());
+		if (tasks.size() == 1) {
+			// no need to hand a single task over to another thread
+			results.add(call(tasks.get(0)));
+			return results;
+		}
+		List<Future<T>> futures;
+		try {
+			futures = this.executor.invokeAll(tasks);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			for (int i = 0; i < tasks.size(); i++) {
+				results.add(null);
+			}
+			return results;
+		}
+		for (Future<T> future : futures) {
+			T result = null;
+			try {
+				result = future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				Activator.getDefault().log(new Status(IStatus.ERROR,
+						Activator.PLUGIN_ID,
+						"Running a pkg-config query failed.", e.getCause())); //$NON-NLS-1$
+			}
+			results.add(result);
+		}
+		return results;
+	}
+
+	/**
+	 * Run a task in the calling thread.
+	 */
+	private static <T> T call(Callable<T> task) {
+		try {
+			return task.call();
+		} catch (Exception e) {
+			Activator.getDefault().log(IStatus.ERROR, e,
+					"Running a pkg-config query failed."); //$NON-NLS-1$
+			return null;
+		}
+	}
+
+	/**
+	 * Change the number of worker threads.
+	 *
+	 * @param threads
+	 */
+	private void setPoolSize(int threads) {
+		if (threads == this.executor.getMaximumPoolSize()) {
+			return;
+		}
+		// the core size may never exceed the maximum size
+		if (threads > this.executor.getMaximumPoolSize()) {
+			this.executor.setMaximumPoolSize(threads);
+			this.executor.setCorePoolSize(threads);
+		} else {
+			this.executor.setCorePoolSize(threads);
+			this.executor.setMaximumPoolSize(threads);
+		}
+	}
+
+}
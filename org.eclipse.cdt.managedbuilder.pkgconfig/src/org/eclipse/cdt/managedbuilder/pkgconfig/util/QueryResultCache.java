@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012 Petri Tuononen and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Petri Tuononen - Initial implementation
+ *******************************************************************************/
+package org.eclipse.cdt.managedbuilder.pkgconfig.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.cdt.managedbuilder.pkgconfig.Activator;
+import org.eclipse.cdt.managedbuilder.pkgconfig.util.PcDirectoryWatcher.IPcDirectoryListener;
+import org.eclipse.core.runtime.IStatus;
+
+/**
+ * Workspace-level in-memory cache of pkg-config query results.
+ *
+ * The cache holds a bounded number of results and evicts the least recently
+ * used ones. Results are kept until a .pc file is created, modified or
+ * deleted in one of the search directories of their pkg-config environment,
+ * which is noticed by the {@link PcDirectoryWatcher}.
+ */
+public class QueryResultCache implements IPcDirectoryListener {
+
+	private static final int MAX_ENTRIES = 512;
+
+	private static QueryResultCache instance;
+
+	private final Map<Key, List<String>> entries = new LinkedHashMap<Key, List<String>>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, List<String>> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+	// incremented on every change so that a result computed while a .pc
+	// file changed is not kept, guarded by entries
+	private long generation = 0;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Get the shared cache.
+	 *
+	 * @return QueryResultCache
+	 */
+	public static synchronized QueryResultCache getDefault() {
+		if (instance == null) {
+			instance = new QueryResultCache();
+			PcDirectoryWatcher.getDefault().addListener(instance);
+		}
+		return instance;
+	}
+
+	/**
+	 * Log the statistics and drop the shared cache. Called when the plug-in
+	 * is stopped.
+	 */
+	public static synchronized void shutdown() {
+		if (instance != null) {
+			instance.logStatistics("Pkg-config query cache closed"); //$NON-NLS-1$
+			PcDirectoryWatcher.getDefault().removeListener(instance);
+			instance = null;
+		}
+	}
+
+	/**
+	 * Get a cached query result.
+	 *
+	 * @param env pkg-config environment
+	 * @param args Query arguments
+	 * @return Copy of the output lines or null if not cached
+	 */
+	public List<String> get(PkgConfigEnvironment env, List<String> args) {
+		List<String> lines;
+		synchronized (this.entries) {
+			lines = this.entries.get(new Key(env, args));
+		}
+		if (lines == null) {
+			this.misses.incrementAndGet();
+			return null;
+		}
+		this.hits.incrementAndGet();
+		return new ArrayList<String>(lines);
+	}
+
+	/**
+	 * Get the generation to pass to {@link #put} for a query that is about
+	 * to be run. The search directories of the environment are watched from
+	 * now on, so that a .pc file changing while the query runs is noticed.
+	 *
+	 * @param env pkg-config environment
+	 * @return Generation or -1 if the results cannot be cached because the
+	 *         search directories cannot be watched
+	 */
+	public long getGeneration(PkgConfigEnvironment env) {
+		if (!PcDirectoryWatcher.getDefault().watch(env.getSearchDirectories())) {
+			return -1;
+		}
+		synchronized (this.entries) {
+			return this.generation;
+		}
+	}
+
+	/**
+	 * Store a query result unless a .pc file has changed since the query
+	 * was started.
+	 *
+	 * @param env pkg-config environment
+	 * @param args Query arguments
+	 * @param lines Output lines
+	 * @param queryGeneration Generation returned by {@link #getGeneration}
+	 *            before the query was run
+	 */
+	public void put(PkgConfigEnvironment env, List<String> args,
+			List<String> lines, long queryGeneration) {
+		synchronized (this.entries) {
+			if (queryGeneration < 0 || queryGeneration != this.generation) {
+				return;
+			}
+			this.entries.put(new Key(env, args), new ArrayList<String>(lines));
+		}
+	}
+
+	@Override
+	public void pcDirectoryChanged(File dir) {
+		int removed = 0;
+		synchronized (this.entries) {
+			this.generation++;
+			Iterator<Key> it = this.entries.keySet().iterator();
+			while (it.hasNext()) {
+				if (it.next().env.getSearchDirectories().contains(dir)) {
+					it.remove();
+					removed++;
+				}
+			}
+		}
+		if (removed > 0) {
+			logStatistics(String.format(
+					"%1$s changed, %2$d cached pkg-config results dropped", //$NON-NLS-1$
+					dir, Integer.valueOf(removed)));
+		}
+	}
+
+	/**
+	 * Log the hit and miss counts.
+	 *
+	 * @param message
+	 */
+	private void logStatistics(String message) {
+		Activator plugin = Activator.getDefault();
+		if (plugin != null) {
+			plugin.log(IStatus.INFO, null, String.format(
+					"%1$s (hits: %2$d, misses: %3$d)", message, //$NON-NLS-1$
+					Long.valueOf(this.hits.get()), Long.valueOf(this.misses.get())));
+		}
+	}
+
+	/**
+	 * Key of a cached result: the pkg-config executable, its environment and
+	 * the query arguments.
+	 */
+	static class Key {
+		final PkgConfigEnvironment env;
+		final List<String> args;
+
+		Key(PkgConfigEnvironment env, List<String> args) {
+			this.env = env;
+			this.args = args;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * this.env.hashCode() + this.args.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return this.env.equals(other.env) && this.args.equals(other.args);
+		}
+	}
+
+}